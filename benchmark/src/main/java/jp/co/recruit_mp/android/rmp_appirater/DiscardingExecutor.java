@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2015-2016 Recruit Marketing Partners Co.,Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package jp.co.recruit_mp.android.rmp_appirater;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executor which discards tasks, e.g. writes scheduled by engines.
+ * <p/>
+ * Benchmarks measure the calling thread. Engines created in each call would fill the queue of a real executor,
+ * and the writes would run on another thread while measuring.
+ */
+final class DiscardingExecutor extends ScheduledThreadPoolExecutor {
+
+    DiscardingExecutor() {
+        super(1);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+        return null;
+    }
+
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2015-2016 Recruit Marketing Partners Co.,Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package jp.co.recruit_mp.android.rmp_appirater;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the operations of {@link RatingEngine} which run on the main thread on Android.
+ * <p/>
+ * Cold benchmarks create an engine and load the saved values in each call, like the first appLaunched,
+ * tryToShowPrompt or resetIfAppVersionChanged in a process. Warm benchmarks call an engine which has loaded them.
+ * Throughput and the distribution of latency are measured, and allocation is measured with the GC profiler,
+ * which the jmh task of this module adds.
+ * <p/>
+ * Values are kept by {@link InMemoryStorage} and writes are discarded, so the storage isn't measured.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RatingEngineBenchmark {
+
+    private static final int APP_VERSION_CODE = 3;
+
+    private final RatingCondition mCondition = RatingRules.appiraterDefaults().build();
+
+    private DiscardingExecutor mExecutor;
+
+    /**
+     * Saved values of a user who has launched 3 versions. Writes are discarded, so they aren't changed.
+     */
+    private InMemoryStorage mStorage;
+
+    private RatingEngine mWarmEngine;
+
+    @Setup
+    public void setUp() {
+        mExecutor = new DiscardingExecutor();
+        final long now = System.currentTimeMillis();
+        RatingState state = RatingState.EMPTY;
+        for (int versionCode = 1; versionCode <= APP_VERSION_CODE; versionCode++) {
+            for (int i = 0; i < 10; i++) {
+                state = new RatingEvent(RatingEvent.TYPE_LAUNCH, versionCode, now - TimeUnit.DAYS.toMillis(40 - i))
+                        .applyTo(state);
+            }
+        }
+        mStorage = new InMemoryStorage(state);
+
+        mWarmEngine = newEngine(mStorage, APP_VERSION_CODE);
+        mWarmEngine.getRatingState();
+    }
+
+    @TearDown
+    public void tearDown() {
+        mExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    public boolean coldCountLaunch() {
+        return newEngine(mStorage, APP_VERSION_CODE).countLaunch(mCondition);
+    }
+
+    @Benchmark
+    public boolean warmCountLaunch() {
+        return mWarmEngine.countLaunch(mCondition);
+    }
+
+    @Benchmark
+    public boolean coldIsShowRateDialog() {
+        return newEngine(mStorage, APP_VERSION_CODE).isShowRateDialog(mCondition);
+    }
+
+    @Benchmark
+    public boolean warmIsShowRateDialog() {
+        return mWarmEngine.isShowRateDialog(mCondition);
+    }
+
+    /**
+     * Resets the values saved by the previous version.
+     */
+    @Benchmark
+    public RatingEngine coldResetIfAppVersionChanged() {
+        final RatingEngine engine = newEngine(mStorage, APP_VERSION_CODE + 1);
+        engine.resetIfAppVersionChanged();
+        return engine;
+    }
+
+    /**
+     * Checks the version which is already reset.
+     */
+    @Benchmark
+    public RatingEngine warmResetIfAppVersionChanged() {
+        mWarmEngine.resetIfAppVersionChanged();
+        return mWarmEngine;
+    }
+
+    private RatingEngine newEngine(RatingStateStorage storage, int appVersionCode) {
+        return new RatingEngine.Builder()
+                .setStorage(storage)
+                .setVersionCodeProvider(new FixedVersionCodeProvider(appVersionCode))
+                .setExecutor(mExecutor)
+                .build();
+    }
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2015-2016 Recruit Marketing Partners Co.,Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.recruit_mp.android.rmp_appirater;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares conditions compiled by {@link RatingRules} with the hand-written condition of the same rules.
+ * <p/>
+ * The compiled condition must not be slower than {@link AppiraterDefaultsCondition}, and must not allocate.
+ * Composed conditions are compared too, which are merged by {@link RatingRules#allOf} or checked one by one.
+ * The state has launched 3 versions, and all rules are true for it, so every comparison is done.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RatingRulesBenchmark {
+
+    private static final int APP_VERSION_CODE = 3;
+
+    private final MillisShowRateDialogCondition mHandWritten = new AppiraterDefaultsCondition();
+
+    private final MillisShowRateDialogCondition mRules = RatingRules.appiraterDefaults().build();
+
+    /**
+     * Hand-written condition which checks each of the conditions, like allOf which isn't merged.
+     */
+    private final MillisShowRateDialogCondition mHandWrittenAllOf = new MillisShowRateDialogCondition() {
+        private final MillisShowRateDialogCondition mDefaults = new AppiraterDefaultsCondition();
+
+        @Override
+        public boolean isShowRateDialog(long appLaunchCount, long appThisVersionCodeLaunchCount,
+                                        long firstLaunchDate, int appVersionCode, int previousAppVersionCode,
+                                        long rateClickDate, long reminderClickDate, boolean doNotShowAgain) {
+            return mDefaults.isShowRateDialog(appLaunchCount, appThisVersionCodeLaunchCount, firstLaunchDate,
+                    appVersionCode, previousAppVersionCode, rateClickDate, reminderClickDate, doNotShowAgain)
+                    && appThisVersionCodeLaunchCount >= 5
+                    && appVersionCode >= 2;
+        }
+    };
+
+    private final MillisShowRateDialogCondition mRulesAllOf = RatingRules.allOf(
+            RatingRules.appiraterDefaults().build(),
+            new RatingRules.Builder().minThisVersionLaunchCount(5).build(),
+            new RatingRules.Builder().minAppVersionCode(2).build());
+
+    private RatingState mState;
+
+    private long mNow;
+
+    @Setup
+    public void setUp() {
+        mNow = System.currentTimeMillis();
+        RatingState state = RatingState.EMPTY;
+        for (int versionCode = 1; versionCode <= APP_VERSION_CODE; versionCode++) {
+            for (int i = 0; i < 10; i++) {
+                state = new RatingEvent(RatingEvent.TYPE_LAUNCH, versionCode, mNow - TimeUnit.DAYS.toMillis(40 - i))
+                        .applyTo(state);
+            }
+        }
+        mState = state;
+        if (!mHandWritten.isShowRateDialog(mState, APP_VERSION_CODE, APP_VERSION_CODE, mNow)
+                || !mRules.isShowRateDialog(mState, APP_VERSION_CODE, APP_VERSION_CODE, mNow)
+                || !mHandWrittenAllOf.isShowRateDialog(mState, APP_VERSION_CODE, APP_VERSION_CODE, mNow)
+                || !mRulesAllOf.isShowRateDialog(mState, APP_VERSION_CODE, APP_VERSION_CODE, mNow)) {
+            throw new IllegalStateException("Conditions must be true for the state");
+        }
+    }
+
+    @Benchmark
+    public boolean handWritten() {
+        return mHandWritten.isShowRateDialog(mState, APP_VERSION_CODE, APP_VERSION_CODE, mNow);
+    }
+
+    @Benchmark
+    public boolean rules() {
+        return mRules.isShowRateDialog(mState, APP_VERSION_CODE, APP_VERSION_CODE, mNow);
+    }
+
+    @Benchmark
+    public boolean handWrittenAllOf() {
+        return mHandWrittenAllOf.isShowRateDialog(mState, APP_VERSION_CODE, APP_VERSION_CODE, mNow);
+    }
+
+    @Benchmark
+    public boolean rulesAllOf() {
+        return mRulesAllOf.isShowRateDialog(mState, APP_VERSION_CODE, APP_VERSION_CODE, mNow);
+    }
+
+}
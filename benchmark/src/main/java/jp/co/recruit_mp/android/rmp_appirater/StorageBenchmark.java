@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2015-2016 Recruit Marketing Partners Co.,Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.recruit_mp.android.rmp_appirater;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of a launch which is counted and written, with {@link RatingStateFile}
+ * and with {@link XmlFileStorage} which writes files like SharedPreferences.
+ * <p/>
+ * Each launch is written at once by {@link RatingEngine#flush()}, like a process which is killed soon after the launch.
+ * Files are written to the temporary directory, so the results depend on its file system.
+ * Compare the storages on devices with {@code StorageBenchmarkTest} in the instrumentation tests of the library.
+ */
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StorageBenchmark {
+
+    static final String STORAGE_MAPPED = "mapped";
+    static final String STORAGE_XML = "xml";
+
+    @Param({STORAGE_MAPPED, STORAGE_XML})
+    String mStorageType;
+
+    private final RatingCondition mCondition = RatingRules.appiraterDefaults().build();
+
+    private DiscardingExecutor mExecutor;
+
+    private File mDirectory;
+
+    private RatingEngine mEngine;
+
+    @Setup
+    public void setUp() throws IOException {
+        mExecutor = new DiscardingExecutor();
+        mDirectory = File.createTempFile("rmp_appirater", "");
+        if (!mDirectory.delete() || !mDirectory.mkdir()) {
+            throw new IOException("Failed to create " + mDirectory);
+        }
+
+        final RatingStateStorage storage = STORAGE_MAPPED.equals(mStorageType)
+                ? new RatingStateFile(new File(mDirectory, "rmp_appirater.bin"), null)
+                : new XmlFileStorage(new File(mDirectory, "RmpAppirater.xml"));
+        mEngine = new RatingEngine.Builder()
+                .setStorage(storage)
+                .setVersionCodeProvider(new FixedVersionCodeProvider(1))
+                .setExecutor(mExecutor)
+                .build();
+        mEngine.getRatingState();
+    }
+
+    @TearDown
+    public void tearDown() {
+        mExecutor.shutdownNow();
+        final File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+
+    @Benchmark
+    public boolean countLaunch() {
+        final boolean isShowRateDialog = mEngine.countLaunch(mCondition);
+        mEngine.flush();
+        return isShowRateDialog;
+    }
+
+}
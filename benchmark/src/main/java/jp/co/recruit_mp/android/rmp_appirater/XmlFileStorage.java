@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2015-2016 Recruit Marketing Partners Co.,Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.recruit_mp.android.rmp_appirater;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * {@link RatingStateStorage} which writes files like SharedPreferencesStorage on Android, to compare storages on the JVM.
+ * <p/>
+ * Each save writes the whole XML file with the keys of SharedPreferencesStorage, like SharedPreferences#commit():
+ * the file is renamed to the backup, the XML is written to a new file and synced, and the backup is deleted.
+ */
+final class XmlFileStorage implements RatingStateStorage {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final Pattern ENTRY = Pattern.compile("<(\\w+) name=\"(\\w+)\"(?: value=\"([^\"]*)\" />|>([^<]*)</string>)");
+
+    private final File mFile;
+
+    private final File mBackupFile;
+
+    XmlFileStorage(File file) {
+        mFile = file;
+        mBackupFile = new File(file.getPath() + ".bak");
+    }
+
+    @Override
+    public synchronized RatingState load() {
+        final Map<String, String> values = new LinkedHashMap<String, String>();
+        try {
+            final Matcher matcher = ENTRY.matcher(read(mBackupFile.exists() ? mBackupFile : mFile));
+            while (matcher.find()) {
+                values.put(matcher.group(2), (matcher.group(3) != null) ? matcher.group(3) : matcher.group(4));
+            }
+        } catch (IOException e) {
+            return RatingState.EMPTY;
+        }
+        return new RatingState.Builder()
+                .setAppLaunchCount(getLong(values, "PREF_KEY_APP_LAUNCH_COUNT", 0))
+                .setAppThisVersionCodeLaunchCount(getLong(values, "PREF_KEY_APP_THIS_VERSION_CODE_LAUNCH_COUNT", 0))
+                .setFirstLaunchDate(getLong(values, "PREF_KEY_APP_FIRST_LAUNCHED_DATE", 0))
+                .setAppVersionCode((int) getLong(values, "PREF_KEY_APP_VERSION_CODE", Integer.MIN_VALUE))
+                .setRateClickDate(getLong(values, "PREF_KEY_RATE_CLICK_DATE", 0))
+                .setReminderClickDate(getLong(values, "PREF_KEY_REMINDER_CLICK_DATE", 0))
+                .setDoNotShowAgain(Boolean.parseBoolean(values.get("PREF_KEY_DO_NOT_SHOW_AGAIN")))
+                .setSignificantEventCount(getLong(values, "PREF_KEY_SIGNIFICANT_EVENT_COUNT", 0))
+                .setVersionHistory(VersionHistory.decode(values.get("PREF_KEY_VERSION_HISTORY")))
+                .build();
+    }
+
+    @Override
+    public synchronized void save(RatingState state, List<RatingEvent> events) {
+        final StringBuilder xml = new StringBuilder("<?xml version='1.0' encoding='utf-8' standalone='yes' ?>\n<map>\n");
+        appendValue(xml, "long", "PREF_KEY_APP_LAUNCH_COUNT", state.getAppLaunchCount());
+        appendValue(xml, "long", "PREF_KEY_APP_THIS_VERSION_CODE_LAUNCH_COUNT", state.getAppThisVersionCodeLaunchCount());
+        appendValue(xml, "long", "PREF_KEY_APP_FIRST_LAUNCHED_DATE", state.getFirstLaunchDate());
+        appendValue(xml, "int", "PREF_KEY_APP_VERSION_CODE", state.getAppVersionCode());
+        appendValue(xml, "long", "PREF_KEY_RATE_CLICK_DATE", state.getRateClickDate());
+        appendValue(xml, "long", "PREF_KEY_REMINDER_CLICK_DATE", state.getReminderClickDate());
+        appendValue(xml, "boolean", "PREF_KEY_DO_NOT_SHOW_AGAIN", state.isDoNotShowAgain());
+        appendValue(xml, "long", "PREF_KEY_SIGNIFICANT_EVENT_COUNT", state.getSignificantEventCount());
+        xml.append("    <string name=\"PREF_KEY_VERSION_HISTORY\">").append(state.getVersionHistory().encode())
+                .append("</string>\n</map>\n");
+
+        if (mFile.exists() && !mBackupFile.exists() && !mFile.renameTo(mBackupFile)) {
+            return;
+        }
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(mFile);
+            out.write(xml.toString().getBytes(UTF_8));
+            out.getFD().sync();
+        } catch (IOException e) {
+            // The backup is restored by the next load.
+            return;
+        } finally {
+            close(out);
+        }
+        mBackupFile.delete();
+    }
+
+    private static void appendValue(StringBuilder xml, String type, String name, Object value) {
+        xml.append("    <").append(type).append(" name=\"").append(name).append("\" value=\"")
+                .append(value).append("\" />\n");
+    }
+
+    private static long getLong(Map<String, String> values, String name, long defaultValue) {
+        final String value = values.get(name);
+        return (value != null) ? Long.parseLong(value) : defaultValue;
+    }
+
+    private static String read(File file) throws IOException {
+        final InputStream in = new FileInputStream(file);
+        try {
+            final byte[] bytes = new byte[(int) file.length()];
+            int length = 0;
+            while (length < bytes.length) {
+                final int count = in.read(bytes, length, bytes.length - length);
+                if (count < 0) {
+                    break;
+                }
+                length += count;
+            }
+            return new String(bytes, 0, length, UTF_8);
+        } finally {
+            close(in);
+        }
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+    }
+
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2015-2016 Recruit Marketing Partners Co.,Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.recruit_mp.android.rmp_appirater;
+
+/**
+ * Source of the current time used by RMP-Appirater.
+ * <p/>
+ * Set an implementation with {@link RatingEngine.Builder#setClock(Clock)},
+ * e.g. to test conditions of days without waiting.
+ */
+public interface Clock {
+
+    /**
+     * Clock of the system.
+     */
+    Clock SYSTEM = new Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    /**
+     * Gets the current time.
+     *
+     * @return Current time in epoch milliseconds.
+     */
+    long currentTimeMillis();
+
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2015-2016 Recruit Marketing Partners Co.,Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.recruit_mp.android.rmp_appirater;
+
+import java.util.Date;
+
+/**
+ * Rate Dialog showing condition interface, which receives dates as {@link Date}.
+ * <p/>
+ * {@code RmpAppirater.ShowRateDialogCondition} of the library extends this.
+ * Implement {@link MillisShowRateDialogCondition} to check the condition without allocating objects.
+ */
+public interface DateShowRateDialogCondition {
+    /**
+     * Show rate dialog if returned true.
+     *
+     * @param appLaunchCount                Launch count of This application.
+     * @param appThisVersionCodeLaunchCount Launch count of This application current version.
+     * @param firstLaunchDate               First launch date.
+     * @param appVersionCode                This application version code.
+     * @param previousAppVersionCode        The application version code of when it's launched last.
+     * @param rateClickDate                 Date of "Rate" button clicked.
+     * @param reminderClickDate             Date of "Remind me later" button clicked.
+     * @param doNotShowAgain                Clicked "No, Thanks" if true.
+     * @return Show rate dialog if returned true.
+     */
+    boolean isShowRateDialog(long appLaunchCount, long appThisVersionCodeLaunchCount,
+                             long firstLaunchDate, int appVersionCode, int previousAppVersionCode,
+                             Date rateClickDate, Date reminderClickDate, boolean doNotShowAgain);
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2015-2016 Recruit Marketing Partners Co.,Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.recruit_mp.android.rmp_appirater;
+
+/**
+ * {@link VersionCodeProvider} which returns the given version code, e.g. BuildConfig.VERSION_CODE.
+ */
+public class FixedVersionCodeProvider implements VersionCodeProvider {
+
+    private final int mVersionCode;
+
+    /**
+     * Constructor.
+     *
+     * @param versionCode This application version code.
+     */
+    public FixedVersionCodeProvider(int versionCode) {
+        mVersionCode = versionCode;
+    }
+
+    @Override
+    public int getVersionCode() {
+        return mVersionCode;
+    }
+
+}
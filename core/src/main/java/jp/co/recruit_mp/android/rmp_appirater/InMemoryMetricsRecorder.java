@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2015-2016 Recruit Marketing Partners Co.,Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.recruit_mp.android.rmp_appirater;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * {@link MetricsListener} which keeps counts and durations in memory, e.g. for tests and debug screens.
+ */
+public class InMemoryMetricsRecorder implements MetricsListener {
+
+    private final AtomicLongArray mPhaseCounts = new AtomicLongArray(PHASE_COUNT);
+
+    private final AtomicLongArray mPhaseTotalNanos = new AtomicLongArray(PHASE_COUNT);
+
+    private final AtomicLongArray mPhaseMaxNanos = new AtomicLongArray(PHASE_COUNT);
+
+    private final AtomicLongArray mEventCounts = new AtomicLongArray(EVENT_COUNT);
+
+    @Override
+    public void onPhase(int phase, long durationNanos) {
+        mPhaseCounts.incrementAndGet(phase);
+        mPhaseTotalNanos.addAndGet(phase, durationNanos);
+        long max;
+        do {
+            max = mPhaseMaxNanos.get(phase);
+        } while (durationNanos > max && !mPhaseMaxNanos.compareAndSet(phase, max, durationNanos));
+    }
+
+    @Override
+    public void onEvent(int event) {
+        mEventCounts.incrementAndGet(event);
+    }
+
+    /**
+     * Gets how many times the phase is recorded.
+     *
+     * @param phase One of PHASE_ constants.
+     * @return Count of the phase.
+     */
+    public long getPhaseCount(int phase) {
+        return mPhaseCounts.get(phase);
+    }
+
+    /**
+     * Gets total duration of the phase.
+     *
+     * @param phase One of PHASE_ constants.
+     * @return Total duration in nanoseconds.
+     */
+    public long getPhaseTotalNanos(int phase) {
+        return mPhaseTotalNanos.get(phase);
+    }
+
+    /**
+     * Gets the longest duration of the phase.
+     *
+     * @param phase One of PHASE_ constants.
+     * @return Longest duration in nanoseconds.
+     */
+    public long getPhaseMaxNanos(int phase) {
+        return mPhaseMaxNanos.get(phase);
+    }
+
+    /**
+     * Gets how many times the event happened.
+     *
+     * @param event One of EVENT_ constants.
+     * @return Count of the event.
+     */
+    public long getEventCount(int event) {
+        return mEventCounts.get(event);
+    }
+
+    /**
+     * Clears all recorded values.
+     */
+    public void reset() {
+        for (int i = 0; i < PHASE_COUNT; i++) {
+            mPhaseCounts.set(i, 0);
+            mPhaseTotalNanos.set(i, 0);
+            mPhaseMaxNanos.set(i, 0);
+        }
+        for (int i = 0; i < EVENT_COUNT; i++) {
+            mEventCounts.set(i, 0);
+        }
+    }
+
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2015-2016 Recruit Marketing Partners Co.,Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.recruit_mp.android.rmp_appirater;
+
+/**
+ * Reports to {@link MetricsListener}. Does nothing if no listener is set.
+ */
+final class Metrics {
+
+    private final MetricsListener mListener;
+
+    /**
+     * Constructor.
+     *
+     * @param listener Listener, or null not to measure.
+     */
+    Metrics(MetricsListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Gets the start time of a phase.
+     *
+     * @return Start time, or 0 if no listener is set.
+     */
+    long start() {
+        return (mListener != null) ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Reports the phase which is started at startNanos.
+     *
+     * @param phase      One of MetricsListener.PHASE_ constants.
+     * @param startNanos Returned value of {@link #start()}.
+     */
+    void end(int phase, long startNanos) {
+        if (mListener != null && startNanos != 0) {
+            mListener.onPhase(phase, System.nanoTime() - startNanos);
+        }
+    }
+
+    void event(int event) {
+        if (mListener != null) {
+            mListener.onEvent(event);
+        }
+    }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2015-2016 Recruit Marketing Partners Co.,Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.recruit_mp.android.rmp_appirater;
+
+/**
+ * Listener which receives how long each RMP-Appirater operation takes and how many times events happen.
+ * <p/>
+ * Set this with {@link RatingEngine.Builder#setMetricsListener(MetricsListener)}, or {@code RmpAppirater.setMetricsListener} on Android.
+ * Methods are called on the thread which runs the operation, so implementations must be thread safe and fast.
+ */
+public interface MetricsListener {
+
+    /**
+     * Loading saved values and the application version code.
+     */
+    int PHASE_LOAD = 0;
+
+    /**
+     * Checking showing rate dialog condition.
+     */
+    int PHASE_EVALUATE = 1;
+
+    /**
+     * Writing values to storage.
+     */
+    int PHASE_PERSIST = 2;
+
+    /**
+     * Creating and showing rating dialog.
+     */
+    int PHASE_SHOW = 3;
+
+    /**
+     * Number of phases.
+     */
+    int PHASE_COUNT = 4;
+
+    /**
+     * Rating dialog is shown.
+     */
+    int EVENT_DIALOG_SHOWN = 0;
+
+    /**
+     * Rating dialog is not shown because showing rate dialog condition is not true.
+     */
+    int EVENT_DIALOG_NOT_SHOWN = 1;
+
+    /**
+     * "Rate" button is clicked.
+     */
+    int EVENT_RATED = 2;
+
+    /**
+     * "Remind me later" button is clicked, or rating dialog is canceled.
+     */
+    int EVENT_REMINDED = 3;
+
+    /**
+     * "No, Thanks" button is clicked.
+     */
+    int EVENT_DECLINED = 4;
+
+    /**
+     * Values are written to storage.
+     */
+    int EVENT_DISK_WRITE = 5;
+
+    /**
+     * Number of events.
+     */
+    int EVENT_COUNT = 6;
+
+    /**
+     * A phase of an operation is finished.
+     *
+     * @param phase         One of PHASE_ constants.
+     * @param durationNanos Duration of the phase in nanoseconds.
+     */
+    void onPhase(int phase, long durationNanos);
+
+    /**
+     * An event happened.
+     *
+     * @param event One of EVENT_ constants.
+     */
+    void onEvent(int event);
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2015-2016 Recruit Marketing Partners Co.,Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package jp.co.recruit_mp.android.rmp_appirater;
+
+import java.util.Date;
+
+/**
+ * Rate Dialog showing condition which receives dates as epoch milliseconds.
+ * <p/>
+ * Unlike other {@link DateShowRateDialogCondition}, checking this condition doesn't allocate any objects.
+ * <p/>
+ * This is an abstract class instead of an interface, because the library is built for Java 7,
+ * which has no default methods. This class implements the {@link Date} method and the {@link RatingState} methods
+ * by the millis method, so a condition only implements the method below, like before.
+ * A condition which needs another superclass can implement {@link RatingCondition} instead.
+ */
+public abstract class MillisShowRateDialogCondition implements DateShowRateDialogCondition, RatingCondition {
+
+    /**
+     * Show rate dialog if returned true.
+     *
+     * @param appLaunchCount                Launch count of This application.
+     * @param appThisVersionCodeLaunchCount Launch count of This application current version.
+     * @param firstLaunchDate               First launch date.
+     * @param appVersionCode                This application version code.
+     * @param previousAppVersionCode        The application version code of when it's launched last.
+     * @param rateClickDate                 Date of "Rate" button clicked, or 0 if not clicked.
+     * @param reminderClickDate             Date of "Remind me later" button clicked, or 0 if not clicked.
+     * @param doNotShowAgain                Clicked "No, Thanks" if true.
+     * @return Show rate dialog if returned true.
+     */
+    public abstract boolean isShowRateDialog(long appLaunchCount, long appThisVersionCodeLaunchCount,
+                                             long firstLaunchDate, int appVersionCode, int previousAppVersionCode,
+                                             long rateClickDate, long reminderClickDate, boolean doNotShowAgain);
+
+    /**
+     * Show rate dialog if returned true.
+     * <p/>
+     * Override this to check values of the state which the method above doesn't receive.
+     *
+     * @param state                  Values saved by RMP-Appirater.
+     * @param appVersionCode         This application version code.
+     * @param previousAppVersionCode The application version code of when it's launched last.
+     * @return Show rate dialog if returned true.
+     */
+    public boolean isShowRateDialog(RatingState state, int appVersionCode, int previousAppVersionCode) {
+        return isShowRateDialog(state.getAppLaunchCount(), state.getAppThisVersionCodeLaunchCount(appVersionCode),
+                state.getFirstLaunchDate(), appVersionCode, previousAppVersionCode,
+                state.getRateClickDate(), state.getReminderClickDate(), state.isDoNotShowAgain());
+    }
+
+    /**
+     * Show rate dialog if returned true.
+     * <p/>
+     * Override this to compare dates with the time of {@link Clock} instead of the system time,
+     * so the condition can be checked at any time, e.g. by {@code RatingSimulator} in the tests of core.
+     *
+     * @param state                  Values saved by RMP-Appirater.
+     * @param appVersionCode         This application version code.
+     * @param previousAppVersionCode The application version code of when it's launched last.
+     * @param currentTimeMillis      Current time of the clock.
+     * @return Show rate dialog if returned true.
+     */
+    @Override
+    public boolean isShowRateDialog(RatingState state, int appVersionCode, int previousAppVersionCode,
+                                    long currentTimeMillis) {
+        return isShowRateDialog(state, appVersionCode, previousAppVersionCode);
+    }
+
+    @Override
+    public final boolean isShowRateDialog(long appLaunchCount, long appThisVersionCodeLaunchCount,
+                                          long firstLaunchDate, int appVersionCode, int previousAppVersionCode,
+                                          Date rateClickDate, Date reminderClickDate, boolean doNotShowAgain) {
+        return isShowRateDialog(appLaunchCount, appThisVersionCodeLaunchCount, firstLaunchDate,
+                appVersionCode, previousAppVersionCode,
+                (rateClickDate != null) ? rateClickDate.getTime() : 0,
+                (reminderClickDate != null) ? reminderClickDate.getTime() : 0,
+                doNotShowAgain);
+    }
+
+}
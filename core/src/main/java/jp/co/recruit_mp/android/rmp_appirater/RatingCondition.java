@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2015-2016 Recruit Marketing Partners Co.,Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.recruit_mp.android.rmp_appirater;
+
+/**
+ * Rate Dialog showing condition which is checked by {@link RatingEngine}.
+ * <p/>
+ * This doesn't use Android, so conditions can be checked and tuned on the JVM,
+ * e.g. by {@code RatingSimulator} in the tests of core.
+ * {@link MillisShowRateDialogCondition} and conditions built by {@link RatingRules} implement this.
+ */
+public interface RatingCondition {
+
+    /**
+     * Show rate dialog if returned true.
+     *
+     * @param state                  Values saved by RMP-Appirater.
+     * @param appVersionCode         This application version code.
+     * @param previousAppVersionCode The application version code of when it's launched last.
+     * @param currentTimeMillis      Current time of the clock.
+     * @return Show rate dialog if returned true.
+     */
+    boolean isShowRateDialog(RatingState state, int appVersionCode, int previousAppVersionCode, long currentTimeMillis);
+
+}
@@ -0,0 +1,496 @@
+/*
+ * Copyright (C) 2015-2016 Recruit Marketing Partners Co.,Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.recruit_mp.android.rmp_appirater;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Counts launches and events, saves them to a storage and checks showing rate dialog conditions.
+ * <p/>
+ * This doesn't use Android, so it can be used on the JVM, e.g. in tests and benchmarks.
+ * On Android, {@code RmpAppirater.Client} shows rating dialog with this engine.
+ * <p/>
+ * Values are loaded once and kept in memory while the engine is used, so build one per process.
+ * <pre>
+ * RatingEngine engine = new RatingEngine.Builder()
+ *         .setStorage(fakeStorage)
+ *         .setVersionCodeProvider(new FixedVersionCodeProvider(1))
+ *         .build();
+ * boolean showRateDialog = engine.countLaunch(condition);
+ * </pre>
+ */
+public final class RatingEngine {
+
+    /**
+     * Delay before applying significant events counted in memory, to apply many events at once.
+     */
+    private static final long SIGNIFICANT_EVENTS_FLUSH_DELAY_MILLIS = 5000;
+
+    private final StateStore mStore;
+
+    private final VersionCodeProvider mVersionCodeProvider;
+
+    private final ScheduledExecutorService mExecutor;
+
+    private final Metrics mMetrics;
+
+    private final Clock mClock;
+
+    private final SignificantEventCounter mSignificantEventCounter = new SignificantEventCounter();
+
+    private final AtomicBoolean mSignificantEventsFlushScheduled = new AtomicBoolean();
+
+    private final Runnable mSignificantEventsFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mSignificantEventsFlushScheduled.set(false);
+            applySignificantEvents();
+        }
+    };
+
+    /**
+     * Whether the launch is counted only once per process, by {@link #initialize()}. Guarded by mStore.
+     */
+    private volatile boolean mCountLaunchOncePerProcess;
+
+    /**
+     * Whether the launch of this process is counted. Guarded by mStore.
+     */
+    private volatile boolean mProcessLaunchCounted;
+
+    /**
+     * The application version code of when it's launched before the last counted launch. Guarded by mStore.
+     */
+    private volatile int mProcessPreviousAppVersionCode = Integer.MIN_VALUE;
+
+    /**
+     * Whether the launch of this process is handed over to another engine, and initialize() doesn't count it.
+     * Guarded by mStore.
+     */
+    private boolean mHandedOver;
+
+    private RatingEngine(Builder builder) {
+        mVersionCodeProvider = builder.mVersionCodeProvider;
+        mClock = builder.mClock;
+        mExecutor = builder.mExecutor;
+        mMetrics = new Metrics(builder.mMetricsListener);
+        mStore = new StateStore(builder.mStorage, mExecutor, mMetrics);
+    }
+
+    /**
+     * Counts the launch and checks the condition.
+     *
+     * @param condition Showing rate dialog condition.
+     * @return true if rating dialog should be shown.
+     */
+    public boolean countLaunch(RatingCondition condition) {
+        final long loadStartNanos = mMetrics.start();
+        // Load appVersionCode and saved values
+        final int appVersionCode = mVersionCodeProvider.getVersionCode();
+        mStore.getState();
+        applySignificantEvents();
+        mMetrics.end(MetricsListener.PHASE_LOAD, loadStartNanos);
+
+        // Read previousAppVersionCode and count the launch atomically
+        final int previousAppVersionCode;
+        final RatingState launchedState;
+        synchronized (mStore) {
+            if (mCountLaunchOncePerProcess && mProcessLaunchCounted) {
+                // Counted by initialize(). Check the condition in memory.
+                launchedState = mStore.getState();
+            } else {
+                launchedState = countProcessLaunch(appVersionCode);
+            }
+            previousAppVersionCode = mProcessPreviousAppVersionCode;
+        }
+
+        return isShowRateDialog(condition, launchedState, appVersionCode, previousAppVersionCode);
+    }
+
+    /**
+     * Counts the launch of this process and loads values on the background thread.
+     * <p/>
+     * After this, countLaunch doesn't count the launch again in this process, e.g. when the Activity is recreated,
+     * and only checks the condition with values in memory.
+     */
+    public void initialize() {
+        synchronized (mStore) {
+            if (mCountLaunchOncePerProcess) {
+                return;
+            }
+            mCountLaunchOncePerProcess = true;
+        }
+
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final long loadStartNanos = mMetrics.start();
+                final int appVersionCode = mVersionCodeProvider.getVersionCode();
+                mStore.getState();
+                mMetrics.end(MetricsListener.PHASE_LOAD, loadStartNanos);
+
+                synchronized (mStore) {
+                    if (!mProcessLaunchCounted && !mHandedOver) {
+                        countProcessLaunch(appVersionCode);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Initializes like {@link #initialize()}, taking over the launch of this process from the engine replaced by this.
+     *
+     * @param launch Launch counted by the replaced engine, or null to count it by this engine.
+     */
+    void initialize(ProcessLaunch launch) {
+        if (launch != null) {
+            synchronized (mStore) {
+                if (!mProcessLaunchCounted) {
+                    mProcessPreviousAppVersionCode = launch.mPreviousAppVersionCode;
+                    mProcessLaunchCounted = true;
+                }
+            }
+        }
+        initialize();
+    }
+
+    /**
+     * Stops counting the launch of this process by initialize(), and writes changed values immediately.
+     * <p/>
+     * Called when this engine is replaced. The launch counted by this engine is given to the new engine,
+     * so the launch is counted once even if initialize() of this engine is still waiting.
+     *
+     * @return Launch counted by this engine, or null if it's not counted.
+     */
+    ProcessLaunch handOverProcessLaunch() {
+        final ProcessLaunch launch;
+        synchronized (mStore) {
+            mHandedOver = true;
+            launch = mProcessLaunchCounted ? new ProcessLaunch(mProcessPreviousAppVersionCode) : null;
+        }
+        flush();
+        return launch;
+    }
+
+    /**
+     * Counts the launch. Called with the lock of mStore.
+     *
+     * @return Launched state.
+     */
+    private RatingState countProcessLaunch(int appVersionCode) {
+        mProcessPreviousAppVersionCode = mStore.getState().getAppVersionCode();
+        mProcessLaunchCounted = true;
+        return mStore.apply(new RatingEvent(RatingEvent.TYPE_LAUNCH, appVersionCode, mClock.currentTimeMillis()));
+    }
+
+    /**
+     * Checks the condition with the current values, without counting the launch.
+     *
+     * @param condition Showing rate dialog condition.
+     * @return true if rating dialog should be shown.
+     */
+    public boolean isShowRateDialog(RatingCondition condition) {
+        final long loadStartNanos = mMetrics.start();
+        applySignificantEvents();
+        final RatingState state = mStore.getState();
+        mMetrics.end(MetricsListener.PHASE_LOAD, loadStartNanos);
+        return isShowRateDialog(condition, state);
+    }
+
+    /**
+     * Checks the condition with the given values.
+     */
+    boolean isShowRateDialog(RatingCondition condition, RatingState state) {
+        final int appVersionCode = mVersionCodeProvider.getVersionCode();
+        // After initialize(), compare with the version before the launch of this process.
+        final int previousAppVersionCode = (mCountLaunchOncePerProcess && mProcessLaunchCounted)
+                ? mProcessPreviousAppVersionCode : state.getAppVersionCode();
+        return isShowRateDialog(condition, state, appVersionCode, previousAppVersionCode);
+    }
+
+    private boolean isShowRateDialog(RatingCondition condition, RatingState state,
+                                     int appVersionCode, int previousAppVersionCode) {
+        final long evaluateStartNanos = mMetrics.start();
+        final boolean isShowRateDialog = condition.isShowRateDialog(state, appVersionCode, previousAppVersionCode,
+                mClock.currentTimeMillis());
+        mMetrics.end(MetricsListener.PHASE_EVALUATE, evaluateStartNanos);
+        return isShowRateDialog;
+    }
+
+    /**
+     * Reset saved conditions if app version changed.
+     * <p/>
+     * The current version is saved with the reset values, so calling this again does nothing.
+     */
+    public void resetIfAppVersionChanged() {
+        final int appVersionCode = mVersionCodeProvider.getVersionCode();
+
+        edit(new RatingStateEditor.Transaction() {
+            @Override
+            public void run(RatingStateEditor editor) {
+                if (editor.getState().getAppVersionCode() != appVersionCode) {
+                    editor.reset(appVersionCode);
+                }
+            }
+        });
+    }
+
+    /**
+     * Changes saved values atomically.
+     * <p/>
+     * The transaction is called with the lock of the values, and the changes are applied all at once after it returns.
+     * If the transaction throws an exception, nothing is changed.
+     * Significant events counted in memory are applied before the transaction, so the transaction sees them,
+     * and {@link RatingStateEditor#reset(int)} clears them.
+     * The changed values are written to storage by one write on the background thread. Call {@link #flush()}
+     * to write them immediately.
+     *
+     * @param transaction Transaction which changes values. Don't block in it.
+     * @return Values after the transaction.
+     */
+    public RatingState edit(RatingStateEditor.Transaction transaction) {
+        synchronized (mStore) {
+            // Otherwise events counted before the transaction would be applied after it.
+            applySignificantEvents();
+            final RatingStateEditor editor = new RatingStateEditor(mStore.getState());
+            final RatingState changedState;
+            try {
+                transaction.run(editor);
+            } finally {
+                changedState = editor.close();
+            }
+            if (changedState == null) {
+                return mStore.getState();
+            }
+            mStore.setState(changedState);
+            return changedState;
+        }
+    }
+
+    /**
+     * Tells that the user did a significant event, e.g. completed a purchase or a search.
+     * <p/>
+     * This doesn't take a lock, and can be called frequently from any thread. Events are counted in memory,
+     * and applied to the values in a batch a few seconds later, when the condition is checked, or by {@link #flush()}.
+     */
+    public void userDidSignificantEvent() {
+        mSignificantEventCounter.increment();
+        if (!mSignificantEventsFlushScheduled.get() && mSignificantEventsFlushScheduled.compareAndSet(false, true)) {
+            mExecutor.schedule(mSignificantEventsFlushRunnable, SIGNIFICANT_EVENTS_FLUSH_DELAY_MILLIS,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Applies significant events counted in memory to the values as a batch.
+     */
+    private void applySignificantEvents() {
+        long count = mSignificantEventCounter.drain();
+        if (count == 0) {
+            return;
+        }
+        final int appVersionCode = mVersionCodeProvider.getVersionCode();
+        final long now = mClock.currentTimeMillis();
+        while (count > 0) {
+            final int batchCount = (int) Math.min(count, Integer.MAX_VALUE);
+            mStore.apply(new RatingEvent(RatingEvent.TYPE_SIGNIFICANT_EVENT, appVersionCode, now, batchCount));
+            count -= batchCount;
+        }
+    }
+
+    /**
+     * Records the answer or the showing of rating dialog.
+     *
+     * @param type One of TYPE_SHOW, TYPE_RATE, TYPE_REMIND and TYPE_DECLINE of {@link RatingEvent}.
+     */
+    public void recordEvent(int type) {
+        mStore.apply(new RatingEvent(type, mVersionCodeProvider.getVersionCode(), mClock.currentTimeMillis()));
+    }
+
+    /**
+     * Writes changed values to storage immediately.
+     */
+    public void flush() {
+        applySignificantEvents();
+        mStore.flush();
+    }
+
+    /**
+     * Gets values saved by RMP-Appirater.
+     *
+     * @return Current values.
+     */
+    public RatingState getRatingState() {
+        applySignificantEvents();
+        return mStore.getState();
+    }
+
+    /**
+     * Gets values if they are loaded, without loading them.
+     *
+     * @return Current values, or null if they are not loaded yet.
+     */
+    RatingState peekRatingState() {
+        return mStore.peekState();
+    }
+
+    void setOnStateChangedListener(StateStore.OnStateChangedListener listener) {
+        mStore.setOnStateChangedListener(listener);
+    }
+
+    ScheduledExecutorService getExecutor() {
+        return mExecutor;
+    }
+
+    Metrics getMetrics() {
+        return mMetrics;
+    }
+
+    Clock getClock() {
+        return mClock;
+    }
+
+    /**
+     * Launch of this process which is counted by an engine.
+     */
+    static final class ProcessLaunch {
+
+        /**
+         * The application version code of when it's launched before this launch.
+         */
+        final int mPreviousAppVersionCode;
+
+        ProcessLaunch(int previousAppVersionCode) {
+            mPreviousAppVersionCode = previousAppVersionCode;
+        }
+
+    }
+
+    /**
+     * Background thread shared by engines which aren't given an executor.
+     */
+    private static class DefaultExecutorHolder {
+        static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                final Thread thread = new Thread(r, "RatingEngine");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Builder of {@link RatingEngine}.
+     */
+    public static final class Builder {
+
+        private RatingStateStorage mStorage;
+
+        private VersionCodeProvider mVersionCodeProvider;
+
+        private ScheduledExecutorService mExecutor;
+
+        private MetricsListener mMetricsListener;
+
+        private Clock mClock;
+
+        /**
+         * Sets storage of values. This must be set.
+         *
+         * @param storage Storage
+         * @return This builder.
+         */
+        public Builder setStorage(RatingStateStorage storage) {
+            mStorage = storage;
+            return this;
+        }
+
+        /**
+         * Sets provider of this application version code. This must be set.
+         *
+         * @param versionCodeProvider Provider
+         * @return This builder.
+         */
+        public Builder setVersionCodeProvider(VersionCodeProvider versionCodeProvider) {
+            mVersionCodeProvider = versionCodeProvider;
+            return this;
+        }
+
+        /**
+         * Sets executor to load and save values.
+         *
+         * @param executor Executor, or null to use a background thread shared by engines.
+         * @return This builder.
+         */
+        public Builder setExecutor(ScheduledExecutorService executor) {
+            mExecutor = executor;
+            return this;
+        }
+
+        /**
+         * Sets listener which receives how long each operation takes and how many times events happen.
+         *
+         * @param metricsListener Listener, or null not to measure.
+         * @return This builder.
+         */
+        public Builder setMetricsListener(MetricsListener metricsListener) {
+            mMetricsListener = metricsListener;
+            return this;
+        }
+
+        /**
+         * Sets source of the current time, which is used to save dates and to check conditions.
+         *
+         * @param clock Clock, or null to use {@link Clock#SYSTEM}.
+         * @return This builder.
+         */
+        public Builder setClock(Clock clock) {
+            mClock = clock;
+            return this;
+        }
+
+        /**
+         * Builds the engine.
+         *
+         * @return Engine
+         * @throws IllegalStateException if storage or version code provider is not set.
+         */
+        public RatingEngine build() {
+            if (mStorage == null) {
+                throw new IllegalStateException("Storage must be set.");
+            }
+            if (mVersionCodeProvider == null) {
+                throw new IllegalStateException("VersionCodeProvider must be set.");
+            }
+            if (mExecutor == null) {
+                mExecutor = DefaultExecutorHolder.EXECUTOR;
+            }
+            if (mClock == null) {
+                mClock = Clock.SYSTEM;
+            }
+            return new RatingEngine(this);
+        }
+
+    }
+
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2015-2016 Recruit Marketing Partners Co.,Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.recruit_mp.android.rmp_appirater;
+
+/**
+ * An interaction recorded by RMP-Appirater.
+ */
+public final class RatingEvent {
+
+    /**
+     * The app is launched.
+     */
+    public static final int TYPE_LAUNCH = 1;
+
+    /**
+     * Rating dialog is shown.
+     */
+    public static final int TYPE_SHOW = 2;
+
+    /**
+     * "Rate" button is clicked.
+     */
+    public static final int TYPE_RATE = 3;
+
+    /**
+     * "Remind me later" button is clicked, or rating dialog is canceled.
+     */
+    public static final int TYPE_REMIND = 4;
+
+    /**
+     * "No, Thanks" button is clicked.
+     */
+    public static final int TYPE_DECLINE = 5;
+
+    /**
+     * Significant events happened, see {@link RatingEngine#userDidSignificantEvent()}.
+     */
+    public static final int TYPE_SIGNIFICANT_EVENT = 6;
+
+    private final int mType;
+
+    private final int mAppVersionCode;
+
+    private final long mTimestamp;
+
+    private final int mCount;
+
+    /**
+     * Constructor.
+     *
+     * @param type           One of TYPE_ constants.
+     * @param appVersionCode Application version code of when the event happened.
+     * @param timestamp      Date of when the event happened, in epoch milliseconds.
+     */
+    public RatingEvent(int type, int appVersionCode, long timestamp) {
+        this(type, appVersionCode, timestamp, 1);
+    }
+
+    /**
+     * Constructor of the event which happened multiple times, e.g. a batch of significant events.
+     *
+     * @param type           One of TYPE_ constants.
+     * @param appVersionCode Application version code of when the event happened.
+     * @param timestamp      Date of when the event happened last, in epoch milliseconds.
+     * @param count          Number of times the event happened.
+     */
+    public RatingEvent(int type, int appVersionCode, long timestamp, int count) {
+        mType = type;
+        mAppVersionCode = appVersionCode;
+        mTimestamp = timestamp;
+        mCount = count;
+    }
+
+    /**
+     * Gets type of this event.
+     *
+     * @return One of TYPE_ constants.
+     */
+    public int getType() {
+        return mType;
+    }
+
+    /**
+     * Gets application version code of when the event happened.
+     *
+     * @return Application version code, or Integer.MIN_VALUE if unknown.
+     */
+    public int getAppVersionCode() {
+        return mAppVersionCode;
+    }
+
+    /**
+     * Gets date of when the event happened.
+     *
+     * @return Date in epoch milliseconds.
+     */
+    public long getTimestamp() {
+        return mTimestamp;
+    }
+
+    /**
+     * Gets number of times the event happened.
+     *
+     * @return Count, which is 1 except batches of {@link #TYPE_SIGNIFICANT_EVENT}.
+     */
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * Applies this event to the state.
+     *
+     * @param state State before this event.
+     * @return State after this event.
+     */
+    RatingState applyTo(RatingState state) {
+        switch (mType) {
+            case TYPE_LAUNCH: {
+                RatingState.Builder builder = new RatingState.Builder(state);
+                // Increment appLaunchCount
+                builder.setAppLaunchCount(state.getAppLaunchCount() + 1);
+                // Increment appThisVersionCodeLaunchCount, which is reset if the version is changed.
+                builder.setAppThisVersionCodeLaunchCount(state.getAppThisVersionCodeLaunchCount(mAppVersionCode) + 1);
+                // Set app first launch date.
+                if (state.getFirstLaunchDate() == 0) {
+                    builder.setFirstLaunchDate(mTimestamp);
+                }
+                // Set app version code, and count the launch of the version.
+                if (mAppVersionCode != Integer.MIN_VALUE) {
+                    builder.setAppVersionCode(mAppVersionCode);
+                    builder.setVersionHistory(state.getVersionHistory().withLaunch(mAppVersionCode, mTimestamp));
+                }
+                return builder.build();
+            }
+            case TYPE_SHOW:
+                return withOutcome(state, VersionHistory.OUTCOME_SHOWN);
+            case TYPE_RATE:
+                return new RatingState.Builder(withOutcome(state, VersionHistory.OUTCOME_RATED))
+                        .setRateClickDate(mTimestamp).build();
+            case TYPE_REMIND:
+                return new RatingState.Builder(withOutcome(state, VersionHistory.OUTCOME_REMINDED))
+                        .setReminderClickDate(mTimestamp).build();
+            case TYPE_DECLINE:
+                return new RatingState.Builder(withOutcome(state, VersionHistory.OUTCOME_DECLINED))
+                        .setDoNotShowAgain(true).build();
+            case TYPE_SIGNIFICANT_EVENT:
+                return new RatingState.Builder(state)
+                        .setSignificantEventCount(state.getSignificantEventCount() + mCount).build();
+            default:
+                return state;
+        }
+    }
+
+    private RatingState withOutcome(RatingState state, int outcome) {
+        final VersionHistory versionHistory = state.getVersionHistory().withOutcome(mAppVersionCode, outcome);
+        if (versionHistory == state.getVersionHistory()) {
+            return state;
+        }
+        return new RatingState.Builder(state).setVersionHistory(versionHistory).build();
+    }
+
+}
@@ -0,0 +1,538 @@
+/*
+ * Copyright (C) 2015-2016 Recruit Marketing Partners Co.,Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.recruit_mp.android.rmp_appirater;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * {@link RatingStateStorage} which appends events to a binary log file instead of rewriting all values.
+ * <p/>
+ * Saving an event is a sequential append of a small record. When the log grows, older events are compacted
+ * into a snapshot file, and recent events are kept in the log as history, see {@link #getEvents()}.
+ * A broken record at the end of the log, e.g. by a crash while writing, is dropped on loading.
+ * <p/>
+ * This doesn't use Android, so the files can be tested on the JVM.
+ * EventLogStorage of the library saves the files of the application with this.
+ * <p/>
+ * The values saved by the migration source are migrated on the first load, when there is no snapshot.
+ * If the snapshot is broken, the values of the migration source may be much older than the log,
+ * so the log of the newest generation is kept and replayed instead. Values compacted into the broken snapshot are lost.
+ * <p/>
+ * If the files can't be read, {@link #load()} returns null, and nothing is written until they are read.
+ */
+public class RatingEventLog implements RatingStateStorage {
+
+    private static final String SNAPSHOT_FILE_NAME = "snapshot";
+    private static final String LOG_FILE_NAME_PREFIX = "events-";
+
+    private static final int SNAPSHOT_MAGIC = 0x524d5053;
+    private static final int SNAPSHOT_FORMAT_VERSION = 3;
+
+    /**
+     * Format without version history, which is still readable.
+     */
+    private static final int SNAPSHOT_FORMAT_VERSION_1 = 1;
+
+    /**
+     * Format without count of significant events, which is still readable.
+     */
+    private static final int SNAPSHOT_FORMAT_VERSION_2 = 2;
+
+    /**
+     * type (1) + appVersionCode (4) + timestamp (8) + CRC32 (4)
+     */
+    private static final int RECORD_SIZE = 17;
+
+    /**
+     * Record of {@link RatingEvent#TYPE_SIGNIFICANT_EVENT}, which has count (4) before CRC32.
+     */
+    private static final int COUNTED_RECORD_SIZE = 21;
+
+    /**
+     * Number of events in the log which triggers compaction.
+     */
+    private static final int COMPACTION_THRESHOLD = 256;
+
+    /**
+     * Number of recent events kept in the log after compaction.
+     */
+    private static final int RETAINED_EVENT_COUNT = 64;
+
+    // Results of reading the snapshot
+    private static final int SNAPSHOT_READ = 0;
+    private static final int SNAPSHOT_MISSING = 1;
+    private static final int SNAPSHOT_BROKEN = 2;
+    private static final int SNAPSHOT_UNREADABLE = 3;
+
+    private final File mDirectory;
+
+    private final RatingStateStorage mMigrationSource;
+
+    /**
+     * State saved in the snapshot file, or null until loaded. Guarded by this.
+     */
+    private RatingState mSnapshotState;
+
+    /**
+     * Generation of the log file which follows the snapshot. Guarded by this.
+     */
+    private long mGeneration;
+
+    /**
+     * Events in the log file. Guarded by this.
+     */
+    private final List<RatingEvent> mEvents = new ArrayList<RatingEvent>();
+
+    /**
+     * Constructor.
+     *
+     * @param directory       Directory to save files.
+     * @param migrationSource Storage to migrate values from on the first load, or null.
+     */
+    public RatingEventLog(File directory, RatingStateStorage migrationSource) {
+        mDirectory = directory;
+        mMigrationSource = migrationSource;
+    }
+
+    @Override
+    public synchronized RatingState load() {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            onWarning("Failed to create directory " + mDirectory, null);
+            return null;
+        }
+
+        switch (readSnapshot()) {
+            case SNAPSHOT_READ:
+                break;
+            case SNAPSHOT_MISSING:
+                // Migrate values of the old storage.
+                if (!resetSnapshot(0, true)) {
+                    return null;
+                }
+                break;
+            case SNAPSHOT_BROKEN:
+                // Keep the events of the newest generation. Its snapshot is the migrated values only if it's the first.
+                final long generation = findNewestGeneration();
+                if (!resetSnapshot(generation, generation == 0)) {
+                    return null;
+                }
+                break;
+            default:
+                mSnapshotState = null;
+                return null;
+        }
+
+        mEvents.clear();
+        final File logFile = getLogFile(mGeneration);
+        final long validLength = readLog(logFile, mEvents);
+        if (validLength < 0) {
+            mSnapshotState = null;
+            return null;
+        }
+        if (logFile.length() != validLength) {
+            // Drop a broken record at the end.
+            writeLog(logFile, mEvents);
+        }
+        deleteOtherLogFiles(mGeneration);
+
+        RatingState state = mSnapshotState;
+        for (RatingEvent event : mEvents) {
+            state = event.applyTo(state);
+        }
+        return state;
+    }
+
+    @Override
+    public synchronized void save(RatingState state, List<RatingEvent> events) {
+        if (mSnapshotState == null && load() == null) {
+            return;
+        }
+
+        if (events == null) {
+            // The state is changed directly, so it can't be described by events.
+            compact(state, new ArrayList<RatingEvent>());
+            return;
+        }
+        if (events.isEmpty()) {
+            return;
+        }
+
+        final File logFile = getLogFile(mGeneration);
+        if (!appendLog(logFile, events)) {
+            // A broken record may be left at the end, and events appended after it would be dropped on loading.
+            final List<RatingEvent> allEvents = new ArrayList<RatingEvent>(mEvents);
+            allEvents.addAll(events);
+            if (!writeLog(logFile, allEvents)) {
+                return;
+            }
+        }
+        mEvents.addAll(events);
+
+        if (mEvents.size() >= COMPACTION_THRESHOLD) {
+            final int compactedCount = mEvents.size() - RETAINED_EVENT_COUNT;
+            RatingState snapshotState = mSnapshotState;
+            for (int i = 0; i < compactedCount; i++) {
+                snapshotState = mEvents.get(i).applyTo(snapshotState);
+            }
+            compact(snapshotState, new ArrayList<RatingEvent>(mEvents.subList(compactedCount, mEvents.size())));
+        }
+    }
+
+    /**
+     * Gets recent events. Older events are compacted into the snapshot.
+     *
+     * @return Events in order.
+     */
+    public synchronized List<RatingEvent> getEvents() {
+        if (mSnapshotState == null && load() == null) {
+            return new ArrayList<RatingEvent>();
+        }
+        return new ArrayList<RatingEvent>(mEvents);
+    }
+
+    /**
+     * Called when a file can't be read or written, or is broken.
+     * <p/>
+     * Override this to log the warning. This does nothing by default.
+     *
+     * @param message   Message
+     * @param throwable Cause, or null.
+     */
+    protected void onWarning(String message, Throwable throwable) {
+    }
+
+    /**
+     * Writes a new snapshot of the generation, whose log is replayed on it.
+     *
+     * @param migrate true to start from the values of the migration source, false to start from nothing.
+     * @return false if the values can't be read or written.
+     */
+    private boolean resetSnapshot(long generation, boolean migrate) {
+        final RatingState state = (migrate && mMigrationSource != null) ? mMigrationSource.load() : RatingState.EMPTY;
+        if (state == null || !writeSnapshot(state, generation)) {
+            mSnapshotState = null;
+            return false;
+        }
+        mSnapshotState = state;
+        mGeneration = generation;
+        return true;
+    }
+
+    /**
+     * Finds the newest generation of the log files.
+     *
+     * @return Generation, or 0 if there is no log file.
+     */
+    private long findNewestGeneration() {
+        long newestGeneration = 0;
+        final File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return newestGeneration;
+        }
+        for (File file : files) {
+            final String name = file.getName();
+            if (name.startsWith(LOG_FILE_NAME_PREFIX)) {
+                try {
+                    newestGeneration = Math.max(newestGeneration,
+                            Long.parseLong(name.substring(LOG_FILE_NAME_PREFIX.length())));
+                } catch (NumberFormatException e) {
+                    // Not a log file
+                }
+            }
+        }
+        return newestGeneration;
+    }
+
+    /**
+     * Writes snapshotState and events as the next generation.
+     * <p/>
+     * Values in memory are changed only when both files are written, so they keep matching the current generation
+     * if this fails.
+     */
+    private void compact(RatingState snapshotState, List<RatingEvent> events) {
+        final long generation = mGeneration + 1;
+        // Write the new log first. The new generation becomes valid when the snapshot is replaced.
+        if (!writeLog(getLogFile(generation), events) || !writeSnapshot(snapshotState, generation)) {
+            return;
+        }
+        deleteOtherLogFiles(generation);
+        mSnapshotState = snapshotState;
+        mGeneration = generation;
+        mEvents.clear();
+        mEvents.addAll(events);
+    }
+
+    private File getLogFile(long generation) {
+        return new File(mDirectory, LOG_FILE_NAME_PREFIX + generation);
+    }
+
+    private void deleteOtherLogFiles(long generation) {
+        final File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        final String logFileName = getLogFile(generation).getName();
+        for (File file : files) {
+            if (file.getName().startsWith(LOG_FILE_NAME_PREFIX) && !file.getName().equals(logFileName)) {
+                if (!file.delete()) {
+                    onWarning("Failed to delete " + file, null);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the snapshot, and sets the state and the generation of it.
+     *
+     * @return One of SNAPSHOT_*.
+     */
+    private int readSnapshot() {
+        final File file = new File(mDirectory, SNAPSHOT_FILE_NAME);
+        if (!file.exists()) {
+            return SNAPSHOT_MISSING;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new FileInputStream(file));
+            final byte[] bytes = new byte[(int) file.length()];
+            in.readFully(bytes);
+            if (bytes.length < 4) {
+                onWarning("Broken snapshot " + file, null);
+                return SNAPSHOT_BROKEN;
+            }
+            final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            final CRC32 crc = new CRC32();
+            crc.update(bytes, 0, bytes.length - 4);
+            if (buffer.getInt(bytes.length - 4) != (int) crc.getValue() || buffer.getInt() != SNAPSHOT_MAGIC) {
+                onWarning("Broken snapshot " + file, null);
+                return SNAPSHOT_BROKEN;
+            }
+            final int formatVersion = buffer.getInt();
+            if (formatVersion < SNAPSHOT_FORMAT_VERSION_1 || formatVersion > SNAPSHOT_FORMAT_VERSION) {
+                onWarning("Unknown snapshot format " + formatVersion, null);
+                return SNAPSHOT_BROKEN;
+            }
+            final long generation = buffer.getLong();
+            final RatingState.Builder builder = new RatingState.Builder()
+                    .setAppLaunchCount(buffer.getLong())
+                    .setAppThisVersionCodeLaunchCount(buffer.getLong())
+                    .setFirstLaunchDate(buffer.getLong())
+                    .setAppVersionCode(buffer.getInt())
+                    .setRateClickDate(buffer.getLong())
+                    .setReminderClickDate(buffer.getLong())
+                    .setDoNotShowAgain(buffer.get() != 0);
+            if (formatVersion >= SNAPSHOT_FORMAT_VERSION_2) {
+                builder.setVersionHistory(readVersionHistory(buffer));
+            }
+            if (formatVersion >= SNAPSHOT_FORMAT_VERSION) {
+                builder.setSignificantEventCount(buffer.getLong());
+            }
+            mSnapshotState = builder.build();
+            mGeneration = generation;
+            return SNAPSHOT_READ;
+        } catch (IOException e) {
+            onWarning("Failed to read " + file, e);
+            return SNAPSHOT_UNREADABLE;
+        } catch (RuntimeException e) {
+            // e.g. BufferUnderflowException by a truncated snapshot.
+            onWarning("Broken snapshot " + file, e);
+            return SNAPSHOT_BROKEN;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private static VersionHistory readVersionHistory(ByteBuffer buffer) {
+        final int size = buffer.get();
+        final int[] versionCodes = new int[Math.max(0, size)];
+        final long[] launchCounts = new long[versionCodes.length];
+        final long[] firstLaunchDates = new long[versionCodes.length];
+        final int[] outcomes = new int[versionCodes.length];
+        for (int i = 0; i < versionCodes.length; i++) {
+            versionCodes[i] = buffer.getInt();
+            launchCounts[i] = buffer.getLong();
+            firstLaunchDates[i] = buffer.getLong();
+            outcomes[i] = buffer.getInt();
+        }
+        return VersionHistory.of(versionCodes, launchCounts, firstLaunchDates, outcomes);
+    }
+
+    private boolean writeSnapshot(RatingState state, long generation) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream data = new DataOutputStream(bytes);
+        try {
+            data.writeInt(SNAPSHOT_MAGIC);
+            data.writeInt(SNAPSHOT_FORMAT_VERSION);
+            data.writeLong(generation);
+            data.writeLong(state.getAppLaunchCount());
+            data.writeLong(state.getAppThisVersionCodeLaunchCount());
+            data.writeLong(state.getFirstLaunchDate());
+            data.writeInt(state.getAppVersionCode());
+            data.writeLong(state.getRateClickDate());
+            data.writeLong(state.getReminderClickDate());
+            data.writeByte(state.isDoNotShowAgain() ? 1 : 0);
+            final VersionHistory versionHistory = state.getVersionHistory();
+            data.writeByte(versionHistory.size());
+            for (int i = 0; i < versionHistory.size(); i++) {
+                data.writeInt(versionHistory.getVersionCode(i));
+                data.writeLong(versionHistory.getLaunchCount(i));
+                data.writeLong(versionHistory.getFirstLaunchDate(i));
+                data.writeInt(versionHistory.getOutcomes(i));
+            }
+            data.writeLong(state.getSignificantEventCount());
+            final CRC32 crc = new CRC32();
+            crc.update(bytes.toByteArray());
+            data.writeInt((int) crc.getValue());
+        } catch (IOException e) {
+            // ByteArrayOutputStream doesn't throw IOException.
+            throw new IllegalStateException(e);
+        }
+
+        // Replace the snapshot atomically.
+        final File file = new File(mDirectory, SNAPSHOT_FILE_NAME);
+        final File tempFile = new File(mDirectory, SNAPSHOT_FILE_NAME + ".tmp");
+        if (!writeFile(tempFile, bytes.toByteArray(), false)) {
+            return false;
+        }
+        if (!tempFile.renameTo(file)) {
+            onWarning("Failed to rename " + tempFile, null);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Reads valid records of the log file.
+     *
+     * @return Length of valid records in bytes, or -1 if the file can't be read.
+     */
+    private long readLog(File file, List<RatingEvent> events) {
+        if (!file.exists()) {
+            return 0;
+        }
+
+        DataInputStream in = null;
+        long length = 0;
+        try {
+            in = new DataInputStream(new FileInputStream(file));
+            final byte[] record = new byte[COUNTED_RECORD_SIZE];
+            final ByteBuffer buffer = ByteBuffer.wrap(record);
+            final CRC32 crc = new CRC32();
+            while (true) {
+                final int type = in.read();
+                if (type < 0) {
+                    break;
+                }
+                final int recordSize = getRecordSize(type);
+                record[0] = (byte) type;
+                try {
+                    in.readFully(record, 1, recordSize - 1);
+                } catch (IOException e) {
+                    // A broken record at the end.
+                    break;
+                }
+                crc.reset();
+                crc.update(record, 0, recordSize - 4);
+                if (buffer.getInt(recordSize - 4) != (int) crc.getValue()) {
+                    onWarning("Broken record in " + file, null);
+                    break;
+                }
+                final int count = (recordSize == COUNTED_RECORD_SIZE) ? buffer.getInt(13) : 1;
+                events.add(new RatingEvent(type, buffer.getInt(1), buffer.getLong(5), count));
+                length += recordSize;
+            }
+        } catch (IOException e) {
+            onWarning("Failed to read " + file, e);
+            return -1;
+        } finally {
+            closeQuietly(in);
+        }
+        return length;
+    }
+
+    private static int getRecordSize(int type) {
+        return (type == RatingEvent.TYPE_SIGNIFICANT_EVENT) ? COUNTED_RECORD_SIZE : RECORD_SIZE;
+    }
+
+    private boolean writeLog(File file, List<RatingEvent> events) {
+        return writeFile(file, encode(events), false);
+    }
+
+    private boolean appendLog(File file, List<RatingEvent> events) {
+        return writeFile(file, encode(events), true);
+    }
+
+    private static byte[] encode(List<RatingEvent> events) {
+        int length = 0;
+        for (RatingEvent event : events) {
+            length += getRecordSize(event.getType());
+        }
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        final CRC32 crc = new CRC32();
+        for (RatingEvent event : events) {
+            final int start = buffer.position();
+            buffer.put((byte) event.getType());
+            buffer.putInt(event.getAppVersionCode());
+            buffer.putLong(event.getTimestamp());
+            if (getRecordSize(event.getType()) == COUNTED_RECORD_SIZE) {
+                buffer.putInt(event.getCount());
+            }
+            crc.reset();
+            crc.update(buffer.array(), start, buffer.position() - start);
+            buffer.putInt((int) crc.getValue());
+        }
+        return buffer.array();
+    }
+
+    private boolean writeFile(File file, byte[] bytes, boolean append) {
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(file, append);
+            out.write(bytes);
+            out.getFD().sync();
+            return true;
+        } catch (IOException e) {
+            onWarning("Failed to write " + file, e);
+            return false;
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+    }
+
+}
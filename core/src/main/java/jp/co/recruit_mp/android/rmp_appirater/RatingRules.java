@@ -0,0 +1,572 @@
+/*
+ * Copyright (C) 2015-2016 Recruit Marketing Partners Co.,Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.recruit_mp.android.rmp_appirater;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Declarative showing rate dialog conditions.
+ * <p/>
+ * Rules built by {@link Builder} are compiled into a single condition which compares each value once.
+ * Rules combined by {@link #allOf} are merged into a single condition too, when they can be.
+ * <pre>
+ * RmpAppirater.appLaunched(this, new RatingRules.Builder()
+ *         .minLaunchCount(5)
+ *         .minDaysSinceFirstLaunch(3)
+ *         .minDaysSinceReminder(1)
+ *         .build());
+ * </pre>
+ */
+public final class RatingRules {
+
+    private RatingRules() {
+    }
+
+    /**
+     * Creates a builder with the default values of Appirater.
+     * <p/>
+     * Show rating dialog after 20 launches and 30 days from the first launch,
+     * and 1 day after "Remind me later" is clicked.
+     *
+     * @return Builder with the default values of Appirater.
+     */
+    public static Builder appiraterDefaults() {
+        return new Builder()
+                .minLaunchCount(20)
+                .minDaysSinceFirstLaunch(30)
+                .minDaysSinceReminder(1);
+    }
+
+    /**
+     * Creates a builder which shows rating dialog to the users who use this version a while.
+     * <p/>
+     * Show rating dialog after 5 launches of this version and 3 days from the first launch,
+     * and 3 days after "Remind me later" is clicked.
+     *
+     * @return Builder with the values.
+     */
+    public static Builder engagedUsers() {
+        return new Builder()
+                .minThisVersionLaunchCount(5)
+                .minDaysSinceFirstLaunch(3)
+                .minDaysSinceReminder(3);
+    }
+
+    /**
+     * Creates a condition which is true if all of the conditions are true.
+     * <p/>
+     * Conditions built by {@link Builder} are merged into one condition which compares each value once,
+     * unless they require launch counts of different recent versions.
+     *
+     * @param conditions Conditions
+     * @return Composed condition.
+     */
+    public static MillisShowRateDialogCondition allOf(MillisShowRateDialogCondition... conditions) {
+        final List<MillisShowRateDialogCondition> flattened =
+                new ArrayList<MillisShowRateDialogCondition>();
+        flattenAllOf(conditions, flattened);
+
+        CompiledCondition merged = null;
+        final List<MillisShowRateDialogCondition> others =
+                new ArrayList<MillisShowRateDialogCondition>();
+        for (MillisShowRateDialogCondition condition : flattened) {
+            if (condition instanceof CompiledCondition) {
+                final CompiledCondition mergedCondition = (merged != null)
+                        ? merged.and((CompiledCondition) condition) : (CompiledCondition) condition;
+                if (mergedCondition != null) {
+                    merged = mergedCondition;
+                    continue;
+                }
+            }
+            others.add(condition);
+        }
+        if (merged != null) {
+            // Check the merged condition first, which doesn't call other methods.
+            others.add(0, merged);
+        }
+        if (others.size() == 1) {
+            return others.get(0);
+        }
+        return new AllOfCondition(others.toArray(new MillisShowRateDialogCondition[others.size()]));
+    }
+
+    /**
+     * Creates a condition which is true if any of the conditions is true.
+     * <p/>
+     * Nested conditions created by this are flattened into one.
+     *
+     * @param conditions Conditions
+     * @return Composed condition.
+     */
+    public static MillisShowRateDialogCondition anyOf(MillisShowRateDialogCondition... conditions) {
+        final List<MillisShowRateDialogCondition> flattened =
+                new ArrayList<MillisShowRateDialogCondition>();
+        flattenAnyOf(conditions, flattened);
+        if (flattened.size() == 1) {
+            return flattened.get(0);
+        }
+        return new AnyOfCondition(flattened.toArray(new MillisShowRateDialogCondition[flattened.size()]));
+    }
+
+    private static void flattenAllOf(MillisShowRateDialogCondition[] conditions,
+                                     List<MillisShowRateDialogCondition> flattened) {
+        for (MillisShowRateDialogCondition condition : conditions) {
+            if (condition instanceof AllOfCondition) {
+                flattenAllOf(((AllOfCondition) condition).mConditions, flattened);
+            } else {
+                flattened.add(condition);
+            }
+        }
+    }
+
+    private static void flattenAnyOf(MillisShowRateDialogCondition[] conditions,
+                                     List<MillisShowRateDialogCondition> flattened) {
+        for (MillisShowRateDialogCondition condition : conditions) {
+            if (condition instanceof AnyOfCondition) {
+                flattenAnyOf(((AnyOfCondition) condition).mConditions, flattened);
+            } else {
+                flattened.add(condition);
+            }
+        }
+    }
+
+    /**
+     * Builder of showing rate dialog condition.
+     * <p/>
+     * By default, the condition is true if user isn't rating yet and don't select "Not show again".
+     */
+    public static class Builder {
+
+        private long mMinLaunchCount;
+
+        private long mMinThisVersionLaunchCount;
+
+        private long mMinMillisSinceFirstLaunch;
+
+        private long mMinMillisSinceReminder;
+
+        private int mMinAppVersionCode = Integer.MIN_VALUE;
+
+        private int mRecentVersionCount;
+
+        private long mMinRecentVersionLaunchCount;
+
+        private long mMinSignificantEventCount;
+
+        private boolean mShowOnVersionChange = true;
+
+        private boolean mShowAfterRated;
+
+        private boolean mShowAfterDeclined;
+
+        private Clock mClock = Clock.SYSTEM;
+
+        /**
+         * Constructor.
+         */
+        public Builder() {
+        }
+
+        /**
+         * Sets the minimum launch count of this application.
+         *
+         * @param launchCount Launch count.
+         * @return This builder.
+         */
+        public Builder minLaunchCount(long launchCount) {
+            mMinLaunchCount = launchCount;
+            return this;
+        }
+
+        /**
+         * Sets the minimum launch count of this application current version.
+         *
+         * @param launchCount Launch count.
+         * @return This builder.
+         */
+        public Builder minThisVersionLaunchCount(long launchCount) {
+            mMinThisVersionLaunchCount = launchCount;
+            return this;
+        }
+
+        /**
+         * Sets the minimum days since the first launch.
+         *
+         * @param days Days
+         * @return This builder.
+         */
+        public Builder minDaysSinceFirstLaunch(long days) {
+            mMinMillisSinceFirstLaunch = TimeUnit.DAYS.toMillis(days);
+            return this;
+        }
+
+        /**
+         * Sets the minimum days since "Remind me later" is clicked.
+         *
+         * @param days Days
+         * @return This builder.
+         */
+        public Builder minDaysSinceReminder(long days) {
+            mMinMillisSinceReminder = TimeUnit.DAYS.toMillis(days);
+            return this;
+        }
+
+        /**
+         * Sets the minimum application version code to show rating dialog.
+         *
+         * @param appVersionCode Application version code.
+         * @return This builder.
+         */
+        public Builder minAppVersionCode(int appVersionCode) {
+            mMinAppVersionCode = appVersionCode;
+            return this;
+        }
+
+        /**
+         * Sets the minimum launch count of each of the recent versions, e.g. to show rating dialog to users
+         * who have kept using this application across updates.
+         * <p/>
+         * The launch counts are read from {@link RatingState#getVersionHistory()},
+         * which keeps up to {@link VersionHistory#MAX_SIZE} versions.
+         * The condition built with this can't be checked with the values of the primitive method,
+         * which doesn't receive the history. It throws {@link UnsupportedOperationException}.
+         *
+         * @param versionCount Number of the recent versions, including the current version.
+         * @param launchCount  Launch count of each version.
+         * @return This builder.
+         */
+        public Builder minLaunchCountOnRecentVersions(int versionCount, long launchCount) {
+            mRecentVersionCount = versionCount;
+            mMinRecentVersionLaunchCount = launchCount;
+            return this;
+        }
+
+        /**
+         * Sets the minimum count of significant events, see {@link RatingEngine#userDidSignificantEvent()},
+         * or {@code RmpAppirater.userDidSignificantEvent} on Android.
+         * <p/>
+         * The condition built with this can't be checked with the values of the primitive method,
+         * which doesn't receive the count. It throws {@link UnsupportedOperationException}.
+         *
+         * @param significantEventCount Count of significant events.
+         * @return This builder.
+         */
+        public Builder minSignificantEventCount(long significantEventCount) {
+            mMinSignificantEventCount = significantEventCount;
+            return this;
+        }
+
+        /**
+         * Sets whether rating dialog can be shown on the first launch after the version is changed.
+         *
+         * @param showOnVersionChange false not to show on the first launch of new version.
+         * @return This builder.
+         */
+        public Builder showOnVersionChange(boolean showOnVersionChange) {
+            mShowOnVersionChange = showOnVersionChange;
+            return this;
+        }
+
+        /**
+         * Sets whether rating dialog can be shown after "Rate" button is clicked.
+         *
+         * @param showAfterRated true to show again.
+         * @return This builder.
+         */
+        public Builder showAfterRated(boolean showAfterRated) {
+            mShowAfterRated = showAfterRated;
+            return this;
+        }
+
+        /**
+         * Sets whether rating dialog can be shown after "No, Thanks" button is clicked.
+         *
+         * @param showAfterDeclined true to show again.
+         * @return This builder.
+         */
+        public Builder showAfterDeclined(boolean showAfterDeclined) {
+            mShowAfterDeclined = showAfterDeclined;
+            return this;
+        }
+
+        /**
+         * Sets source of the current time, which is used when the condition is checked without the time.
+         * <p/>
+         * {@link RatingEngine} checks the condition with the time of its own clock, which is set by
+         * {@link RatingEngine.Builder#setClock(Clock)}.
+         *
+         * @param clock Clock, or null to use {@link Clock#SYSTEM}.
+         * @return This builder.
+         */
+        public Builder setClock(Clock clock) {
+            mClock = (clock != null) ? clock : Clock.SYSTEM;
+            return this;
+        }
+
+        /**
+         * Compiles the rules into a condition.
+         *
+         * @return Showing rate dialog condition.
+         */
+        public MillisShowRateDialogCondition build() {
+            return new CompiledCondition(this);
+        }
+
+    }
+
+    /**
+     * Rules compiled into comparisons of primitive values.
+     */
+    private static class CompiledCondition extends MillisShowRateDialogCondition {
+
+        private final long mMinLaunchCount;
+
+        private final long mMinThisVersionLaunchCount;
+
+        private final long mMinMillisSinceFirstLaunch;
+
+        private final long mMinMillisSinceReminder;
+
+        private final int mMinAppVersionCode;
+
+        private final int mRecentVersionCount;
+
+        private final long mMinRecentVersionLaunchCount;
+
+        private final long mMinSignificantEventCount;
+
+        private final boolean mShowOnVersionChange;
+
+        private final boolean mShowAfterRated;
+
+        private final boolean mShowAfterDeclined;
+
+        private final Clock mClock;
+
+        private final boolean mUsesCurrentTime;
+
+        CompiledCondition(Builder builder) {
+            mMinLaunchCount = builder.mMinLaunchCount;
+            mMinThisVersionLaunchCount = builder.mMinThisVersionLaunchCount;
+            mMinMillisSinceFirstLaunch = builder.mMinMillisSinceFirstLaunch;
+            mMinMillisSinceReminder = builder.mMinMillisSinceReminder;
+            mMinAppVersionCode = builder.mMinAppVersionCode;
+            mRecentVersionCount = builder.mRecentVersionCount;
+            mMinRecentVersionLaunchCount = builder.mMinRecentVersionLaunchCount;
+            mMinSignificantEventCount = builder.mMinSignificantEventCount;
+            mShowOnVersionChange = builder.mShowOnVersionChange;
+            mShowAfterRated = builder.mShowAfterRated;
+            mShowAfterDeclined = builder.mShowAfterDeclined;
+            mClock = builder.mClock;
+            mUsesCurrentTime = (mMinMillisSinceFirstLaunch > 0 || mMinMillisSinceReminder > 0);
+        }
+
+        /**
+         * Merges the rules of both conditions, so the merged condition is true if both are true.
+         *
+         * @return Merged condition, or null if the launch counts of recent versions or the clocks can't be merged.
+         */
+        CompiledCondition and(CompiledCondition other) {
+            if (mClock != other.mClock) {
+                return null;
+            }
+            final CompiledCondition recentVersions;
+            if (dominatesRecentVersions(other)) {
+                recentVersions = this;
+            } else if (other.dominatesRecentVersions(this)) {
+                recentVersions = other;
+            } else {
+                return null;
+            }
+            final Builder builder = new Builder();
+            builder.mClock = mClock;
+            builder.mRecentVersionCount = recentVersions.mRecentVersionCount;
+            builder.mMinRecentVersionLaunchCount = recentVersions.mMinRecentVersionLaunchCount;
+            builder.mMinLaunchCount = Math.max(mMinLaunchCount, other.mMinLaunchCount);
+            builder.mMinThisVersionLaunchCount = Math.max(mMinThisVersionLaunchCount, other.mMinThisVersionLaunchCount);
+            builder.mMinMillisSinceFirstLaunch = Math.max(mMinMillisSinceFirstLaunch, other.mMinMillisSinceFirstLaunch);
+            builder.mMinMillisSinceReminder = Math.max(mMinMillisSinceReminder, other.mMinMillisSinceReminder);
+            builder.mMinAppVersionCode = Math.max(mMinAppVersionCode, other.mMinAppVersionCode);
+            builder.mMinSignificantEventCount = Math.max(mMinSignificantEventCount, other.mMinSignificantEventCount);
+            builder.mShowOnVersionChange = mShowOnVersionChange && other.mShowOnVersionChange;
+            builder.mShowAfterRated = mShowAfterRated && other.mShowAfterRated;
+            builder.mShowAfterDeclined = mShowAfterDeclined && other.mShowAfterDeclined;
+            return new CompiledCondition(builder);
+        }
+
+        /**
+         * Whether the launch counts of recent versions required by this also satisfy the other condition.
+         */
+        private boolean dominatesRecentVersions(CompiledCondition other) {
+            return other.mRecentVersionCount == 0
+                    || (mRecentVersionCount >= other.mRecentVersionCount
+                    && mMinRecentVersionLaunchCount >= other.mMinRecentVersionLaunchCount);
+        }
+
+        @Override
+        public boolean isShowRateDialog(long appLaunchCount, long appThisVersionCodeLaunchCount,
+                                        long firstLaunchDate, int appVersionCode, int previousAppVersionCode,
+                                        long rateClickDate, long reminderClickDate, boolean doNotShowAgain) {
+            if (mRecentVersionCount > 0 || mMinSignificantEventCount > 0) {
+                throw new UnsupportedOperationException(
+                        "The version history and the count of significant events are needed. Check with RatingState.");
+            }
+            return isShowRateDialog(appLaunchCount, appThisVersionCodeLaunchCount, firstLaunchDate,
+                    appVersionCode, previousAppVersionCode, rateClickDate, reminderClickDate, doNotShowAgain,
+                    mUsesCurrentTime ? mClock.currentTimeMillis() : 0);
+        }
+
+        @Override
+        public boolean isShowRateDialog(RatingState state, int appVersionCode, int previousAppVersionCode) {
+            return isShowRateDialog(state, appVersionCode, previousAppVersionCode,
+                    mUsesCurrentTime ? mClock.currentTimeMillis() : 0);
+        }
+
+        @Override
+        public boolean isShowRateDialog(RatingState state, int appVersionCode, int previousAppVersionCode,
+                                        long currentTimeMillis) {
+            if (mRecentVersionCount > 0 && !state.getVersionHistory()
+                    .isLaunchedOnRecentVersions(mRecentVersionCount, mMinRecentVersionLaunchCount)) {
+                return false;
+            }
+            if (state.getSignificantEventCount() < mMinSignificantEventCount) {
+                return false;
+            }
+            return isShowRateDialog(state.getAppLaunchCount(), state.getAppThisVersionCodeLaunchCount(appVersionCode),
+                    state.getFirstLaunchDate(), appVersionCode, previousAppVersionCode,
+                    state.getRateClickDate(), state.getReminderClickDate(), state.isDoNotShowAgain(),
+                    currentTimeMillis);
+        }
+
+        private boolean isShowRateDialog(long appLaunchCount, long appThisVersionCodeLaunchCount,
+                                         long firstLaunchDate, int appVersionCode, int previousAppVersionCode,
+                                         long rateClickDate, long reminderClickDate, boolean doNotShowAgain,
+                                         long now) {
+            if ((rateClickDate != 0 && !mShowAfterRated)
+                    || (doNotShowAgain && !mShowAfterDeclined)
+                    || appLaunchCount < mMinLaunchCount
+                    || appThisVersionCodeLaunchCount < mMinThisVersionLaunchCount
+                    || appVersionCode < mMinAppVersionCode
+                    || (!mShowOnVersionChange && previousAppVersionCode != Integer.MIN_VALUE
+                    && previousAppVersionCode != appVersionCode)) {
+                return false;
+            }
+
+            if (mUsesCurrentTime) {
+                // The first launch date is 0 before the first launch is counted, which isn't old enough.
+                if ((mMinMillisSinceFirstLaunch > 0 && firstLaunchDate == 0)
+                        || now - firstLaunchDate < mMinMillisSinceFirstLaunch
+                        || (reminderClickDate != 0 && now - reminderClickDate < mMinMillisSinceReminder)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+    }
+
+    private static class AllOfCondition extends MillisShowRateDialogCondition {
+
+        private final MillisShowRateDialogCondition[] mConditions;
+
+        AllOfCondition(MillisShowRateDialogCondition[] conditions) {
+            mConditions = conditions;
+        }
+
+        @Override
+        public boolean isShowRateDialog(long appLaunchCount, long appThisVersionCodeLaunchCount,
+                                        long firstLaunchDate, int appVersionCode, int previousAppVersionCode,
+                                        long rateClickDate, long reminderClickDate, boolean doNotShowAgain) {
+            for (MillisShowRateDialogCondition condition : mConditions) {
+                if (!condition.isShowRateDialog(appLaunchCount, appThisVersionCodeLaunchCount, firstLaunchDate,
+                        appVersionCode, previousAppVersionCode, rateClickDate, reminderClickDate, doNotShowAgain)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public boolean isShowRateDialog(RatingState state, int appVersionCode, int previousAppVersionCode) {
+            for (MillisShowRateDialogCondition condition : mConditions) {
+                if (!condition.isShowRateDialog(state, appVersionCode, previousAppVersionCode)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public boolean isShowRateDialog(RatingState state, int appVersionCode, int previousAppVersionCode,
+                                        long currentTimeMillis) {
+            for (MillisShowRateDialogCondition condition : mConditions) {
+                if (!condition.isShowRateDialog(state, appVersionCode, previousAppVersionCode, currentTimeMillis)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+    }
+
+    private static class AnyOfCondition extends MillisShowRateDialogCondition {
+
+        private final MillisShowRateDialogCondition[] mConditions;
+
+        AnyOfCondition(MillisShowRateDialogCondition[] conditions) {
+            mConditions = conditions;
+        }
+
+        @Override
+        public boolean isShowRateDialog(long appLaunchCount, long appThisVersionCodeLaunchCount,
+                                        long firstLaunchDate, int appVersionCode, int previousAppVersionCode,
+                                        long rateClickDate, long reminderClickDate, boolean doNotShowAgain) {
+            for (MillisShowRateDialogCondition condition : mConditions) {
+                if (condition.isShowRateDialog(appLaunchCount, appThisVersionCodeLaunchCount, firstLaunchDate,
+                        appVersionCode, previousAppVersionCode, rateClickDate, reminderClickDate, doNotShowAgain)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public boolean isShowRateDialog(RatingState state, int appVersionCode, int previousAppVersionCode) {
+            for (MillisShowRateDialogCondition condition : mConditions) {
+                if (condition.isShowRateDialog(state, appVersionCode, previousAppVersionCode)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public boolean isShowRateDialog(RatingState state, int appVersionCode, int previousAppVersionCode,
+                                        long currentTimeMillis) {
+            for (MillisShowRateDialogCondition condition : mConditions) {
+                if (condition.isShowRateDialog(state, appVersionCode, previousAppVersionCode, currentTimeMillis)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+    }
+
+}
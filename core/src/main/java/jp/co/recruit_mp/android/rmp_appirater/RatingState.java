@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2015-2016 Recruit Marketing Partners Co.,Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.recruit_mp.android.rmp_appirater;
+
+/**
+ * Immutable snapshot of values saved by RMP-Appirater.
+ * <p/>
+ * Dates are epoch milliseconds, and 0 means not set.
+ */
+public final class RatingState {
+
+    /**
+     * State of the app which has never been launched.
+     */
+    public static final RatingState EMPTY = new Builder().build();
+
+    private final long mAppLaunchCount;
+
+    private final long mAppThisVersionCodeLaunchCount;
+
+    private final long mFirstLaunchDate;
+
+    private final int mAppVersionCode;
+
+    private final long mRateClickDate;
+
+    private final long mReminderClickDate;
+
+    private final boolean mDoNotShowAgain;
+
+    private final long mSignificantEventCount;
+
+    private final VersionHistory mVersionHistory;
+
+    private RatingState(Builder builder) {
+        mAppLaunchCount = builder.mAppLaunchCount;
+        mAppThisVersionCodeLaunchCount = builder.mAppThisVersionCodeLaunchCount;
+        mFirstLaunchDate = builder.mFirstLaunchDate;
+        mAppVersionCode = builder.mAppVersionCode;
+        mRateClickDate = builder.mRateClickDate;
+        mReminderClickDate = builder.mReminderClickDate;
+        mDoNotShowAgain = builder.mDoNotShowAgain;
+        mSignificantEventCount = builder.mSignificantEventCount;
+        mVersionHistory = builder.mVersionHistory;
+    }
+
+    /**
+     * Gets launch count of this application.
+     *
+     * @return Launch count of this application.
+     */
+    public long getAppLaunchCount() {
+        return mAppLaunchCount;
+    }
+
+    /**
+     * Gets launch count of this application version saved with {@link #getAppVersionCode()}.
+     *
+     * @return Launch count of this application version.
+     */
+    public long getAppThisVersionCodeLaunchCount() {
+        return mAppThisVersionCodeLaunchCount;
+    }
+
+    /**
+     * Gets launch count of the given application version.
+     *
+     * @param appVersionCode Application version code, or Integer.MIN_VALUE if unknown.
+     * @return Launch count of the version, or 0 if saved count is for another version.
+     */
+    public long getAppThisVersionCodeLaunchCount(int appVersionCode) {
+        if (appVersionCode != Integer.MIN_VALUE && mAppVersionCode != appVersionCode) {
+            return 0;
+        }
+        return mAppThisVersionCodeLaunchCount;
+    }
+
+    /**
+     * Gets first launch date.
+     *
+     * @return First launch date, or 0 if not launched yet.
+     */
+    public long getFirstLaunchDate() {
+        return mFirstLaunchDate;
+    }
+
+    /**
+     * Gets the application version code of when it's launched last.
+     *
+     * @return Application version code, or Integer.MIN_VALUE if not saved.
+     */
+    public int getAppVersionCode() {
+        return mAppVersionCode;
+    }
+
+    /**
+     * Gets date of "Rate" button clicked.
+     *
+     * @return Date of "Rate" button clicked, or 0 if not clicked.
+     */
+    public long getRateClickDate() {
+        return mRateClickDate;
+    }
+
+    /**
+     * Gets date of "Remind me later" button clicked.
+     *
+     * @return Date of "Remind me later" button clicked, or 0 if not clicked.
+     */
+    public long getReminderClickDate() {
+        return mReminderClickDate;
+    }
+
+    /**
+     * Gets whether "No, Thanks" is clicked.
+     *
+     * @return Clicked "No, Thanks" if true.
+     */
+    public boolean isDoNotShowAgain() {
+        return mDoNotShowAgain;
+    }
+
+    /**
+     * Gets count of significant events, see {@link RatingEngine#userDidSignificantEvent()}.
+     *
+     * @return Count of significant events.
+     */
+    public long getSignificantEventCount() {
+        return mSignificantEventCount;
+    }
+
+    /**
+     * Gets history of recently launched application versions.
+     *
+     * @return History of versions.
+     */
+    public VersionHistory getVersionHistory() {
+        return mVersionHistory;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof RatingState)) {
+            return false;
+        }
+        final RatingState that = (RatingState) o;
+        return mAppLaunchCount == that.mAppLaunchCount
+                && mAppThisVersionCodeLaunchCount == that.mAppThisVersionCodeLaunchCount
+                && mFirstLaunchDate == that.mFirstLaunchDate
+                && mAppVersionCode == that.mAppVersionCode
+                && mRateClickDate == that.mRateClickDate
+                && mReminderClickDate == that.mReminderClickDate
+                && mDoNotShowAgain == that.mDoNotShowAgain
+                && mSignificantEventCount == that.mSignificantEventCount
+                && mVersionHistory.equals(that.mVersionHistory);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (mAppLaunchCount ^ (mAppLaunchCount >>> 32));
+        result = 31 * result + (int) (mAppThisVersionCodeLaunchCount ^ (mAppThisVersionCodeLaunchCount >>> 32));
+        result = 31 * result + (int) (mFirstLaunchDate ^ (mFirstLaunchDate >>> 32));
+        result = 31 * result + mAppVersionCode;
+        result = 31 * result + (int) (mRateClickDate ^ (mRateClickDate >>> 32));
+        result = 31 * result + (int) (mReminderClickDate ^ (mReminderClickDate >>> 32));
+        result = 31 * result + (mDoNotShowAgain ? 1 : 0);
+        result = 31 * result + (int) (mSignificantEventCount ^ (mSignificantEventCount >>> 32));
+        result = 31 * result + mVersionHistory.hashCode();
+        return result;
+    }
+
+    /**
+     * Builder of {@link RatingState}.
+     */
+    static class Builder {
+
+        private long mAppLaunchCount;
+
+        private long mAppThisVersionCodeLaunchCount;
+
+        private long mFirstLaunchDate;
+
+        private int mAppVersionCode = Integer.MIN_VALUE;
+
+        private long mRateClickDate;
+
+        private long mReminderClickDate;
+
+        private boolean mDoNotShowAgain;
+
+        private long mSignificantEventCount;
+
+        private VersionHistory mVersionHistory = VersionHistory.EMPTY;
+
+        Builder() {
+        }
+
+        Builder(RatingState state) {
+            mAppLaunchCount = state.mAppLaunchCount;
+            mAppThisVersionCodeLaunchCount = state.mAppThisVersionCodeLaunchCount;
+            mFirstLaunchDate = state.mFirstLaunchDate;
+            mAppVersionCode = state.mAppVersionCode;
+            mRateClickDate = state.mRateClickDate;
+            mReminderClickDate = state.mReminderClickDate;
+            mDoNotShowAgain = state.mDoNotShowAgain;
+            mSignificantEventCount = state.mSignificantEventCount;
+            mVersionHistory = state.mVersionHistory;
+        }
+
+        Builder setAppLaunchCount(long appLaunchCount) {
+            mAppLaunchCount = appLaunchCount;
+            return this;
+        }
+
+        Builder setAppThisVersionCodeLaunchCount(long appThisVersionCodeLaunchCount) {
+            mAppThisVersionCodeLaunchCount = appThisVersionCodeLaunchCount;
+            return this;
+        }
+
+        Builder setFirstLaunchDate(long firstLaunchDate) {
+            mFirstLaunchDate = firstLaunchDate;
+            return this;
+        }
+
+        Builder setAppVersionCode(int appVersionCode) {
+            mAppVersionCode = appVersionCode;
+            return this;
+        }
+
+        Builder setRateClickDate(long rateClickDate) {
+            mRateClickDate = rateClickDate;
+            return this;
+        }
+
+        Builder setReminderClickDate(long reminderClickDate) {
+            mReminderClickDate = reminderClickDate;
+            return this;
+        }
+
+        Builder setDoNotShowAgain(boolean doNotShowAgain) {
+            mDoNotShowAgain = doNotShowAgain;
+            return this;
+        }
+
+        Builder setSignificantEventCount(long significantEventCount) {
+            mSignificantEventCount = significantEventCount;
+            return this;
+        }
+
+        Builder setVersionHistory(VersionHistory versionHistory) {
+            mVersionHistory = versionHistory;
+            return this;
+        }
+
+        RatingState build() {
+            return new RatingState(this);
+        }
+
+    }
+
+}
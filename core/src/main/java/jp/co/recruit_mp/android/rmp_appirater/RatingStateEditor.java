@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2015-2016 Recruit Marketing Partners Co.,Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.recruit_mp.android.rmp_appirater;
+
+/**
+ * Changes values saved by RMP-Appirater in a transaction.
+ * <p/>
+ * The editor is given to {@link Transaction}, and changes are applied all at once
+ * after the transaction returns. Getters of the state return values including changes made in the transaction.
+ * The editor can't be used after the transaction.
+ *
+ * @see RatingEngine#edit(Transaction)
+ */
+public final class RatingStateEditor {
+
+    private final RatingState.Builder mBuilder;
+
+    /**
+     * State including changes, or null if it's not built yet.
+     */
+    private RatingState mState;
+
+    private boolean mChanged;
+
+    private boolean mClosed;
+
+    RatingStateEditor(RatingState state) {
+        mBuilder = new RatingState.Builder(state);
+        mState = state;
+    }
+
+    /**
+     * Gets values including changes made in this transaction.
+     *
+     * @return Current values.
+     */
+    public RatingState getState() {
+        checkNotClosed();
+        if (mState == null) {
+            mState = mBuilder.build();
+        }
+        return mState;
+    }
+
+    /**
+     * Resets saved conditions, and records the launches as the version.
+     * <p/>
+     * The version history is kept, because it isn't a condition of the current version.
+     *
+     * @param appVersionCode Application version code.
+     * @return This editor.
+     */
+    public RatingStateEditor reset(int appVersionCode) {
+        checkNotClosed();
+        mBuilder.setAppLaunchCount(0)
+                .setAppThisVersionCodeLaunchCount(0)
+                .setFirstLaunchDate(0)
+                .setAppVersionCode(appVersionCode)
+                .setRateClickDate(0)
+                .setReminderClickDate(0)
+                .setDoNotShowAgain(false)
+                .setSignificantEventCount(0);
+        return changed();
+    }
+
+    /**
+     * Sets launch count of This application.
+     *
+     * @param appLaunchCount Launch count.
+     * @return This editor.
+     */
+    public RatingStateEditor setAppLaunchCount(long appLaunchCount) {
+        checkNotClosed();
+        mBuilder.setAppLaunchCount(appLaunchCount);
+        return changed();
+    }
+
+    /**
+     * Sets launch count of This application current version.
+     *
+     * @param appThisVersionCodeLaunchCount Launch count.
+     * @return This editor.
+     */
+    public RatingStateEditor setAppThisVersionCodeLaunchCount(long appThisVersionCodeLaunchCount) {
+        checkNotClosed();
+        mBuilder.setAppThisVersionCodeLaunchCount(appThisVersionCodeLaunchCount);
+        return changed();
+    }
+
+    /**
+     * Sets first launch date.
+     *
+     * @param firstLaunchDate Date in epoch milliseconds.
+     * @return This editor.
+     */
+    public RatingStateEditor setFirstLaunchDate(long firstLaunchDate) {
+        checkNotClosed();
+        mBuilder.setFirstLaunchDate(firstLaunchDate);
+        return changed();
+    }
+
+    /**
+     * Sets the application version code of when it's launched last.
+     *
+     * @param appVersionCode Application version code, or Integer.MIN_VALUE if unknown.
+     * @return This editor.
+     */
+    public RatingStateEditor setAppVersionCode(int appVersionCode) {
+        checkNotClosed();
+        mBuilder.setAppVersionCode(appVersionCode);
+        return changed();
+    }
+
+    /**
+     * Sets date of "Rate" button clicked.
+     *
+     * @param rateClickDate Date in epoch milliseconds, or 0 if not clicked.
+     * @return This editor.
+     */
+    public RatingStateEditor setRateClickDate(long rateClickDate) {
+        checkNotClosed();
+        mBuilder.setRateClickDate(rateClickDate);
+        return changed();
+    }
+
+    /**
+     * Sets date of "Remind me later" button clicked.
+     *
+     * @param reminderClickDate Date in epoch milliseconds, or 0 if not clicked.
+     * @return This editor.
+     */
+    public RatingStateEditor setReminderClickDate(long reminderClickDate) {
+        checkNotClosed();
+        mBuilder.setReminderClickDate(reminderClickDate);
+        return changed();
+    }
+
+    /**
+     * Sets whether "No, Thanks" is clicked.
+     *
+     * @param doNotShowAgain Clicked "No, Thanks" if true.
+     * @return This editor.
+     */
+    public RatingStateEditor setDoNotShowAgain(boolean doNotShowAgain) {
+        checkNotClosed();
+        mBuilder.setDoNotShowAgain(doNotShowAgain);
+        return changed();
+    }
+
+    /**
+     * Sets count of significant events.
+     *
+     * @param significantEventCount Count of significant events.
+     * @return This editor.
+     */
+    public RatingStateEditor setSignificantEventCount(long significantEventCount) {
+        checkNotClosed();
+        mBuilder.setSignificantEventCount(significantEventCount);
+        return changed();
+    }
+
+    /**
+     * Ends the transaction.
+     *
+     * @return Changed state, or null if nothing is changed.
+     */
+    RatingState close() {
+        final RatingState state = mChanged ? getState() : null;
+        mClosed = true;
+        return state;
+    }
+
+    private RatingStateEditor changed() {
+        mChanged = true;
+        mState = null;
+        return this;
+    }
+
+    private void checkNotClosed() {
+        if (mClosed) {
+            throw new IllegalStateException("Transaction has already ended.");
+        }
+    }
+
+    /**
+     * Changes of saved values which are applied atomically.
+     *
+     * @see RatingEngine#edit(Transaction)
+     */
+    public interface Transaction {
+        /**
+         * Changes values with the editor.
+         *
+         * @param editor Editor of the values, which can be used only in this method.
+         */
+        void run(RatingStateEditor editor);
+    }
+
+}
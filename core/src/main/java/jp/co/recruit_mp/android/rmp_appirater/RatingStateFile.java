@@ -0,0 +1,425 @@
+/*
+ * Copyright (C) 2015-2016 Recruit Marketing Partners Co.,Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.recruit_mp.android.rmp_appirater;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * {@link RatingStateStorage} which saves the state to a small memory-mapped file in a fixed binary layout.
+ * <p/>
+ * This doesn't use Android, so the file can be tested by multiple JVM processes.
+ * MappedFileStorage of the library saves the file of the application with this.
+ * <p/>
+ * Saving is an in-place write of a few fields instead of rewriting the whole XML file of SharedPreferences.
+ * The file has two slots, and each save writes the slot which is not current with a sequence number and a checksum,
+ * so a broken write never destroys the previous state.
+ * <p/>
+ * The file is locked while it's written, and launch counts are added to the values saved by other processes,
+ * so this storage can be used by multiple processes of the application.
+ * Use only one instance for a file in a process.
+ * <p/>
+ * The values saved by the migration source are migrated on the first load.
+ * <p/>
+ * If the file can't be mapped or locked, nothing is read or written.
+ * {@link #load()} and {@link #apply(List)} return null then, and the values are read and written again later.
+ */
+public class RatingStateFile implements SharedRatingStateStorage {
+
+    private static final int MAGIC = 0x524d5041;
+    private static final int FORMAT_VERSION = 3;
+
+    /**
+     * Format without the version history. It's upgraded on the first load.
+     */
+    private static final int FORMAT_VERSION_1 = 1;
+
+    /**
+     * Format without count of significant events. It's upgraded on the first load.
+     */
+    private static final int FORMAT_VERSION_2 = 2;
+
+    // Layout of the file. Slots have room to add values.
+    private static final int HEADER_SIZE = 8;
+    private static final int SLOT_SIZE = 512;
+    private static final int SLOT_SIZE_1 = 64;
+    private static final int SLOT_SIZE_2 = 256;
+    private static final int FILE_SIZE = HEADER_SIZE + SLOT_SIZE * 2;
+
+    // Layout of a slot
+    private static final int OFFSET_SEQUENCE = 0;
+    private static final int OFFSET_APP_LAUNCH_COUNT = 8;
+    private static final int OFFSET_APP_THIS_VERSION_CODE_LAUNCH_COUNT = 16;
+    private static final int OFFSET_FIRST_LAUNCH_DATE = 24;
+    private static final int OFFSET_RATE_CLICK_DATE = 32;
+    private static final int OFFSET_REMINDER_CLICK_DATE = 40;
+    private static final int OFFSET_APP_VERSION_CODE = 48;
+    private static final int OFFSET_DO_NOT_SHOW_AGAIN = 52;
+    private static final int OFFSET_VERSION_HISTORY_SIZE = 56;
+    private static final int OFFSET_VERSION_HISTORY = 60;
+    private static final int OFFSET_SIGNIFICANT_EVENT_COUNT = 252;
+    private static final int OFFSET_CHECKSUM = 260;
+    private static final int OFFSET_CHECKSUM_1 = 56;
+    private static final int OFFSET_CHECKSUM_2 = 252;
+
+    // Layout of an entry of the version history
+    private static final int VERSION_HISTORY_ENTRY_SIZE = 24;
+    private static final int OFFSET_ENTRY_VERSION_CODE = 0;
+    private static final int OFFSET_ENTRY_LAUNCH_COUNT = 4;
+    private static final int OFFSET_ENTRY_FIRST_LAUNCH_DATE = 12;
+    private static final int OFFSET_ENTRY_OUTCOMES = 20;
+
+    private final File mFile;
+
+    private final RatingStateStorage mMigrationSource;
+
+    /**
+     * Open while this storage is used, to lock the file. Guarded by this.
+     */
+    private RandomAccessFile mRandomAccessFile;
+
+    /**
+     * Guarded by this.
+     */
+    private FileChannel mChannel;
+
+    /**
+     * Guarded by this.
+     */
+    private MappedByteBuffer mBuffer;
+
+    /**
+     * Index of the current slot, or -1 if no slot is valid. Guarded by this.
+     */
+    private int mCurrentSlot = -1;
+
+    /**
+     * Sequence number of the current slot. Guarded by this.
+     */
+    private long mSequence;
+
+    private final CRC32 mCrc = new CRC32();
+
+    private final byte[] mSlotBytes = new byte[OFFSET_CHECKSUM];
+
+    /**
+     * Constructor.
+     *
+     * @param file            File to save the state.
+     * @param migrationSource Storage to migrate values from on the first load, or null.
+     */
+    public RatingStateFile(File file, RatingStateStorage migrationSource) {
+        mFile = file;
+        mMigrationSource = migrationSource;
+    }
+
+    @Override
+    public synchronized RatingState load() {
+        final FileLock lock = mapAndLock();
+        if (lock == null) {
+            // Don't return the values of the migration source, which may be older than the file.
+            return null;
+        }
+        try {
+            if (findCurrentSlot()) {
+                return readSlot(mCurrentSlot);
+            }
+
+            // Migrate values of the old storage.
+            final RatingState state = (mMigrationSource != null) ? mMigrationSource.load() : RatingState.EMPTY;
+            if (state == null) {
+                return null;
+            }
+            mBuffer.putInt(0, MAGIC);
+            mBuffer.putInt(4, FORMAT_VERSION);
+            mCurrentSlot = -1;
+            mSequence = 0;
+            writeSlot(state);
+            return state;
+        } finally {
+            release(lock);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * If the file can't be mapped or locked, the state is not saved.
+     */
+    @Override
+    public synchronized void save(RatingState state, List<RatingEvent> events) {
+        if (events != null) {
+            apply(events);
+            return;
+        }
+
+        final FileLock lock = mapAndLock();
+        if (lock == null) {
+            return;
+        }
+        try {
+            findCurrentSlot();
+            writeSlot(state);
+        } finally {
+            release(lock);
+        }
+    }
+
+    @Override
+    public synchronized RatingState apply(List<RatingEvent> events) {
+        final FileLock lock = mapAndLock();
+        if (lock == null) {
+            return null;
+        }
+        try {
+            RatingState state = findCurrentSlot() ? readSlot(mCurrentSlot) : RatingState.EMPTY;
+            if (events.isEmpty()) {
+                return state;
+            }
+            for (RatingEvent event : events) {
+                state = event.applyTo(state);
+            }
+            writeSlot(state);
+            return state;
+        } finally {
+            release(lock);
+        }
+    }
+
+    /**
+     * Called when the file can't be mapped, locked or read.
+     * <p/>
+     * Override this to log the warning. This does nothing by default.
+     *
+     * @param message   Message
+     * @param throwable Cause, or null.
+     */
+    protected void onWarning(String message, Throwable throwable) {
+    }
+
+    /**
+     * Maps and locks the file. Other processes may write the file without the lock, so nothing is done without it.
+     *
+     * @return Lock, or null if the file can't be mapped or locked.
+     */
+    private FileLock mapAndLock() {
+        return map() ? lock() : null;
+    }
+
+    private boolean map() {
+        if (mBuffer != null) {
+            return true;
+        }
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(mFile, "rw");
+            mChannel = file.getChannel();
+            mBuffer = mChannel.map(FileChannel.MapMode.READ_WRITE, 0, FILE_SIZE);
+            mRandomAccessFile = file;
+            return true;
+        } catch (IOException e) {
+            onWarning("Failed to map " + mFile, e);
+            mChannel = null;
+            if (file != null) {
+                try {
+                    file.close();
+                } catch (IOException e2) {
+                    // Ignore
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Locks the file against other processes.
+     *
+     * @return Lock, or null if the file can't be locked.
+     */
+    private FileLock lock() {
+        try {
+            return mChannel.lock();
+        } catch (IOException e) {
+            onWarning("Failed to lock " + mFile, e);
+            return null;
+        }
+    }
+
+    private void release(FileLock lock) {
+        if (lock != null) {
+            try {
+                lock.release();
+            } catch (IOException e) {
+                onWarning("Failed to unlock " + mFile, e);
+            }
+        }
+    }
+
+    /**
+     * Finds the valid slot which is written last, because other processes may have written the file.
+     * <p/>
+     * The file of the old format is upgraded here, so call this while the file is locked.
+     *
+     * @return false if the file has no valid slot.
+     */
+    private boolean findCurrentSlot() {
+        mCurrentSlot = -1;
+        mSequence = 0;
+        if (mBuffer.getInt(0) != MAGIC) {
+            return false;
+        }
+        switch (mBuffer.getInt(4)) {
+            case FORMAT_VERSION:
+                return findCurrentSlot(SLOT_SIZE, OFFSET_CHECKSUM);
+            case FORMAT_VERSION_1:
+                return upgrade(FORMAT_VERSION_1, SLOT_SIZE_1, OFFSET_CHECKSUM_1);
+            case FORMAT_VERSION_2:
+                return upgrade(FORMAT_VERSION_2, SLOT_SIZE_2, OFFSET_CHECKSUM_2);
+            default:
+                return false;
+        }
+    }
+
+    private boolean findCurrentSlot(int slotSize, int checksumOffset) {
+        for (int slot = 0; slot < 2; slot++) {
+            final int offset = getSlotOffset(slot, slotSize);
+            final long sequence = mBuffer.getLong(offset + OFFSET_SEQUENCE);
+            if (isValidSlot(offset, checksumOffset) && (mCurrentSlot < 0 || sequence > mSequence)) {
+                mCurrentSlot = slot;
+                mSequence = sequence;
+            }
+        }
+        if (mCurrentSlot < 0 && mBuffer.getLong(getSlotOffset(0, slotSize) + OFFSET_SEQUENCE) != 0) {
+            onWarning("Broken file " + mFile, null);
+        }
+        return mCurrentSlot >= 0;
+    }
+
+    /**
+     * Rewrites the current slot of the old format with the current format.
+     * <p/>
+     * The values are written to the second slot, which doesn't overlap the slots of the old formats,
+     * and the format version is updated after that. So the old values are kept until the upgrade is completed.
+     */
+    private boolean upgrade(int formatVersion, int slotSize, int checksumOffset) {
+        if (!findCurrentSlot(slotSize, checksumOffset)) {
+            return false;
+        }
+        final RatingState state = readSlot(getSlotOffset(mCurrentSlot, slotSize), formatVersion);
+        mCurrentSlot = 0;
+        writeSlot(state);
+        mBuffer.putInt(4, FORMAT_VERSION);
+        mBuffer.force();
+        return true;
+    }
+
+    private static int getSlotOffset(int slot, int slotSize) {
+        return HEADER_SIZE + slotSize * slot;
+    }
+
+    private boolean isValidSlot(int offset, int checksumOffset) {
+        return mBuffer.getInt(offset + checksumOffset) == checksum(offset, checksumOffset);
+    }
+
+    private int checksum(int offset, int length) {
+        mBuffer.position(offset);
+        mBuffer.get(mSlotBytes, 0, length);
+        mCrc.reset();
+        mCrc.update(mSlotBytes, 0, length);
+        return (int) mCrc.getValue();
+    }
+
+    private RatingState readSlot(int slot) {
+        return readSlot(getSlotOffset(slot, SLOT_SIZE), FORMAT_VERSION);
+    }
+
+    private RatingState readSlot(int offset, int formatVersion) {
+        final RatingState.Builder builder = new RatingState.Builder()
+                .setAppLaunchCount(mBuffer.getLong(offset + OFFSET_APP_LAUNCH_COUNT))
+                .setAppThisVersionCodeLaunchCount(mBuffer.getLong(offset + OFFSET_APP_THIS_VERSION_CODE_LAUNCH_COUNT))
+                .setFirstLaunchDate(mBuffer.getLong(offset + OFFSET_FIRST_LAUNCH_DATE))
+                .setRateClickDate(mBuffer.getLong(offset + OFFSET_RATE_CLICK_DATE))
+                .setReminderClickDate(mBuffer.getLong(offset + OFFSET_REMINDER_CLICK_DATE))
+                .setAppVersionCode(mBuffer.getInt(offset + OFFSET_APP_VERSION_CODE))
+                .setDoNotShowAgain(mBuffer.getInt(offset + OFFSET_DO_NOT_SHOW_AGAIN) != 0);
+        if (formatVersion >= FORMAT_VERSION_2) {
+            builder.setVersionHistory(readVersionHistory(offset));
+        }
+        if (formatVersion >= FORMAT_VERSION) {
+            builder.setSignificantEventCount(mBuffer.getLong(offset + OFFSET_SIGNIFICANT_EVENT_COUNT));
+        }
+        return builder.build();
+    }
+
+    private VersionHistory readVersionHistory(int offset) {
+        final int size = mBuffer.getInt(offset + OFFSET_VERSION_HISTORY_SIZE);
+        if (size <= 0 || size > VersionHistory.MAX_SIZE) {
+            return VersionHistory.EMPTY;
+        }
+        final int[] versionCodes = new int[size];
+        final long[] launchCounts = new long[size];
+        final long[] firstLaunchDates = new long[size];
+        final int[] outcomes = new int[size];
+        for (int i = 0; i < size; i++) {
+            final int entryOffset = offset + OFFSET_VERSION_HISTORY + VERSION_HISTORY_ENTRY_SIZE * i;
+            versionCodes[i] = mBuffer.getInt(entryOffset + OFFSET_ENTRY_VERSION_CODE);
+            launchCounts[i] = mBuffer.getLong(entryOffset + OFFSET_ENTRY_LAUNCH_COUNT);
+            firstLaunchDates[i] = mBuffer.getLong(entryOffset + OFFSET_ENTRY_FIRST_LAUNCH_DATE);
+            outcomes[i] = mBuffer.getInt(entryOffset + OFFSET_ENTRY_OUTCOMES);
+        }
+        return VersionHistory.of(versionCodes, launchCounts, firstLaunchDates, outcomes);
+    }
+
+    /**
+     * Writes the state to the slot which is not current, and makes it current.
+     */
+    private void writeSlot(RatingState state) {
+        final int slot = (mCurrentSlot == 0) ? 1 : 0;
+        final int offset = getSlotOffset(slot, SLOT_SIZE);
+        final long sequence = mSequence + 1;
+        mBuffer.putLong(offset + OFFSET_SEQUENCE, sequence);
+        mBuffer.putLong(offset + OFFSET_APP_LAUNCH_COUNT, state.getAppLaunchCount());
+        mBuffer.putLong(offset + OFFSET_APP_THIS_VERSION_CODE_LAUNCH_COUNT, state.getAppThisVersionCodeLaunchCount());
+        mBuffer.putLong(offset + OFFSET_FIRST_LAUNCH_DATE, state.getFirstLaunchDate());
+        mBuffer.putLong(offset + OFFSET_RATE_CLICK_DATE, state.getRateClickDate());
+        mBuffer.putLong(offset + OFFSET_REMINDER_CLICK_DATE, state.getReminderClickDate());
+        mBuffer.putInt(offset + OFFSET_APP_VERSION_CODE, state.getAppVersionCode());
+        mBuffer.putInt(offset + OFFSET_DO_NOT_SHOW_AGAIN, state.isDoNotShowAgain() ? 1 : 0);
+        final VersionHistory versionHistory = state.getVersionHistory();
+        mBuffer.putInt(offset + OFFSET_VERSION_HISTORY_SIZE, versionHistory.size());
+        for (int i = 0; i < VersionHistory.MAX_SIZE; i++) {
+            final int entryOffset = offset + OFFSET_VERSION_HISTORY + VERSION_HISTORY_ENTRY_SIZE * i;
+            final boolean exists = i < versionHistory.size();
+            mBuffer.putInt(entryOffset + OFFSET_ENTRY_VERSION_CODE, exists ? versionHistory.getVersionCode(i) : 0);
+            mBuffer.putLong(entryOffset + OFFSET_ENTRY_LAUNCH_COUNT, exists ? versionHistory.getLaunchCount(i) : 0);
+            mBuffer.putLong(entryOffset + OFFSET_ENTRY_FIRST_LAUNCH_DATE, exists ? versionHistory.getFirstLaunchDate(i) : 0);
+            mBuffer.putInt(entryOffset + OFFSET_ENTRY_OUTCOMES, exists ? versionHistory.getOutcomes(i) : 0);
+        }
+        mBuffer.putLong(offset + OFFSET_SIGNIFICANT_EVENT_COUNT, state.getSignificantEventCount());
+        mBuffer.putInt(offset + OFFSET_CHECKSUM, checksum(offset, OFFSET_CHECKSUM));
+        mBuffer.force();
+        mCurrentSlot = slot;
+        mSequence = sequence;
+    }
+
+}
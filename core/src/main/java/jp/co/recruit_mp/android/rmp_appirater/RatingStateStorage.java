@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2015-2016 Recruit Marketing Partners Co.,Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.recruit_mp.android.rmp_appirater;
+
+import java.util.List;
+
+/**
+ * Storage of values saved by RMP-Appirater.
+ * <p/>
+ * RMP-Appirater loads the state once per process, and saves it on a background thread.
+ * Set an implementation with {@link RatingEngine.Builder#setStorage(RatingStateStorage)}, or {@code RmpAppirater.setStorage} on Android.
+ */
+public interface RatingStateStorage {
+
+    /**
+     * Loads the saved state.
+     *
+     * @return Saved state, or {@link RatingState#EMPTY} if nothing is saved.
+     * null if the storage can't be read now. It's loaded again before the next save.
+     */
+    RatingState load();
+
+    /**
+     * Saves the state.
+     *
+     * @param state  State to save.
+     * @param events Events which happened since the last save, in order.
+     *               null if the state is changed directly, e.g. by {@link RatingEngine#edit(RatingStateEditor.Transaction)}.
+     */
+    void save(RatingState state, List<RatingEvent> events);
+
+}
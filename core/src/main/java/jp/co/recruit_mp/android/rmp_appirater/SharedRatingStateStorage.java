@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2015-2016 Recruit Marketing Partners Co.,Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.recruit_mp.android.rmp_appirater;
+
+import java.util.List;
+
+/**
+ * {@link RatingStateStorage} which is shared by processes of the application.
+ * <p/>
+ * Events are applied to the state saved by any process, so no launch is lost
+ * when the launch is counted by several processes.
+ */
+public interface SharedRatingStateStorage extends RatingStateStorage {
+
+    /**
+     * Applies the events to the latest saved state and saves it, atomically across processes.
+     * <p/>
+     * This may wait for other processes, so it's called on the background thread.
+     *
+     * @param events Events which happened since the last save in this process, in order.
+     * @return Saved state, or null if the events can't be saved now, e.g. the storage can't be locked.
+     * The events are applied again by the next call then.
+     */
+    RatingState apply(List<RatingEvent> events);
+
+}
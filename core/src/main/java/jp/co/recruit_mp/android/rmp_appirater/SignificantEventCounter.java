@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2015-2016 Recruit Marketing Partners Co.,Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.recruit_mp.android.rmp_appirater;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free counter of significant events, which are added by many threads frequently.
+ * <p/>
+ * Threads add to different stripes, so they don't contend on one value.
+ * Each stripe is padded to its own cache line. The counts are taken all at once by {@link #drain()}.
+ */
+class SignificantEventCounter {
+
+    /**
+     * Number of longs between stripes, to put each stripe on its own cache line.
+     */
+    private static final int PADDING = 8;
+
+    private static final int MAX_STRIPE_COUNT = 16;
+
+    private final int mStripeMask;
+
+    private final AtomicLongArray mCounts;
+
+    SignificantEventCounter() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    SignificantEventCounter(int concurrency) {
+        int stripeCount = 1;
+        while (stripeCount < concurrency && stripeCount < MAX_STRIPE_COUNT) {
+            stripeCount <<= 1;
+        }
+        mStripeMask = stripeCount - 1;
+        mCounts = new AtomicLongArray(stripeCount * PADDING);
+    }
+
+    /**
+     * Adds one event.
+     */
+    void increment() {
+        mCounts.getAndIncrement(getStripe() * PADDING);
+    }
+
+    /**
+     * Takes events added since the last drain.
+     *
+     * @return Count of the events.
+     */
+    long drain() {
+        long count = 0;
+        for (int i = 0; i < mCounts.length(); i += PADDING) {
+            if (mCounts.get(i) != 0) {
+                count += mCounts.getAndSet(i, 0);
+            }
+        }
+        return count;
+    }
+
+    private int getStripe() {
+        // Spread ids of threads which are created one after another.
+        final long id = Thread.currentThread().getId();
+        final int hash = (int) (id ^ (id >>> 32)) * 0x9e3779b9;
+        return (hash >>> 16) & mStripeMask;
+    }
+
+}
@@ -0,0 +1,298 @@
+/*
+ * Copyright (C) 2015-2016 Recruit Marketing Partners Co.,Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.recruit_mp.android.rmp_appirater;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind store of RMP-Appirater values.
+ * <p/>
+ * The storage is loaded once, and the values are cached as {@link RatingState}.
+ * Changes replace the cached state and are saved to the storage on the background thread.
+ * Changes applied one after another are merged and saved at once.
+ * Reading the state doesn't take a lock.
+ * <p/>
+ * If the storage is {@link SharedRatingStateStorage}, events are applied to the state saved by other processes,
+ * and the cached state is updated with it.
+ * <p/>
+ * If the storage can't be read or written now, the cached state is kept and the storage is tried again later.
+ * Until the storage is read, the state counts from {@link RatingState#EMPTY}, and only the events are written.
+ * <p/>
+ * Changes of the cached state are told to {@link OnStateChangedListener} in order, with the lock of this store.
+ */
+class StateStore {
+
+    /**
+     * Delay before writing changes, to merge changes applied one after another.
+     */
+    private static final long FLUSH_DELAY_MILLIS = 100;
+
+    /**
+     * Delay before trying the storage again which can't be read or written.
+     */
+    private static final long RETRY_DELAY_MILLIS = 5000;
+
+    private final RatingStateStorage mStorage;
+
+    private final ScheduledExecutorService mExecutor;
+
+    private final Metrics mMetrics;
+
+    /**
+     * Lock to keep the order of writing.
+     */
+    private final Object mWriteLock = new Object();
+
+    /**
+     * Cached state, or null until it's loaded.
+     */
+    private volatile RatingState mState;
+
+    /**
+     * Whether mState is read from the storage. false if the storage couldn't be read. Guarded by this.
+     */
+    private boolean mLoaded;
+
+    /**
+     * Whether mState is not written yet. Guarded by this.
+     */
+    private boolean mDirty;
+
+    /**
+     * Events which are not written yet, or null if the state is changed directly. Guarded by this.
+     */
+    private List<RatingEvent> mPendingEvents = new ArrayList<RatingEvent>();
+
+    /**
+     * Guarded by this.
+     */
+    private boolean mFlushScheduled;
+
+    private final Runnable mFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    private volatile OnStateChangedListener mOnStateChangedListener;
+
+    StateStore(RatingStateStorage storage, ScheduledExecutorService executor, Metrics metrics) {
+        mStorage = storage;
+        mExecutor = executor;
+        mMetrics = metrics;
+    }
+
+    /**
+     * Gets the current state. The storage is read only the first time.
+     *
+     * @return Current state.
+     */
+    RatingState getState() {
+        RatingState state = mState;
+        if (state == null) {
+            synchronized (this) {
+                state = mState;
+                if (state == null) {
+                    state = mStorage.load();
+                    if (state != null) {
+                        mLoaded = true;
+                    } else {
+                        // The storage is read again before the next write.
+                        state = RatingState.EMPTY;
+                    }
+                    mState = state;
+                    notifyStateChanged(state);
+                }
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Replaces the current state directly, and writes it later.
+     * <p/>
+     * Hold the lock of this store while reading the current state and calling this, to change the state atomically.
+     *
+     * @param state New state.
+     */
+    synchronized void setState(RatingState state) {
+        mState = state;
+        notifyStateChanged(state);
+        mPendingEvents = null;
+        scheduleFlush();
+    }
+
+    /**
+     * Applies the event to the current state, and writes it later.
+     *
+     * @param event Event
+     * @return New state.
+     */
+    synchronized RatingState apply(RatingEvent event) {
+        final RatingState state = event.applyTo(getState());
+        mState = state;
+        notifyStateChanged(state);
+        if (mPendingEvents != null) {
+            mPendingEvents.add(event);
+        }
+        scheduleFlush();
+        return state;
+    }
+
+    private void scheduleFlush() {
+        scheduleFlush(FLUSH_DELAY_MILLIS);
+    }
+
+    private void scheduleFlush(long delayMillis) {
+        mDirty = true;
+        if (!mFlushScheduled) {
+            mFlushScheduled = true;
+            mExecutor.schedule(mFlushRunnable, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Writes the current state to the storage synchronously if it's changed.
+     */
+    void flush() {
+        synchronized (mWriteLock) {
+            final boolean loaded;
+            synchronized (this) {
+                mFlushScheduled = false;
+                if (!mDirty) {
+                    return;
+                }
+                loaded = mLoaded;
+            }
+            if (!loaded && !reload()) {
+                synchronized (this) {
+                    scheduleFlush(RETRY_DELAY_MILLIS);
+                }
+                return;
+            }
+
+            final RatingState state;
+            final List<RatingEvent> events;
+            synchronized (this) {
+                mDirty = false;
+                state = mState;
+                events = mPendingEvents;
+                mPendingEvents = new ArrayList<RatingEvent>();
+            }
+
+            final long persistStartNanos = mMetrics.start();
+            if (events != null && mStorage instanceof SharedRatingStateStorage) {
+                final RatingState saved = ((SharedRatingStateStorage) mStorage).apply(events);
+                if (saved != null) {
+                    merge(saved);
+                } else {
+                    retry(events);
+                }
+            } else {
+                mStorage.save(state, events);
+            }
+            mMetrics.end(MetricsListener.PHASE_PERSIST, persistStartNanos);
+            mMetrics.event(MetricsListener.EVENT_DISK_WRITE);
+        }
+    }
+
+    /**
+     * Reads the storage which couldn't be read, and applies the events to the saved state.
+     *
+     * @return false if the storage can't be read yet.
+     */
+    private boolean reload() {
+        final RatingState saved = mStorage.load();
+        if (saved == null) {
+            return false;
+        }
+        synchronized (this) {
+            mLoaded = true;
+            if (mPendingEvents == null) {
+                // The state is changed directly from the empty state. Drop the change instead of overwriting
+                // the saved values with it.
+                mPendingEvents = new ArrayList<RatingEvent>();
+            }
+            merge(saved);
+        }
+        return true;
+    }
+
+    /**
+     * Puts back the events which couldn't be written, and writes them later. The cached state is kept.
+     */
+    private synchronized void retry(List<RatingEvent> events) {
+        if (mPendingEvents != null) {
+            mPendingEvents.addAll(0, events);
+        }
+        // Otherwise the state is changed directly after the events are taken. The state is written next.
+        scheduleFlush(RETRY_DELAY_MILLIS);
+    }
+
+    /**
+     * Replaces the cached state with the saved state and events which are not written yet.
+     */
+    private synchronized void merge(RatingState saved) {
+        if (mPendingEvents == null) {
+            // Changed directly after the events are taken. It'll be written next.
+            return;
+        }
+        RatingState state = saved;
+        for (RatingEvent event : mPendingEvents) {
+            state = event.applyTo(state);
+        }
+        mState = state;
+        notifyStateChanged(state);
+    }
+
+    /**
+     * Gets the cached state without loading it.
+     *
+     * @return Cached state, or null if it's not loaded yet.
+     */
+    RatingState peekState() {
+        return mState;
+    }
+
+    /**
+     * Sets the listener which is told changes of the cached state.
+     *
+     * @param listener Listener, or null.
+     */
+    void setOnStateChangedListener(OnStateChangedListener listener) {
+        mOnStateChangedListener = listener;
+    }
+
+    private void notifyStateChanged(RatingState state) {
+        final OnStateChangedListener listener = mOnStateChangedListener;
+        if (listener != null) {
+            listener.onStateChanged(state);
+        }
+    }
+
+    /**
+     * Listener of changes of the cached state. It's called with the lock of the store, so it must not block.
+     */
+    interface OnStateChangedListener {
+        void onStateChanged(RatingState state);
+    }
+
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright (C) 2015-2016 Recruit Marketing Partners Co.,Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.recruit_mp.android.rmp_appirater;
+
+/**
+ * Provides this application version code.
+ * <p/>
+ * The version code can't change while the process is alive, so implementations should resolve it only once.
+ */
+public interface VersionCodeProvider {
+    /**
+     * Gets this application version code.
+     *
+     * @return This application version code, or Integer.MIN_VALUE if unknown.
+     */
+    int getVersionCode();
+}
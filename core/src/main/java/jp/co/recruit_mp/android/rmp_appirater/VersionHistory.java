@@ -0,0 +1,317 @@
+/*
+ * Copyright (C) 2015-2016 Recruit Marketing Partners Co.,Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.recruit_mp.android.rmp_appirater;
+
+import java.util.Arrays;
+
+/**
+ * Immutable history of recently launched application versions.
+ * <p/>
+ * Each entry has the version code, the launch count, the first launch date and the outcomes of rating dialog
+ * on the version. Entries are ordered by the last launch, so index 0 is the version launched last.
+ * At most {@link #MAX_SIZE} versions are kept, and the version which isn't launched for the longest time is evicted.
+ * Values are kept in primitive arrays, and a lookup scans at most {@link #MAX_SIZE} entries.
+ * The arrays are never changed, so histories derived from this share the arrays which don't change.
+ */
+public final class VersionHistory {
+
+    /**
+     * Maximum number of versions.
+     */
+    public static final int MAX_SIZE = 8;
+
+    /**
+     * Rating dialog is shown on the version.
+     */
+    public static final int OUTCOME_SHOWN = 1;
+
+    /**
+     * "Rate" button is clicked on the version.
+     */
+    public static final int OUTCOME_RATED = 1 << 1;
+
+    /**
+     * "Remind me later" button is clicked on the version.
+     */
+    public static final int OUTCOME_REMINDED = 1 << 2;
+
+    /**
+     * "No, Thanks" button is clicked on the version.
+     */
+    public static final int OUTCOME_DECLINED = 1 << 3;
+
+    /**
+     * History which has no version.
+     */
+    public static final VersionHistory EMPTY = new VersionHistory(new int[0], new long[0], new long[0], new int[0]);
+
+    private final int[] mVersionCodes;
+
+    private final long[] mLaunchCounts;
+
+    private final long[] mFirstLaunchDates;
+
+    private final int[] mOutcomes;
+
+    private VersionHistory(int[] versionCodes, long[] launchCounts, long[] firstLaunchDates, int[] outcomes) {
+        mVersionCodes = versionCodes;
+        mLaunchCounts = launchCounts;
+        mFirstLaunchDates = firstLaunchDates;
+        mOutcomes = outcomes;
+    }
+
+    /**
+     * Creates a history from values read from storage.
+     * <p/>
+     * The arrays are kept without copying, so don't change them after this.
+     *
+     * @return History, or {@link #EMPTY} if values are invalid.
+     */
+    static VersionHistory of(int[] versionCodes, long[] launchCounts, long[] firstLaunchDates, int[] outcomes) {
+        final int size = versionCodes.length;
+        if (size == 0 || size > MAX_SIZE || launchCounts.length != size
+                || firstLaunchDates.length != size || outcomes.length != size) {
+            return EMPTY;
+        }
+        return new VersionHistory(versionCodes, launchCounts, firstLaunchDates, outcomes);
+    }
+
+    /**
+     * Gets the number of versions.
+     *
+     * @return Number of versions.
+     */
+    public int size() {
+        return mVersionCodes.length;
+    }
+
+    /**
+     * Gets the version code.
+     *
+     * @param index Index from 0, which is the version launched last.
+     * @return Version code.
+     */
+    public int getVersionCode(int index) {
+        return mVersionCodes[index];
+    }
+
+    /**
+     * Gets the launch count of the version.
+     *
+     * @param index Index from 0, which is the version launched last.
+     * @return Launch count.
+     */
+    public long getLaunchCount(int index) {
+        return mLaunchCounts[index];
+    }
+
+    /**
+     * Gets the first launch date of the version.
+     *
+     * @param index Index from 0, which is the version launched last.
+     * @return First launch date.
+     */
+    public long getFirstLaunchDate(int index) {
+        return mFirstLaunchDates[index];
+    }
+
+    /**
+     * Gets the outcomes of rating dialog on the version.
+     *
+     * @param index Index from 0, which is the version launched last.
+     * @return Bits of OUTCOME_ constants.
+     */
+    public int getOutcomes(int index) {
+        return mOutcomes[index];
+    }
+
+    /**
+     * Finds the version.
+     *
+     * @param versionCode Version code.
+     * @return Index of the version, or -1 if it's not found.
+     */
+    public int indexOf(int versionCode) {
+        for (int i = 0; i < mVersionCodes.length; i++) {
+            if (mVersionCodes[i] == versionCode) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the launch count of the version.
+     *
+     * @param versionCode Version code.
+     * @return Launch count, or 0 if the version is not found.
+     */
+    public long getLaunchCountOf(int versionCode) {
+        final int index = indexOf(versionCode);
+        return (index >= 0) ? mLaunchCounts[index] : 0;
+    }
+
+    /**
+     * Gets whether each of the versions launched last is launched enough.
+     *
+     * @param versionCount   Number of versions to check.
+     * @param minLaunchCount Minimum launch count of each version.
+     * @return false if the number of versions is less than versionCount.
+     */
+    public boolean isLaunchedOnRecentVersions(int versionCount, long minLaunchCount) {
+        if (versionCount > mVersionCodes.length) {
+            return false;
+        }
+        for (int i = 0; i < versionCount; i++) {
+            if (mLaunchCounts[i] < minLaunchCount) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the history in which the version is launched.
+     */
+    VersionHistory withLaunch(int versionCode, long timestamp) {
+        final int index = indexOf(versionCode);
+        if (index == 0) {
+            // Launched on the same version as last time, which is the usual case. Only the launch count changes.
+            final long[] launchCounts = mLaunchCounts.clone();
+            launchCounts[0]++;
+            return new VersionHistory(mVersionCodes, launchCounts, mFirstLaunchDates, mOutcomes);
+        }
+
+        final int size = (index >= 0) ? mVersionCodes.length : Math.min(mVersionCodes.length + 1, MAX_SIZE);
+        final int[] versionCodes = new int[size];
+        final long[] launchCounts = new long[size];
+        final long[] firstLaunchDates = new long[size];
+        final int[] outcomes = new int[size];
+
+        // Move the version to the head.
+        versionCodes[0] = versionCode;
+        if (index >= 0) {
+            launchCounts[0] = mLaunchCounts[index] + 1;
+            firstLaunchDates[0] = mFirstLaunchDates[index];
+            outcomes[0] = mOutcomes[index];
+        } else {
+            launchCounts[0] = 1;
+            firstLaunchDates[0] = timestamp;
+        }
+
+        // Copy other versions, and evict the last one if it's full.
+        int to = 1;
+        for (int from = 0; from < mVersionCodes.length && to < size; from++) {
+            if (from == index) {
+                continue;
+            }
+            versionCodes[to] = mVersionCodes[from];
+            launchCounts[to] = mLaunchCounts[from];
+            firstLaunchDates[to] = mFirstLaunchDates[from];
+            outcomes[to] = mOutcomes[from];
+            to++;
+        }
+        return new VersionHistory(versionCodes, launchCounts, firstLaunchDates, outcomes);
+    }
+
+    /**
+     * Returns the history in which the outcome is added to the version.
+     */
+    VersionHistory withOutcome(int versionCode, int outcome) {
+        final int index = indexOf(versionCode);
+        if (index < 0 || (mOutcomes[index] & outcome) == outcome) {
+            return this;
+        }
+        final int[] outcomes = mOutcomes.clone();
+        outcomes[index] |= outcome;
+        return new VersionHistory(mVersionCodes, mLaunchCounts, mFirstLaunchDates, outcomes);
+    }
+
+    /**
+     * Encodes the history to a string, e.g. to save it in SharedPreferences.
+     */
+    String encode() {
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < mVersionCodes.length; i++) {
+            if (i > 0) {
+                builder.append(';');
+            }
+            builder.append(mVersionCodes[i]).append(',')
+                    .append(mLaunchCounts[i]).append(',')
+                    .append(mFirstLaunchDates[i]).append(',')
+                    .append(mOutcomes[i]);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Decodes the string which is encoded by {@link #encode()}.
+     *
+     * @return History, or {@link #EMPTY} if the string is invalid.
+     */
+    static VersionHistory decode(String encoded) {
+        if (encoded == null || encoded.length() == 0) {
+            return EMPTY;
+        }
+        final String[] entries = encoded.split(";");
+        final int size = entries.length;
+        final int[] versionCodes = new int[size];
+        final long[] launchCounts = new long[size];
+        final long[] firstLaunchDates = new long[size];
+        final int[] outcomes = new int[size];
+        try {
+            for (int i = 0; i < size; i++) {
+                final String[] values = entries[i].split(",");
+                if (values.length != 4) {
+                    return EMPTY;
+                }
+                versionCodes[i] = Integer.parseInt(values[0]);
+                launchCounts[i] = Long.parseLong(values[1]);
+                firstLaunchDates[i] = Long.parseLong(values[2]);
+                outcomes[i] = Integer.parseInt(values[3]);
+            }
+        } catch (NumberFormatException e) {
+            return EMPTY;
+        }
+        return of(versionCodes, launchCounts, firstLaunchDates, outcomes);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof VersionHistory)) {
+            return false;
+        }
+        final VersionHistory that = (VersionHistory) o;
+        return Arrays.equals(mVersionCodes, that.mVersionCodes)
+                && Arrays.equals(mLaunchCounts, that.mLaunchCounts)
+                && Arrays.equals(mFirstLaunchDates, that.mFirstLaunchDates)
+                && Arrays.equals(mOutcomes, that.mOutcomes);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Arrays.hashCode(mVersionCodes);
+        result = 31 * result + Arrays.hashCode(mLaunchCounts);
+        result = 31 * result + Arrays.hashCode(mFirstLaunchDates);
+        result = 31 * result + Arrays.hashCode(mOutcomes);
+        return result;
+    }
+
+}
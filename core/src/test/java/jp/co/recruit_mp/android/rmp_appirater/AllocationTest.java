@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2015-2016 Recruit Marketing Partners Co.,Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.recruit_mp.android.rmp_appirater;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that checking a condition doesn't allocate, with the allocation counter of the JVM.
+ * <p/>
+ * Classes are loaded by the first check before measuring, and each check is repeated,
+ * so allocations which aren't made by every check are less than one byte per check.
+ */
+public class AllocationTest {
+
+    private static final int CHECK_COUNT = 100000;
+
+    private static final int APP_VERSION_CODE = 3;
+
+    private com.sun.management.ThreadMXBean mThreadMXBean;
+
+    @Before
+    public void setUp() throws Exception {
+        final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue("The JVM doesn't count allocated bytes",
+                threadMXBean instanceof com.sun.management.ThreadMXBean);
+        mThreadMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+        Assume.assumeTrue("The JVM doesn't count allocated bytes",
+                mThreadMXBean.isThreadAllocatedMemorySupported());
+        mThreadMXBean.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    @Test
+    public void checkingRulesDoesNotAllocate() throws Exception {
+        final MillisShowRateDialogCondition condition = RatingRules.allOf(
+                RatingRules.appiraterDefaults().build(),
+                new RatingRules.Builder().minLaunchCountOnRecentVersions(2, 5).build());
+        final RatingState state = newLaunchedState();
+        final long now = System.currentTimeMillis();
+        condition.isShowRateDialog(state, APP_VERSION_CODE, APP_VERSION_CODE, now);
+
+        final long startBytes = getAllocatedBytes();
+        for (int i = 0; i < CHECK_COUNT; i++) {
+            condition.isShowRateDialog(state, APP_VERSION_CODE, APP_VERSION_CODE, now);
+        }
+        assertAllocatedLessThanOneBytePerCheck(startBytes);
+    }
+
+    @Test
+    public void checkingMillisConditionDoesNotAllocate() throws Exception {
+        final MillisShowRateDialogCondition condition = new AppiraterDefaultsCondition();
+        final RatingState state = newLaunchedState();
+        condition.isShowRateDialog(state, APP_VERSION_CODE, APP_VERSION_CODE);
+
+        final long startBytes = getAllocatedBytes();
+        for (int i = 0; i < CHECK_COUNT; i++) {
+            condition.isShowRateDialog(state, APP_VERSION_CODE, APP_VERSION_CODE);
+        }
+        assertAllocatedLessThanOneBytePerCheck(startBytes);
+    }
+
+    @Test
+    public void checkingLoadedEngineDoesNotAllocate() throws Exception {
+        final RatingEngine engine = new RatingEngine.Builder()
+                .setStorage(new InMemoryStorage(newLaunchedState()))
+                .setVersionCodeProvider(new FixedVersionCodeProvider(APP_VERSION_CODE))
+                .build();
+        final RatingCondition condition = RatingRules.appiraterDefaults().build();
+        engine.isShowRateDialog(condition);
+
+        final long startBytes = getAllocatedBytes();
+        for (int i = 0; i < CHECK_COUNT; i++) {
+            engine.isShowRateDialog(condition);
+        }
+        assertAllocatedLessThanOneBytePerCheck(startBytes);
+    }
+
+    private long getAllocatedBytes() {
+        return mThreadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private void assertAllocatedLessThanOneBytePerCheck(long startBytes) {
+        final long allocatedBytes = getAllocatedBytes() - startBytes;
+        assertTrue("Allocated " + allocatedBytes + " bytes by " + CHECK_COUNT + " checks",
+                allocatedBytes < CHECK_COUNT);
+    }
+
+    /**
+     * Creates the values of a user who has launched 3 versions 10 times each.
+     */
+    private static RatingState newLaunchedState() {
+        final long now = System.currentTimeMillis();
+        RatingState state = RatingState.EMPTY;
+        for (int versionCode = 1; versionCode <= APP_VERSION_CODE; versionCode++) {
+            for (int i = 0; i < 10; i++) {
+                state = new RatingEvent(RatingEvent.TYPE_LAUNCH, versionCode,
+                        now - (40 - i) * 24L * 60 * 60 * 1000).applyTo(state);
+            }
+        }
+        return state;
+    }
+
+}
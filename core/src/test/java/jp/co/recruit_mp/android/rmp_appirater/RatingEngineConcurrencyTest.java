@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2015-2016 Recruit Marketing Partners Co.,Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.recruit_mp.android.rmp_appirater;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Calls {@link RatingEngine} from many threads at once, and checks that no change is lost or seen half done.
+ * <p/>
+ * Threads wait for each other before calling, so the calls overlap as much as possible.
+ */
+public class RatingEngineConcurrencyTest {
+
+    private static final int THREAD_COUNT = 8;
+
+    private static final int CALL_COUNT = 10000;
+
+    private static final int APP_VERSION_CODE = 1;
+
+    private final RatingCondition mCondition = RatingRules.appiraterDefaults().build();
+
+    private ExecutorService mThreads;
+
+    @Before
+    public void setUp() throws Exception {
+        mThreads = Executors.newFixedThreadPool(THREAD_COUNT + 1);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mThreads.shutdownNow();
+    }
+
+    @Test
+    public void countLaunchCountsEveryCall() throws Exception {
+        final InMemoryStorage storage = new InMemoryStorage();
+        final RatingEngine engine = newEngine(storage);
+
+        runConcurrently(new Runnable() {
+            @Override
+            public void run() {
+                engine.countLaunch(mCondition);
+            }
+        });
+        engine.flush();
+
+        final long expected = (long) THREAD_COUNT * CALL_COUNT;
+        assertEquals(expected, engine.getRatingState().getAppLaunchCount());
+        assertEquals(expected, engine.getRatingState().getAppThisVersionCodeLaunchCount());
+        assertEquals(expected, storage.getSavedState().getAppLaunchCount());
+    }
+
+    @Test
+    public void countLaunchCountsEveryCallWithSharedStorage() throws Exception {
+        final InMemoryStorage storage = InMemoryStorage.shared();
+        final RatingEngine engine = newEngine(storage);
+
+        runConcurrently(new Runnable() {
+            private final AtomicBoolean mFlushing = new AtomicBoolean();
+
+            @Override
+            public void run() {
+                engine.countLaunch(mCondition);
+                // Write events while other threads count, so the saved values are merged with them.
+                if (mFlushing.compareAndSet(false, true)) {
+                    engine.flush();
+                    mFlushing.set(false);
+                }
+            }
+        });
+        engine.flush();
+
+        final long expected = (long) THREAD_COUNT * CALL_COUNT;
+        assertEquals(expected, engine.getRatingState().getAppLaunchCount());
+        assertEquals(expected, storage.getSavedState().getAppLaunchCount());
+    }
+
+    @Test
+    public void userDidSignificantEventCountsEveryCall() throws Exception {
+        final RatingEngine engine = newEngine(new InMemoryStorage());
+
+        runConcurrently(new Runnable() {
+            @Override
+            public void run() {
+                engine.userDidSignificantEvent();
+            }
+        });
+
+        assertEquals((long) THREAD_COUNT * CALL_COUNT, engine.getRatingState().getSignificantEventCount());
+    }
+
+    @Test
+    public void editIsAtomicForReadersWithoutLock() throws Exception {
+        final RatingEngine engine = newEngine(new InMemoryStorage());
+        final AtomicBoolean editing = new AtomicBoolean(true);
+
+        // Readers check that both values changed by one transaction are always seen together.
+        final List<Future<Long>> readers = new ArrayList<Future<Long>>();
+        for (int i = 0; i < THREAD_COUNT / 2; i++) {
+            readers.add(mThreads.submit(new Callable<Long>() {
+                @Override
+                public Long call() throws Exception {
+                    long readCount = 0;
+                    while (editing.get()) {
+                        final RatingState state = engine.getRatingState();
+                        assertEquals(state.getAppLaunchCount(), state.getReminderClickDate());
+                        engine.isShowRateDialog(mCondition);
+                        readCount++;
+                    }
+                    return readCount;
+                }
+            }));
+        }
+
+        try {
+            runConcurrently(THREAD_COUNT / 2, new Runnable() {
+                @Override
+                public void run() {
+                    engine.edit(new RatingStateEditor.Transaction() {
+                        @Override
+                        public void run(RatingStateEditor editor) {
+                            final long count = editor.getState().getAppLaunchCount() + 1;
+                            editor.setAppLaunchCount(count);
+                            editor.setReminderClickDate(count);
+                        }
+                    });
+                }
+            });
+        } finally {
+            editing.set(false);
+        }
+        for (Future<Long> reader : readers) {
+            assertTrue(reader.get() > 0);
+        }
+
+        final long expected = (long) (THREAD_COUNT / 2) * CALL_COUNT;
+        assertEquals(expected, engine.getRatingState().getAppLaunchCount());
+        assertEquals(expected, engine.getRatingState().getReminderClickDate());
+    }
+
+    @Test
+    public void resetIfAppVersionChangedResetsOnceAmongThreads() throws Exception {
+        final InMemoryStorage storage = new InMemoryStorage(
+                new RatingEvent(RatingEvent.TYPE_LAUNCH, APP_VERSION_CODE - 1, 1).applyTo(RatingState.EMPTY));
+        final RatingEngine engine = newEngine(storage);
+
+        runConcurrently(new Runnable() {
+            @Override
+            public void run() {
+                engine.resetIfAppVersionChanged();
+                engine.countLaunch(mCondition);
+            }
+        });
+
+        // Launches counted after the reset by other threads aren't reset again.
+        assertEquals((long) THREAD_COUNT * CALL_COUNT, engine.getRatingState().getAppLaunchCount());
+        assertEquals(APP_VERSION_CODE, engine.getRatingState().getAppVersionCode());
+    }
+
+    private RatingEngine newEngine(RatingStateStorage storage) {
+        return new RatingEngine.Builder()
+                .setStorage(storage)
+                .setVersionCodeProvider(new FixedVersionCodeProvider(APP_VERSION_CODE))
+                .build();
+    }
+
+    private void runConcurrently(Runnable operation) throws Exception {
+        runConcurrently(THREAD_COUNT, operation);
+    }
+
+    /**
+     * Calls the operation CALL_COUNT times on each of the threads, which start at once.
+     */
+    private void runConcurrently(int threadCount, final Runnable operation) throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int i = 0; i < threadCount; i++) {
+            futures.add(mThreads.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    start.await();
+                    for (int j = 0; j < CALL_COUNT; j++) {
+                        operation.run();
+                    }
+                    return null;
+                }
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+    }
+
+}
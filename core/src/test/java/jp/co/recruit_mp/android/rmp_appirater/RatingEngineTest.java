@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2015-2016 Recruit Marketing Partners Co.,Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.recruit_mp.android.rmp_appirater;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RatingEngineTest {
+
+    private static final long NOW = 1500000000000L;
+
+    private InMemoryStorage mStorage;
+
+    /**
+     * Values saved by version 1, which has been launched 3 times and declined.
+     */
+    private RatingState mSavedState;
+
+    @Before
+    public void setUp() throws Exception {
+        RatingState state = RatingState.EMPTY;
+        for (int i = 0; i < 3; i++) {
+            state = new RatingEvent(RatingEvent.TYPE_LAUNCH, 1, NOW + i).applyTo(state);
+        }
+        state = new RatingEvent(RatingEvent.TYPE_SIGNIFICANT_EVENT, 1, NOW, 5).applyTo(state);
+        state = new RatingEvent(RatingEvent.TYPE_DECLINE, 1, NOW).applyTo(state);
+        mSavedState = state;
+        mStorage = new InMemoryStorage(mSavedState);
+    }
+
+    @Test
+    public void resetIfAppVersionChangedResetsValuesOfPreviousVersion() throws Exception {
+        final RatingEngine engine = newEngine(2);
+        engine.resetIfAppVersionChanged();
+        engine.flush();
+
+        final RatingState state = mStorage.getSavedState();
+        assertEquals(0, state.getAppLaunchCount());
+        assertEquals(0, state.getAppThisVersionCodeLaunchCount());
+        assertEquals(0, state.getFirstLaunchDate());
+        assertEquals(0, state.getSignificantEventCount());
+        assertFalse(state.isDoNotShowAgain());
+        // The new version is saved instead of Integer.MIN_VALUE, so it isn't reset again.
+        assertEquals(2, state.getAppVersionCode());
+        assertEquals(mSavedState.getVersionHistory(), state.getVersionHistory());
+        assertEquals(1, mStorage.getWriteCount());
+    }
+
+    @Test
+    public void resetIfAppVersionChangedTwiceIsSameAsOnce() throws Exception {
+        final RatingEngine engine = newEngine(2);
+        engine.resetIfAppVersionChanged();
+        final RatingState resetState = engine.getRatingState();
+        engine.resetIfAppVersionChanged();
+        engine.flush();
+
+        assertSame(resetState, engine.getRatingState());
+        assertEquals(resetState, mStorage.getSavedState());
+        assertEquals(1, mStorage.getWriteCount());
+    }
+
+    @Test
+    public void resetIfAppVersionChangedDoesNotResetAgainAfterRestart() throws Exception {
+        final RatingEngine engine = newEngine(2);
+        engine.resetIfAppVersionChanged();
+        engine.countLaunch(RatingRules.appiraterDefaults().build());
+        engine.flush();
+        final RatingState launchedState = mStorage.getSavedState();
+
+        final RatingEngine restartedEngine = newEngine(2);
+        restartedEngine.resetIfAppVersionChanged();
+        restartedEngine.flush();
+
+        assertEquals(1, launchedState.getAppLaunchCount());
+        assertEquals(launchedState, restartedEngine.getRatingState());
+        assertEquals(launchedState, mStorage.getSavedState());
+    }
+
+    @Test
+    public void resetIfAppVersionChangedDoesNothingOnSameVersion() throws Exception {
+        final RatingEngine engine = newEngine(1);
+        engine.resetIfAppVersionChanged();
+        engine.flush();
+
+        assertEquals(mSavedState, engine.getRatingState());
+        assertEquals(0, mStorage.getWriteCount());
+    }
+
+    @Test
+    public void editChangesNothingIfTransactionThrows() throws Exception {
+        final RatingEngine engine = newEngine(2);
+        try {
+            engine.edit(new RatingStateEditor.Transaction() {
+                @Override
+                public void run(RatingStateEditor editor) {
+                    editor.reset(2);
+                    throw new IllegalStateException("Crashed in the transaction");
+                }
+            });
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        engine.flush();
+
+        assertEquals(mSavedState, engine.getRatingState());
+        assertEquals(0, mStorage.getWriteCount());
+    }
+
+    @Test
+    public void editReadsItsOwnWritesAndWritesOnce() throws Exception {
+        final RatingEngine engine = newEngine(1);
+        engine.edit(new RatingStateEditor.Transaction() {
+            @Override
+            public void run(RatingStateEditor editor) {
+                editor.setAppThisVersionCodeLaunchCount(10);
+                editor.setReminderClickDate(NOW);
+                assertEquals(10, editor.getState().getAppThisVersionCodeLaunchCount());
+                assertEquals(NOW, editor.getState().getReminderClickDate());
+            }
+        });
+        engine.flush();
+
+        final RatingState state = mStorage.getSavedState();
+        assertEquals(10, state.getAppThisVersionCodeLaunchCount());
+        // Launch count of all versions isn't changed by the count of this version.
+        assertEquals(mSavedState.getAppLaunchCount(), state.getAppLaunchCount());
+        assertEquals(NOW, state.getReminderClickDate());
+        assertEquals(1, mStorage.getWriteCount());
+    }
+
+    @Test
+    public void cachedStateIsKeptAndEventsAreWrittenLaterIfStorageIsUnavailable() throws Exception {
+        final UnavailableStorage storage = new UnavailableStorage(mSavedState);
+        final RatingEngine engine = new RatingEngine.Builder()
+                .setStorage(storage)
+                .setVersionCodeProvider(new FixedVersionCodeProvider(1))
+                .build();
+        engine.getRatingState();
+
+        storage.setAvailable(false);
+        engine.countLaunch(RatingRules.appiraterDefaults().build());
+        engine.flush();
+
+        final RatingState launchedState = engine.getRatingState();
+        assertEquals(mSavedState.getAppLaunchCount() + 1, launchedState.getAppLaunchCount());
+        assertTrue(launchedState.isDoNotShowAgain());
+        assertEquals(mSavedState, storage.getSavedState());
+
+        storage.setAvailable(true);
+        engine.flush();
+
+        assertEquals(launchedState, engine.getRatingState());
+        assertEquals(launchedState, storage.getSavedState());
+    }
+
+    @Test
+    public void storageIsReadAgainBeforeWritingIfItCannotBeRead() throws Exception {
+        final UnavailableStorage storage = new UnavailableStorage(mSavedState);
+        storage.setAvailable(false);
+        final RatingEngine engine = new RatingEngine.Builder()
+                .setStorage(storage)
+                .setVersionCodeProvider(new FixedVersionCodeProvider(1))
+                .build();
+        engine.countLaunch(RatingRules.appiraterDefaults().build());
+        engine.countLaunch(RatingRules.appiraterDefaults().build());
+        engine.flush();
+
+        assertEquals(2, engine.getRatingState().getAppLaunchCount());
+        assertEquals(mSavedState, storage.getSavedState());
+
+        storage.setAvailable(true);
+        engine.flush();
+
+        final RatingState state = engine.getRatingState();
+        assertEquals(mSavedState.getAppLaunchCount() + 2, state.getAppLaunchCount());
+        assertEquals(mSavedState.getSignificantEventCount(), state.getSignificantEventCount());
+        assertTrue(state.isDoNotShowAgain());
+        assertEquals(state, storage.getSavedState());
+    }
+
+    private RatingEngine newEngine(int appVersionCode) {
+        return new RatingEngine.Builder()
+                .setStorage(mStorage)
+                .setVersionCodeProvider(new FixedVersionCodeProvider(appVersionCode))
+                .build();
+    }
+
+    /**
+     * Shared storage which can't be read or written while it's unavailable, like a file which can't be locked.
+     */
+    private static class UnavailableStorage implements SharedRatingStateStorage {
+
+        private final InMemoryStorage mStorage = InMemoryStorage.shared();
+
+        private volatile boolean mAvailable = true;
+
+        UnavailableStorage(RatingState state) {
+            mStorage.save(state, null);
+        }
+
+        void setAvailable(boolean available) {
+            mAvailable = available;
+        }
+
+        RatingState getSavedState() {
+            return mStorage.getSavedState();
+        }
+
+        @Override
+        public RatingState load() {
+            return mAvailable ? mStorage.load() : null;
+        }
+
+        @Override
+        public void save(RatingState state, List<RatingEvent> events) {
+            if (mAvailable) {
+                mStorage.save(state, events);
+            }
+        }
+
+        @Override
+        public RatingState apply(List<RatingEvent> events) {
+            return mAvailable ? ((SharedRatingStateStorage) mStorage).apply(events) : null;
+        }
+
+    }
+
+}
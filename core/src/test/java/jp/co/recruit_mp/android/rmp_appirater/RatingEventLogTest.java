@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2015-2016 Recruit Marketing Partners Co.,Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.recruit_mp.android.rmp_appirater;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RatingEventLogTest {
+
+    private static final int APP_VERSION_CODE = 1;
+
+    /**
+     * Size of a record of a launch.
+     */
+    private static final int RECORD_SIZE = 17;
+
+    private File mDirectory;
+
+    /**
+     * Values of the migration source, which has been launched 5 times.
+     */
+    private RatingState mMigratedState;
+
+    @Before
+    public void setUp() throws Exception {
+        mDirectory = File.createTempFile("rmp_appirater", "");
+        assertTrue(mDirectory.delete());
+        assertTrue(mDirectory.mkdir());
+        RatingState state = RatingState.EMPTY;
+        for (int i = 0; i < 5; i++) {
+            state = launch(i).applyTo(state);
+        }
+        mMigratedState = state;
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        final File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+
+    @Test
+    public void valuesAreMigratedIfThereIsNoSnapshot() throws Exception {
+        assertEquals(mMigratedState, newLog().load());
+        assertTrue(getSnapshotFile().exists());
+
+        // The migration source isn't read again.
+        final RatingEventLog log = new RatingEventLog(mDirectory, new InMemoryStorage());
+        assertEquals(mMigratedState, log.load());
+    }
+
+    @Test
+    public void oldEventsAreCompactedIntoSnapshot() throws Exception {
+        final RatingEventLog log = newLog();
+        RatingState state = log.load();
+        final int count = 300;
+        for (int i = 0; i < count; i++) {
+            final RatingEvent event = launch(i);
+            state = event.applyTo(state);
+            log.save(state, Collections.singletonList(event));
+        }
+
+        // 256 events are compacted into 192 events of the snapshot and 64 recent events, and 44 are added after that.
+        assertEquals(64 + 44, log.getEvents().size());
+        assertEquals(count - 1, log.getEvents().get(log.getEvents().size() - 1).getTimestamp());
+        assertTrue(getLogFile(1).exists());
+        assertFalse(getLogFile(0).exists());
+        assertEquals((64 + 44) * RECORD_SIZE, getLogFile(1).length());
+
+        final RatingState loaded = newLog().load();
+        assertEquals(state, loaded);
+        assertEquals(mMigratedState.getAppLaunchCount() + count, loaded.getAppLaunchCount());
+    }
+
+    @Test
+    public void brokenRecordAtEndIsDropped() throws Exception {
+        final RatingEventLog log = newLog();
+        RatingState state = log.load();
+        for (int i = 0; i < 3; i++) {
+            final RatingEvent event = launch(i);
+            state = event.applyTo(state);
+            log.save(state, Collections.singletonList(event));
+        }
+        // A record torn by a crash while writing.
+        final FileOutputStream out = new FileOutputStream(getLogFile(0), true);
+        try {
+            out.write(new byte[]{RatingEvent.TYPE_LAUNCH, 0, 0, 0});
+        } finally {
+            out.close();
+        }
+
+        final RatingEventLog reloadedLog = newLog();
+        assertEquals(state, reloadedLog.load());
+        assertEquals(3 * RECORD_SIZE, getLogFile(0).length());
+
+        // An event appended after that isn't hidden by the broken record.
+        final RatingEvent event = launch(3);
+        state = event.applyTo(state);
+        reloadedLog.save(state, Collections.singletonList(event));
+        assertEquals(state, newLog().load());
+        assertEquals(4, newLog().getEvents().size());
+    }
+
+    @Test
+    public void recordWithWrongChecksumIsDropped() throws Exception {
+        final RatingEventLog log = newLog();
+        RatingState state = log.load();
+        final RatingEvent event = launch(0);
+        log.save(event.applyTo(state), Collections.singletonList(event));
+        final RatingEvent brokenEvent = launch(1);
+        log.save(brokenEvent.applyTo(event.applyTo(state)), Collections.singletonList(brokenEvent));
+        flipByte(getLogFile(0), RECORD_SIZE + 5);
+
+        assertEquals(event.applyTo(state), newLog().load());
+        assertEquals(RECORD_SIZE, getLogFile(0).length());
+    }
+
+    @Test
+    public void logIsReplayedIfSnapshotIsBroken() throws Exception {
+        final RatingEventLog log = newLog();
+        RatingState state = log.load();
+        for (int i = 0; i < 300; i++) {
+            final RatingEvent event = launch(i);
+            state = event.applyTo(state);
+            log.save(state, Collections.singletonList(event));
+        }
+        final RatingEvent decline = new RatingEvent(RatingEvent.TYPE_DECLINE, APP_VERSION_CODE, 300);
+        state = decline.applyTo(state);
+        log.save(state, Collections.singletonList(decline));
+        flipByte(getSnapshotFile(), 12);
+
+        // The values aren't replaced with the old values of the migration source, and the log isn't deleted.
+        final RatingEventLog recoveredLog = newLog();
+        final RatingState recovered = recoveredLog.load();
+        assertTrue(recovered.isDoNotShowAgain());
+        assertEquals(64 + 44, recovered.getAppLaunchCount());
+        assertEquals(64 + 45, recoveredLog.getEvents().size());
+        assertTrue(getLogFile(1).exists());
+
+        // The recovered values are saved, and the log continues.
+        final RatingEvent launch = launch(301);
+        final RatingState launched = launch.applyTo(recovered);
+        recoveredLog.save(launched, Collections.singletonList(launch));
+        assertEquals(launched, newLog().load());
+    }
+
+    @Test
+    public void migratedValuesAreReplayedIfSnapshotOfFirstGenerationIsBroken() throws Exception {
+        final RatingEventLog log = newLog();
+        RatingState state = log.load();
+        final RatingEvent decline = new RatingEvent(RatingEvent.TYPE_DECLINE, APP_VERSION_CODE, 10);
+        state = decline.applyTo(state);
+        log.save(state, Collections.singletonList(decline));
+        flipByte(getSnapshotFile(), 12);
+
+        assertEquals(state, newLog().load());
+        assertTrue(getLogFile(0).exists());
+    }
+
+    @Test
+    public void nothingIsWrittenIfDirectoryCannotBeCreated() throws Exception {
+        final File file = new File(mDirectory, "file");
+        assertTrue(file.createNewFile());
+        final RatingEventLog log = new RatingEventLog(new File(file, "rmp_appirater"), new InMemoryStorage(mMigratedState));
+
+        assertNull(log.load());
+        log.save(launch(0).applyTo(mMigratedState), Collections.singletonList(launch(0)));
+        assertTrue(log.getEvents().isEmpty());
+    }
+
+    private RatingEventLog newLog() {
+        return new RatingEventLog(mDirectory, new InMemoryStorage(mMigratedState));
+    }
+
+    private File getSnapshotFile() {
+        return new File(mDirectory, "snapshot");
+    }
+
+    private File getLogFile(long generation) {
+        return new File(mDirectory, "events-" + generation);
+    }
+
+    private static RatingEvent launch(long timestamp) {
+        return new RatingEvent(RatingEvent.TYPE_LAUNCH, APP_VERSION_CODE, timestamp);
+    }
+
+    private static void flipByte(File file, long position) throws Exception {
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.seek(position);
+            final int b = randomAccessFile.read();
+            randomAccessFile.seek(position);
+            randomAccessFile.write(b ^ 0xff);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+}
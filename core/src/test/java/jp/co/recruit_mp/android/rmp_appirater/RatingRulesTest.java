@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2015-2016 Recruit Marketing Partners Co.,Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.recruit_mp.android.rmp_appirater;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RatingRulesTest {
+
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    @Test
+    public void appiraterDefaultsIsSameAsHandWrittenCondition() throws Exception {
+        final MillisShowRateDialogCondition rules = RatingRules.appiraterDefaults().build();
+        final MillisShowRateDialogCondition handWritten = new AppiraterDefaultsCondition();
+        // Dates are an hour away from the thresholds, so the clock can move while they are compared.
+        final long[] launchCounts = {0, 1, 19, 20, 21, 1000};
+        final long[] daysSinceFirstLaunch = {-1, 0, 29, 30, 31, 365};
+        final long[] daysSinceReminder = {-1, 0, 1, 2};
+        final long now = System.currentTimeMillis();
+        for (long launchCount : launchCounts) {
+            for (long firstLaunchDays : daysSinceFirstLaunch) {
+                final long firstLaunchDate = (firstLaunchDays < 0) ? 0 : now - firstLaunchDays * DAY - HOUR;
+                for (long reminderDays : daysSinceReminder) {
+                    final long reminderClickDate = (reminderDays < 0) ? 0 : now - reminderDays * DAY + HOUR;
+                    for (int flags = 0; flags < 4; flags++) {
+                        final long rateClickDate = ((flags & 1) != 0) ? now - DAY : 0;
+                        final boolean doNotShowAgain = (flags & 2) != 0;
+                        final String message = launchCount + " launches, " + firstLaunchDays + " days, reminder "
+                                + reminderDays + " days, flags " + flags;
+                        assertEquals(message,
+                                handWritten.isShowRateDialog(launchCount, launchCount, firstLaunchDate, 2, 1,
+                                        rateClickDate, reminderClickDate, doNotShowAgain),
+                                rules.isShowRateDialog(launchCount, launchCount, firstLaunchDate, 2, 1,
+                                        rateClickDate, reminderClickDate, doNotShowAgain));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void allOfMergesRulesIntoOneCondition() throws Exception {
+        final MillisShowRateDialogCondition merged = RatingRules.allOf(
+                new RatingRules.Builder().minLaunchCount(5).build(),
+                RatingRules.allOf(
+                        new RatingRules.Builder().minThisVersionLaunchCount(3).build(),
+                        new RatingRules.Builder().showOnVersionChange(false).build()));
+
+        // The merged condition is the same class as a built condition, not a composed one.
+        assertEquals(new RatingRules.Builder().build().getClass(), merged.getClass());
+        assertTrue(merged.isShowRateDialog(5, 3, 1, 2, 2, 0, 0, false));
+        assertFalse(merged.isShowRateDialog(4, 3, 1, 2, 2, 0, 0, false));
+        assertFalse(merged.isShowRateDialog(5, 2, 1, 2, 2, 0, 0, false));
+        assertFalse(merged.isShowRateDialog(5, 3, 1, 2, 1, 0, 0, false));
+    }
+
+    @Test
+    public void minDaysSinceFirstLaunchIsFalseBeforeFirstLaunch() throws Exception {
+        final MillisShowRateDialogCondition rules = new RatingRules.Builder().minDaysSinceFirstLaunch(1).build();
+
+        assertFalse(rules.isShowRateDialog(1, 1, 0, 1, 1, 0, 0, false));
+        assertTrue(rules.isShowRateDialog(1, 1, System.currentTimeMillis() - DAY - HOUR, 1, 1, 0, 0, false));
+    }
+
+    @Test
+    public void primitiveMethodComparesDatesWithClock() throws Exception {
+        final long[] now = {100 * DAY};
+        final Clock clock = new Clock() {
+            @Override
+            public long currentTimeMillis() {
+                return now[0];
+            }
+        };
+        final MillisShowRateDialogCondition rules = new RatingRules.Builder()
+                .minDaysSinceFirstLaunch(3)
+                .minDaysSinceReminder(1)
+                .setClock(clock)
+                .build();
+        final long firstLaunchDate = now[0] - 3 * DAY + HOUR;
+
+        assertFalse(rules.isShowRateDialog(1, 1, firstLaunchDate, 1, 1, 0, 0, false));
+        now[0] += HOUR;
+        assertTrue(rules.isShowRateDialog(1, 1, firstLaunchDate, 1, 1, 0, 0, false));
+        assertFalse(rules.isShowRateDialog(1, 1, firstLaunchDate, 1, 1, 0, now[0] - HOUR, false));
+        assertTrue(rules.isShowRateDialog(new RatingState.Builder().setAppLaunchCount(1)
+                .setFirstLaunchDate(firstLaunchDate).build(), 1, 1));
+    }
+
+    @Test
+    public void allOfDoesNotMergeRulesOfDifferentClocks() throws Exception {
+        final Clock clock = new Clock() {
+            @Override
+            public long currentTimeMillis() {
+                return 100 * DAY;
+            }
+        };
+        final MillisShowRateDialogCondition composed = RatingRules.allOf(
+                new RatingRules.Builder().minDaysSinceFirstLaunch(3).setClock(clock).build(),
+                new RatingRules.Builder().minLaunchCount(5).build());
+
+        assertNotEquals(new RatingRules.Builder().build().getClass(), composed.getClass());
+        assertTrue(composed.isShowRateDialog(5, 5, 97 * DAY, 1, 1, 0, 0, false));
+        assertFalse(composed.isShowRateDialog(5, 5, 97 * DAY + 1, 1, 1, 0, 0, false));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void primitiveMethodRejectsRecentVersionRules() throws Exception {
+        new RatingRules.Builder().minLaunchCountOnRecentVersions(2, 5).build()
+                .isShowRateDialog(10, 10, 1, 1, 1, 0, 0, false);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void primitiveMethodRejectsSignificantEventRules() throws Exception {
+        new RatingRules.Builder().minSignificantEventCount(1).build()
+                .isShowRateDialog(10, 10, 1, 1, 1, 0, 0, false);
+    }
+
+    @Test
+    public void stateMethodChecksSignificantEventRules() throws Exception {
+        final MillisShowRateDialogCondition rules = new RatingRules.Builder().minSignificantEventCount(2).build();
+
+        assertFalse(rules.isShowRateDialog(new RatingState.Builder().setSignificantEventCount(1).build(), 1, 1));
+        assertTrue(rules.isShowRateDialog(new RatingState.Builder().setSignificantEventCount(2).build(), 1, 1));
+    }
+
+}
@@ -0,0 +1,520 @@
+/*
+ * Copyright (C) 2015-2016 Recruit Marketing Partners Co.,Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.recruit_mp.android.rmp_appirater;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Replays synthetic launch schedules of many users through a showing rate dialog condition,
+ * to tune the condition without waiting for days.
+ * <p/>
+ * Each user launches the app at random intervals, and answers rating dialog at random.
+ * Users are simulated in parallel, and the same seed gives the same result with any number of threads.
+ * The condition must be thread-safe, and must compare dates with the time given to
+ * {@link RatingCondition#isShowRateDialog(RatingState, int, int, long)},
+ * like conditions built by {@code RatingRules}.
+ * <pre>
+ * RatingSimulator.Result result = new RatingSimulator.Builder()
+ *         .setUserCount(1000000)
+ *         .setDays(90)
+ *         .build()
+ *         .run(RatingRules.appiraterDefaults().build());
+ * </pre>
+ * This doesn't use Android, so it can be run on the JVM.
+ */
+public final class RatingSimulator {
+
+    /**
+     * Start time of the simulation.
+     */
+    private static final long START_TIME_MILLIS = 1451606400000L;
+
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    /**
+     * Users simulated at once by a thread.
+     */
+    private static final int CHUNK_SIZE = 4096;
+
+    /**
+     * Launch counts at the first prompt are counted up to this, and larger counts are counted as this.
+     */
+    private static final int MAX_LAUNCH_BUCKET = 1024;
+
+    private final int mUserCount;
+
+    private final int mDays;
+
+    private final double mMeanLaunchesPerDay;
+
+    private final double mMeanActiveDays;
+
+    private final int mVersionIntervalDays;
+
+    private final double mRateProbability;
+
+    private final double mDeclineProbability;
+
+    private final long mSeed;
+
+    private final int mThreadCount;
+
+    private RatingSimulator(Builder builder) {
+        mUserCount = builder.mUserCount;
+        mDays = builder.mDays;
+        mMeanLaunchesPerDay = builder.mMeanLaunchesPerDay;
+        mMeanActiveDays = builder.mMeanActiveDays;
+        mVersionIntervalDays = builder.mVersionIntervalDays;
+        mRateProbability = builder.mRateProbability;
+        mDeclineProbability = builder.mDeclineProbability;
+        mSeed = builder.mSeed;
+        mThreadCount = builder.mThreadCount;
+    }
+
+    /**
+     * Simulates all users with the condition.
+     *
+     * @param condition Showing rate dialog condition.
+     * @return Result of the simulation.
+     * @throws InterruptedException if the calling thread is interrupted.
+     */
+    public Result run(final RatingCondition condition) throws InterruptedException {
+        final AtomicInteger nextChunk = new AtomicInteger();
+        final int chunkCount = (mUserCount + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        final int threadCount = Math.max(1, Math.min(mThreadCount, chunkCount));
+
+        final ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            final List<Future<Result>> futures = new ArrayList<Future<Result>>(threadCount);
+            for (int i = 0; i < threadCount; i++) {
+                futures.add(executor.submit(new Callable<Result>() {
+                    @Override
+                    public Result call() {
+                        final Result result = new Result(mDays);
+                        int chunk;
+                        while ((chunk = nextChunk.getAndIncrement()) < chunkCount) {
+                            final int end = Math.min(mUserCount, (chunk + 1) * CHUNK_SIZE);
+                            for (int user = chunk * CHUNK_SIZE; user < end; user++) {
+                                simulateUser(condition, user, result);
+                            }
+                        }
+                        return result;
+                    }
+                }));
+            }
+
+            final Result result = new Result(mDays);
+            for (Future<Result> future : futures) {
+                result.add(future.get());
+            }
+            return result;
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void simulateUser(RatingCondition condition, int user, Result result) {
+        final Random random = new Random(mSeed, user);
+
+        // Launches per day and active days differ by user.
+        final double launchesPerDay = mMeanLaunchesPerDay * random.nextExponential();
+        final double activeDays = (mMeanActiveDays > 0)
+                ? Math.min(mDays, mMeanActiveDays * random.nextExponential()) : mDays;
+        final long endTime = START_TIME_MILLIS + (long) (activeDays * DAY_MILLIS);
+
+        RatingState state = RatingState.EMPTY;
+        long time = START_TIME_MILLIS;
+        long launchCount = 0;
+        boolean prompted = false;
+
+        result.mUserCount++;
+        while (launchesPerDay > 0) {
+            time += (long) (random.nextExponential() / launchesPerDay * DAY_MILLIS);
+            if (time >= endTime) {
+                break;
+            }
+
+            final int appVersionCode = (mVersionIntervalDays > 0)
+                    ? 1 + (int) ((time - START_TIME_MILLIS) / (mVersionIntervalDays * DAY_MILLIS)) : 1;
+            final int previousAppVersionCode = state.getAppVersionCode();
+            state = new RatingEvent(RatingEvent.TYPE_LAUNCH, appVersionCode, time).applyTo(state);
+            launchCount++;
+            result.mLaunchCount++;
+
+            if (!condition.isShowRateDialog(state, appVersionCode, previousAppVersionCode, time)) {
+                continue;
+            }
+
+            result.mPromptCount++;
+            if (!prompted) {
+                prompted = true;
+                result.mPromptedUserCount++;
+                result.mFirstPromptDays[(int) ((time - START_TIME_MILLIS) / DAY_MILLIS)]++;
+                result.mFirstPromptLaunches[(int) Math.min(launchCount, MAX_LAUNCH_BUCKET)]++;
+            }
+
+            final double answer = random.nextDouble();
+            final int type;
+            if (answer < mRateProbability) {
+                type = RatingEvent.TYPE_RATE;
+                result.mRatedUserCount++;
+            } else if (answer < mRateProbability + mDeclineProbability) {
+                type = RatingEvent.TYPE_DECLINE;
+                result.mDeclinedUserCount++;
+            } else {
+                type = RatingEvent.TYPE_REMIND;
+            }
+            state = new RatingEvent(type, appVersionCode, time).applyTo(state);
+        }
+    }
+
+    /**
+     * Small random number generator which is created for each user, so results don't depend on threads.
+     */
+    private static class Random {
+
+        private long mState;
+
+        Random(long seed, int user) {
+            mState = mix(seed + user * 0x9e3779b97f4a7c15L);
+        }
+
+        private static long mix(long z) {
+            z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+            z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+            return z ^ (z >>> 31);
+        }
+
+        double nextDouble() {
+            mState += 0x9e3779b97f4a7c15L;
+            return (mix(mState) >>> 11) * 0x1.0p-53;
+        }
+
+        /**
+         * Gets a random value of the exponential distribution whose mean is 1.
+         */
+        double nextExponential() {
+            return -Math.log(1.0 - nextDouble());
+        }
+
+    }
+
+    /**
+     * Result of the simulation.
+     */
+    public static final class Result {
+
+        private long mUserCount;
+
+        private long mLaunchCount;
+
+        private long mPromptedUserCount;
+
+        private long mPromptCount;
+
+        private long mRatedUserCount;
+
+        private long mDeclinedUserCount;
+
+        private final long[] mFirstPromptDays;
+
+        private final long[] mFirstPromptLaunches = new long[MAX_LAUNCH_BUCKET + 1];
+
+        Result(int days) {
+            mFirstPromptDays = new long[days + 1];
+        }
+
+        void add(Result result) {
+            mUserCount += result.mUserCount;
+            mLaunchCount += result.mLaunchCount;
+            mPromptedUserCount += result.mPromptedUserCount;
+            mPromptCount += result.mPromptCount;
+            mRatedUserCount += result.mRatedUserCount;
+            mDeclinedUserCount += result.mDeclinedUserCount;
+            for (int i = 0; i < mFirstPromptDays.length; i++) {
+                mFirstPromptDays[i] += result.mFirstPromptDays[i];
+            }
+            for (int i = 0; i < mFirstPromptLaunches.length; i++) {
+                mFirstPromptLaunches[i] += result.mFirstPromptLaunches[i];
+            }
+        }
+
+        public long getUserCount() {
+            return mUserCount;
+        }
+
+        public long getLaunchCount() {
+            return mLaunchCount;
+        }
+
+        /**
+         * Gets the number of users who see rating dialog at least once.
+         *
+         * @return Number of users.
+         */
+        public long getPromptedUserCount() {
+            return mPromptedUserCount;
+        }
+
+        /**
+         * Gets the number of times rating dialog is shown.
+         *
+         * @return Number of prompts.
+         */
+        public long getPromptCount() {
+            return mPromptCount;
+        }
+
+        public long getRatedUserCount() {
+            return mRatedUserCount;
+        }
+
+        public long getDeclinedUserCount() {
+            return mDeclinedUserCount;
+        }
+
+        /**
+         * Gets the ratio of users who see rating dialog at least once.
+         *
+         * @return Ratio from 0 to 1.
+         */
+        public double getPromptRate() {
+            return (mUserCount > 0) ? (double) mPromptedUserCount / mUserCount : 0;
+        }
+
+        /**
+         * Gets the ratio of users who click "Rate".
+         *
+         * @return Ratio from 0 to 1.
+         */
+        public double getRateRate() {
+            return (mUserCount > 0) ? (double) mRatedUserCount / mUserCount : 0;
+        }
+
+        /**
+         * Gets the number of days from the first launch to the first prompt, of prompted users.
+         *
+         * @param percentile Percentile from 0 to 100, e.g. 50 for median.
+         * @return Days, or -1 if no user is prompted.
+         */
+        public int getFirstPromptDayPercentile(double percentile) {
+            return percentile(mFirstPromptDays, percentile);
+        }
+
+        /**
+         * Gets the launch count at the first prompt, of prompted users.
+         *
+         * @param percentile Percentile from 0 to 100, e.g. 50 for median.
+         * @return Launch count, or -1 if no user is prompted.
+         */
+        public int getFirstPromptLaunchPercentile(double percentile) {
+            return percentile(mFirstPromptLaunches, percentile);
+        }
+
+        /**
+         * Gets the number of users who are prompted first on each day.
+         *
+         * @return Array whose index is the day from the first launch.
+         */
+        public long[] getFirstPromptDayHistogram() {
+            return mFirstPromptDays.clone();
+        }
+
+        private int percentile(long[] histogram, double percentile) {
+            if (mPromptedUserCount == 0) {
+                return -1;
+            }
+            final long rank = (long) Math.ceil(mPromptedUserCount * percentile / 100.0);
+            long count = 0;
+            for (int i = 0; i < histogram.length; i++) {
+                count += histogram[i];
+                if (count >= Math.max(1, rank)) {
+                    return i;
+                }
+            }
+            return histogram.length - 1;
+        }
+
+        @Override
+        public String toString() {
+            return "Result{users=" + mUserCount
+                    + ", launches=" + mLaunchCount
+                    + ", promptRate=" + getPromptRate()
+                    + ", prompts=" + mPromptCount
+                    + ", rated=" + mRatedUserCount
+                    + ", declined=" + mDeclinedUserCount
+                    + ", firstPromptDay(p50/p90/p99)=" + getFirstPromptDayPercentile(50)
+                    + "/" + getFirstPromptDayPercentile(90) + "/" + getFirstPromptDayPercentile(99)
+                    + ", firstPromptLaunch(p50/p90/p99)=" + getFirstPromptLaunchPercentile(50)
+                    + "/" + getFirstPromptLaunchPercentile(90) + "/" + getFirstPromptLaunchPercentile(99)
+                    + "}";
+        }
+
+    }
+
+    /**
+     * Builder of {@link RatingSimulator}.
+     */
+    public static class Builder {
+
+        private int mUserCount = 100000;
+
+        private int mDays = 90;
+
+        private double mMeanLaunchesPerDay = 1.0;
+
+        private double mMeanActiveDays;
+
+        private int mVersionIntervalDays;
+
+        private double mRateProbability = 0.2;
+
+        private double mDeclineProbability = 0.3;
+
+        private long mSeed;
+
+        private int mThreadCount = Runtime.getRuntime().availableProcessors();
+
+        /**
+         * Constructor.
+         */
+        public Builder() {
+        }
+
+        /**
+         * Sets the number of users. Default is 100000.
+         *
+         * @param userCount Number of users.
+         * @return This builder.
+         */
+        public Builder setUserCount(int userCount) {
+            mUserCount = userCount;
+            return this;
+        }
+
+        /**
+         * Sets the number of days to simulate from the first launch. Default is 90.
+         *
+         * @param days Days
+         * @return This builder.
+         */
+        public Builder setDays(int days) {
+            mDays = days;
+            return this;
+        }
+
+        /**
+         * Sets the mean of launches per day. Each user launches at a rate drawn around it. Default is 1.
+         *
+         * @param meanLaunchesPerDay Mean of launches per day.
+         * @return This builder.
+         */
+        public Builder setMeanLaunchesPerDay(double meanLaunchesPerDay) {
+            mMeanLaunchesPerDay = meanLaunchesPerDay;
+            return this;
+        }
+
+        /**
+         * Sets the mean of days until users stop using the app. Default is 0, which means users never stop.
+         *
+         * @param meanActiveDays Mean of active days, or 0.
+         * @return This builder.
+         */
+        public Builder setMeanActiveDays(double meanActiveDays) {
+            mMeanActiveDays = meanActiveDays;
+            return this;
+        }
+
+        /**
+         * Sets the interval of app updates. Default is 0, which means the version isn't changed.
+         *
+         * @param versionIntervalDays Days between versions, or 0.
+         * @return This builder.
+         */
+        public Builder setVersionIntervalDays(int versionIntervalDays) {
+            mVersionIntervalDays = versionIntervalDays;
+            return this;
+        }
+
+        /**
+         * Sets probabilities of answers to rating dialog. Otherwise "Remind me later" is clicked.
+         * Default is 0.2 for "Rate" and 0.3 for "No, Thanks".
+         *
+         * @param rateProbability    Probability of "Rate".
+         * @param declineProbability Probability of "No, Thanks".
+         * @return This builder.
+         */
+        public Builder setAnswerProbabilities(double rateProbability, double declineProbability) {
+            mRateProbability = rateProbability;
+            mDeclineProbability = declineProbability;
+            return this;
+        }
+
+        /**
+         * Sets the seed of random numbers. Default is 0.
+         *
+         * @param seed Seed
+         * @return This builder.
+         */
+        public Builder setSeed(long seed) {
+            mSeed = seed;
+            return this;
+        }
+
+        /**
+         * Sets the number of threads. Default is the number of processors.
+         *
+         * @param threadCount Number of threads.
+         * @return This builder.
+         */
+        public Builder setThreadCount(int threadCount) {
+            mThreadCount = threadCount;
+            return this;
+        }
+
+        /**
+         * Builds the simulator.
+         *
+         * @return Simulator
+         */
+        public RatingSimulator build() {
+            if (mUserCount < 0 || mDays <= 0 || mMeanLaunchesPerDay < 0) {
+                throw new IllegalArgumentException("Invalid user count, days or launches per day.");
+            }
+            return new RatingSimulator(this);
+        }
+
+    }
+
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2015-2016 Recruit Marketing Partners Co.,Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package jp.co.recruit_mp.android.rmp_appirater;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RatingSimulatorTest {
+
+    @Test
+    public void sameSeedGivesSameResultWithAnyThreadCount() throws Exception {
+        final RatingCondition condition = RatingRules.appiraterDefaults().build();
+        final RatingSimulator.Result single = newBuilder().setThreadCount(1).build().run(condition);
+        final RatingSimulator.Result parallel = newBuilder().setThreadCount(4).build().run(condition);
+
+        assertEquals(single.getLaunchCount(), parallel.getLaunchCount());
+        assertEquals(single.getPromptCount(), parallel.getPromptCount());
+        assertEquals(single.getRatedUserCount(), parallel.getRatedUserCount());
+        assertArrayEquals(single.getFirstPromptDayHistogram(), parallel.getFirstPromptDayHistogram());
+    }
+
+    @Test
+    public void conditionWhichIsNeverTruePromptsNobody() throws Exception {
+        final RatingSimulator.Result result = newBuilder().build().run(new RatingCondition() {
+            @Override
+            public boolean isShowRateDialog(RatingState state, int appVersionCode, int previousAppVersionCode,
+                                            long currentTimeMillis) {
+                return false;
+            }
+        });
+
+        assertEquals(10000, result.getUserCount());
+        assertTrue(result.getLaunchCount() > 0);
+        assertEquals(0, result.getPromptCount());
+        assertEquals(0, result.getRatedUserCount());
+    }
+
+    @Test
+    public void firstPromptIsAfterMinDays() throws Exception {
+        final RatingSimulator.Result result = newBuilder().build()
+                .run(new RatingRules.Builder().minDaysSinceFirstLaunch(30).build());
+
+        assertTrue(result.getPromptedUserCount() > 0);
+        final long[] histogram = result.getFirstPromptDayHistogram();
+        for (int day = 0; day < 30; day++) {
+            assertEquals(0, histogram[day]);
+        }
+    }
+
+    private static RatingSimulator.Builder newBuilder() {
+        return new RatingSimulator.Builder()
+                .setUserCount(10000)
+                .setDays(90)
+                .setSeed(1);
+    }
+
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2015-2016 Recruit Marketing Partners Co.,Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.recruit_mp.android.rmp_appirater;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Counts launches in multiple JVM processes with one {@link RatingStateFile}, and checks that no launch is lost.
+ * <p/>
+ * Each process runs {@link #main(String[])}, which counts launches with {@link RatingEngine} and writes each of them,
+ * like processes of an application which are started at the same time.
+ */
+public class RatingStateFileMultiProcessTest {
+
+    private static final int PROCESS_COUNT = 4;
+
+    private static final int LAUNCH_COUNT = 500;
+
+    private static final int APP_VERSION_CODE = 1;
+
+    private File mDirectory;
+
+    private File mFile;
+
+    private File mStartFile;
+
+    @Before
+    public void setUp() throws Exception {
+        mDirectory = File.createTempFile("rmp_appirater", "");
+        assertTrue(mDirectory.delete());
+        assertTrue(mDirectory.mkdir());
+        mFile = new File(mDirectory, "rmp_appirater.bin");
+        mStartFile = new File(mDirectory, "start");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        final File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+
+    @Test
+    public void launchesCountedByProcessesAreNotLost() throws Exception {
+        final List<Process> processes = new ArrayList<Process>();
+        try {
+            for (int i = 0; i < PROCESS_COUNT; i++) {
+                processes.add(startProcess());
+            }
+            // Start counting in all processes at once.
+            assertTrue(mStartFile.createNewFile());
+            for (Process process : processes) {
+                assertEquals(0, waitFor(process, TimeUnit.SECONDS.toMillis(60)));
+            }
+        } finally {
+            for (Process process : processes) {
+                process.destroy();
+            }
+        }
+
+        final RatingState state = new RatingStateFile(mFile, null).load();
+        final long expected = (long) PROCESS_COUNT * LAUNCH_COUNT;
+        assertEquals(expected, state.getAppLaunchCount());
+        assertEquals(expected, state.getAppThisVersionCodeLaunchCount());
+        assertEquals(APP_VERSION_CODE, state.getAppVersionCode());
+        assertEquals(expected, state.getVersionHistory().getLaunchCount(0));
+    }
+
+    private Process startProcess() throws Exception {
+        final String java = new File(new File(System.getProperty("java.home"), "bin"), "java").getPath();
+        return new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                RatingStateFileMultiProcessTest.class.getName(),
+                mFile.getPath(), mStartFile.getPath(), String.valueOf(LAUNCH_COUNT))
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.INHERIT)
+                .start();
+    }
+
+    /**
+     * Waits for the process to exit.
+     *
+     * @return Exit value, or -1 if it hasn't exited in time.
+     */
+    private static int waitFor(Process process, long timeoutMillis) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (System.currentTimeMillis() < deadline) {
+            try {
+                return process.exitValue();
+            } catch (IllegalThreadStateException e) {
+                Thread.sleep(10);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Counts launches in a process.
+     *
+     * @param args The file, the file which is created to start, and the count of launches.
+     */
+    public static void main(String[] args) throws Exception {
+        final RatingStateFile storage = new RatingStateFile(new File(args[0]), null) {
+            @Override
+            protected void onWarning(String message, Throwable throwable) {
+                throw new IllegalStateException(message, throwable);
+            }
+        };
+        final File startFile = new File(args[1]);
+        final int launchCount = Integer.parseInt(args[2]);
+        while (!startFile.exists()) {
+            Thread.sleep(1);
+        }
+        for (int i = 0; i < launchCount; i++) {
+            final RatingEngine engine = new RatingEngine.Builder()
+                    .setStorage(storage)
+                    .setVersionCodeProvider(new FixedVersionCodeProvider(APP_VERSION_CODE))
+                    .build();
+            engine.countLaunch(RatingRules.appiraterDefaults().build());
+            engine.flush();
+        }
+        System.exit(0);
+    }
+
+}
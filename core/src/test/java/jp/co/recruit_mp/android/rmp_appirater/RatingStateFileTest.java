@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2015-2016 Recruit Marketing Partners Co.,Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.recruit_mp.android.rmp_appirater;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RatingStateFileTest {
+
+    private static final int APP_VERSION_CODE = 1;
+
+    private File mDirectory;
+
+    private File mFile;
+
+    /**
+     * Values of the migration source, which has been launched once and declined.
+     */
+    private RatingState mSavedState;
+
+    @Before
+    public void setUp() throws Exception {
+        mDirectory = File.createTempFile("rmp_appirater", "");
+        assertTrue(mDirectory.delete());
+        assertTrue(mDirectory.mkdir());
+        mFile = new File(mDirectory, "rmp_appirater.bin");
+        mSavedState = new RatingEvent(RatingEvent.TYPE_DECLINE, APP_VERSION_CODE, 1).applyTo(
+                new RatingEvent(RatingEvent.TYPE_LAUNCH, APP_VERSION_CODE, 1).applyTo(RatingState.EMPTY));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mFile.delete();
+        mDirectory.delete();
+    }
+
+    @Test
+    public void nothingIsReadOrWrittenIfFileCannotBeMapped() throws Exception {
+        // A directory can't be mapped.
+        assertTrue(mFile.mkdir());
+        final RatingStateFile storage = new RatingStateFile(mFile, new InMemoryStorage(mSavedState));
+
+        // The values of the migration source may be older than the file, so they aren't returned.
+        assertNull(storage.load());
+        assertNull(storage.apply(Collections.singletonList(
+                new RatingEvent(RatingEvent.TYPE_LAUNCH, APP_VERSION_CODE, 2))));
+    }
+
+    @Test
+    public void engineReadsFileAgainIfItCannotBeMapped() throws Exception {
+        assertTrue(mFile.mkdir());
+        final RatingEngine engine = new RatingEngine.Builder()
+                .setStorage(new RatingStateFile(mFile, new InMemoryStorage(mSavedState)))
+                .setVersionCodeProvider(new FixedVersionCodeProvider(APP_VERSION_CODE))
+                .build();
+        engine.countLaunch(RatingRules.appiraterDefaults().build());
+        engine.flush();
+        assertEquals(1, engine.getRatingState().getAppLaunchCount());
+
+        assertTrue(mFile.delete());
+        engine.flush();
+
+        // The launch is applied to the migrated values instead of replacing them.
+        final RatingState state = engine.getRatingState();
+        assertEquals(2, state.getAppLaunchCount());
+        assertTrue(state.isDoNotShowAgain());
+        assertEquals(state, new RatingStateFile(mFile, null).load());
+    }
+
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2015-2016 Recruit Marketing Partners Co.,Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.recruit_mp.android.rmp_appirater;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+
+public class SignificantEventCounterTest {
+
+    private static final int THREAD_COUNT = 8;
+
+    private static final int CALL_COUNT = 100000;
+
+    private static final int APP_VERSION_CODE = 1;
+
+    private ExecutorService mThreads;
+
+    @Before
+    public void setUp() throws Exception {
+        mThreads = Executors.newFixedThreadPool(THREAD_COUNT + 1);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mThreads.shutdownNow();
+    }
+
+    @Test
+    public void drainTakesEventsOfAllStripes() throws Exception {
+        final SignificantEventCounter counter = new SignificantEventCounter(THREAD_COUNT);
+        incrementConcurrently(counter);
+
+        assertEquals((long) THREAD_COUNT * CALL_COUNT, counter.drain());
+        assertEquals(0, counter.drain());
+    }
+
+    @Test
+    public void drainWhileIncrementingNeitherLosesNorRepeatsEvents() throws Exception {
+        final SignificantEventCounter counter = new SignificantEventCounter(THREAD_COUNT);
+        final AtomicBoolean incrementing = new AtomicBoolean(true);
+        final Future<Long> drained = mThreads.submit(new Callable<Long>() {
+            @Override
+            public Long call() throws Exception {
+                long count = 0;
+                while (incrementing.get()) {
+                    count += counter.drain();
+                }
+                return count;
+            }
+        });
+        incrementConcurrently(counter);
+        incrementing.set(false);
+
+        assertEquals((long) THREAD_COUNT * CALL_COUNT, drained.get(30, TimeUnit.SECONDS) + counter.drain());
+    }
+
+    @Test
+    public void singleStripeCountsEvents() throws Exception {
+        final SignificantEventCounter counter = new SignificantEventCounter(1);
+        incrementConcurrently(counter);
+
+        assertEquals((long) THREAD_COUNT * CALL_COUNT, counter.drain());
+    }
+
+    @Test
+    public void flushAppliesCountedEvents() throws Exception {
+        final InMemoryStorage storage = new InMemoryStorage();
+        final RatingEngine engine = newEngine(storage);
+        for (int i = 0; i < 5; i++) {
+            engine.userDidSignificantEvent();
+        }
+        engine.flush();
+
+        assertEquals(5, storage.getSavedState().getSignificantEventCount());
+        assertEquals(5, engine.getRatingState().getSignificantEventCount());
+    }
+
+    @Test
+    public void resetClearsEventsCountedBeforeIt() throws Exception {
+        final InMemoryStorage storage = new InMemoryStorage();
+        final RatingEngine engine = newEngine(storage);
+        for (int i = 0; i < 5; i++) {
+            engine.userDidSignificantEvent();
+        }
+        engine.edit(new RatingStateEditor.Transaction() {
+            @Override
+            public void run(RatingStateEditor editor) {
+                assertEquals(5, editor.getState().getSignificantEventCount());
+                editor.reset(APP_VERSION_CODE + 1);
+            }
+        });
+        engine.userDidSignificantEvent();
+        engine.flush();
+
+        // Only the event after the reset is counted.
+        assertEquals(1, storage.getSavedState().getSignificantEventCount());
+        assertEquals(1, engine.getRatingState().getSignificantEventCount());
+    }
+
+    private static RatingEngine newEngine(RatingStateStorage storage) {
+        return new RatingEngine.Builder()
+                .setStorage(storage)
+                .setVersionCodeProvider(new FixedVersionCodeProvider(APP_VERSION_CODE))
+                .build();
+    }
+
+    /**
+     * Increments the counter CALL_COUNT times on each of the threads, which start at once.
+     */
+    private void incrementConcurrently(final SignificantEventCounter counter) throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int i = 0; i < THREAD_COUNT; i++) {
+            futures.add(mThreads.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    start.await();
+                    for (int j = 0; j < CALL_COUNT; j++) {
+                        counter.increment();
+                    }
+                    return null;
+                }
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+    }
+
+}
@@ -0,0 +1,508 @@
+/*
+ * Copyright (C) 2015-2016 Recruit Marketing Partners Co.,Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.recruit_mp.android.rmp_appirater;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long each RMP-Appirater operation blocks the calling thread, e.g. the main thread,
+ * while the storage is slow.
+ * <p/>
+ * Operations are called one after another on the calling thread, and values are written by a background thread
+ * like on Android. Use {@link FaultInjectingStorage} to add fsync latency, stalls and write failures.
+ * Operations called by the app on the main thread must finish within the budget even if writes stall.
+ * The first call in a process loads values on the calling thread unless the engine is initialized in background,
+ * so it's measured by a new engine and checked with the budget too.
+ * <pre>
+ * StorageLatencyBenchmark.Result result = new StorageLatencyBenchmark.Builder(
+ *         new FaultInjectingStorage.Builder(fakeStorage)
+ *                 .setWriteLatencyMillis(20)
+ *                 .setStall(0.01, 2000)
+ *                 .setFailureProbability(0.05)
+ *                 .build())
+ *         .setBudgetMillis(16)
+ *         .build()
+ *         .run();
+ * System.out.println(result);
+ * </pre>
+ * This doesn't use Android, so it can be run on the JVM. This drives {@link RatingEngine},
+ * and the dialog and the store of the library are measured by the instrumentation tests of the library.
+ */
+public final class StorageLatencyBenchmark {
+
+    /**
+     * Counting the launch with loaded values, like appLaunched.
+     */
+    public static final int OPERATION_COUNT_LAUNCH = 0;
+
+    /**
+     * Checking the condition with loaded values, like tryToShowPrompt.
+     */
+    public static final int OPERATION_IS_SHOW_RATE_DIALOG = 1;
+
+    /**
+     * Recording "Rate" button clicked.
+     */
+    public static final int OPERATION_RATE = 2;
+
+    /**
+     * Recording "Remind me later" button clicked.
+     */
+    public static final int OPERATION_REMIND = 3;
+
+    /**
+     * Recording "No, Thanks" button clicked.
+     */
+    public static final int OPERATION_DECLINE = 4;
+
+    /**
+     * Changing values in a transaction.
+     */
+    public static final int OPERATION_EDIT = 5;
+
+    /**
+     * Counting a significant event.
+     */
+    public static final int OPERATION_SIGNIFICANT_EVENT = 6;
+
+    /**
+     * Counting the launch by a new engine, like the first appLaunched in a process.
+     * This reads the storage on the calling thread unless the engine is initialized in background,
+     * see {@link Builder#setInitialized(boolean)}.
+     */
+    public static final int OPERATION_COLD_COUNT_LAUNCH = 7;
+
+    /**
+     * Checking the condition by a new engine, like the first tryToShowPrompt in a process.
+     * This reads the storage on the calling thread unless the engine is initialized in background.
+     */
+    public static final int OPERATION_COLD_IS_SHOW_RATE_DIALOG = 8;
+
+    /**
+     * Writing values immediately. This waits for the storage by design. Not checked with the budget.
+     */
+    public static final int OPERATION_FLUSH = 9;
+
+    /**
+     * Number of operations.
+     */
+    public static final int OPERATION_COUNT = 10;
+
+    private static final String[] OPERATION_NAMES = {
+            "countLaunch", "isShowRateDialog", "rate", "remind", "decline", "edit", "significantEvent",
+            "coldCountLaunch", "coldIsShowRateDialog", "flush"
+    };
+
+    /**
+     * Cold operations and flush read or write the storage, so they are measured once per this number of iterations.
+     */
+    private static final int BLOCKING_OPERATION_INTERVAL = 100;
+
+    private static final RatingCondition DEFAULT_CONDITION = new RatingCondition() {
+        @Override
+        public boolean isShowRateDialog(RatingState state, int appVersionCode, int previousAppVersionCode,
+                                        long currentTimeMillis) {
+            return state.getRateClickDate() == 0 && !state.isDoNotShowAgain();
+        }
+    };
+
+    private final RatingStateStorage mStorage;
+
+    private final RatingCondition mCondition;
+
+    private final int mIterations;
+
+    private final int mWarmupIterations;
+
+    private final long mBudgetNanos;
+
+    private final boolean mInitialized;
+
+    private StorageLatencyBenchmark(Builder builder) {
+        mStorage = builder.mStorage;
+        mCondition = builder.mCondition;
+        mIterations = builder.mIterations;
+        mWarmupIterations = builder.mWarmupIterations;
+        mBudgetNanos = TimeUnit.MILLISECONDS.toNanos(builder.mBudgetMillis);
+        mInitialized = builder.mInitialized;
+    }
+
+    /**
+     * Gets whether the operation is called on the main thread by the app, and is checked with the budget.
+     *
+     * @param operation One of OPERATION_ constants.
+     * @return true if the operation must not block.
+     */
+    public static boolean isMainThreadOperation(int operation) {
+        return operation != OPERATION_FLUSH;
+    }
+
+    private static boolean isBlockingOperation(int operation) {
+        return operation == OPERATION_COLD_COUNT_LAUNCH || operation == OPERATION_COLD_IS_SHOW_RATE_DIALOG
+                || operation == OPERATION_FLUSH;
+    }
+
+    /**
+     * Gets the name of the operation.
+     *
+     * @param operation One of OPERATION_ constants.
+     * @return Name
+     */
+    public static String getOperationName(int operation) {
+        return OPERATION_NAMES[operation];
+    }
+
+    /**
+     * Calls operations on this thread and measures them.
+     *
+     * @return Result of the benchmark.
+     */
+    public Result run() {
+        final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        try {
+            final RatingEngine engine = newEngine(executor);
+            engine.getRatingState();
+
+            for (int i = 0; i < mWarmupIterations; i++) {
+                iterate(engine, executor, i, null);
+            }
+            final Result result = new Result(mIterations, mBudgetNanos);
+            for (int i = 0; i < mIterations; i++) {
+                iterate(engine, executor, i, result);
+            }
+            engine.flush();
+            result.sort();
+            return result;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private RatingEngine newEngine(ScheduledExecutorService executor) {
+        return new RatingEngine.Builder()
+                .setStorage(mStorage)
+                .setVersionCodeProvider(new FixedVersionCodeProvider(1))
+                .setExecutor(executor)
+                .build();
+    }
+
+    /**
+     * Calls each operation once.
+     *
+     * @param result Result to record, or null not to record.
+     */
+    private void iterate(RatingEngine engine, ScheduledExecutorService executor, int iteration, Result result) {
+        long startNanos = System.nanoTime();
+        engine.countLaunch(mCondition);
+        startNanos = record(result, OPERATION_COUNT_LAUNCH, startNanos);
+
+        engine.isShowRateDialog(mCondition);
+        startNanos = record(result, OPERATION_IS_SHOW_RATE_DIALOG, startNanos);
+
+        engine.recordEvent(RatingEvent.TYPE_RATE);
+        startNanos = record(result, OPERATION_RATE, startNanos);
+
+        engine.recordEvent(RatingEvent.TYPE_REMIND);
+        startNanos = record(result, OPERATION_REMIND, startNanos);
+
+        engine.recordEvent(RatingEvent.TYPE_DECLINE);
+        startNanos = record(result, OPERATION_DECLINE, startNanos);
+
+        // Clear answers, so the condition is checked with values the app usually has.
+        engine.edit(new RatingStateEditor.Transaction() {
+            @Override
+            public void run(RatingStateEditor editor) {
+                editor.setRateClickDate(0);
+                editor.setDoNotShowAgain(false);
+            }
+        });
+        startNanos = record(result, OPERATION_EDIT, startNanos);
+
+        engine.userDidSignificantEvent();
+        record(result, OPERATION_SIGNIFICANT_EVENT, startNanos);
+
+        if (iteration % BLOCKING_OPERATION_INTERVAL == 0) {
+            final RatingEngine launchEngine = newColdEngine(executor);
+            startNanos = System.nanoTime();
+            launchEngine.countLaunch(mCondition);
+            record(result, OPERATION_COLD_COUNT_LAUNCH, startNanos);
+
+            final RatingEngine promptEngine = newColdEngine(executor);
+            startNanos = System.nanoTime();
+            promptEngine.isShowRateDialog(mCondition);
+            record(result, OPERATION_COLD_IS_SHOW_RATE_DIALOG, startNanos);
+
+            startNanos = System.nanoTime();
+            engine.flush();
+            record(result, OPERATION_FLUSH, startNanos);
+            launchEngine.flush();
+        }
+    }
+
+    /**
+     * Creates an engine which hasn't loaded values, or has loaded them in background if the benchmark is initialized.
+     */
+    private RatingEngine newColdEngine(ScheduledExecutorService executor) {
+        final RatingEngine engine = newEngine(executor);
+        if (mInitialized) {
+            engine.initialize();
+            // The executor runs tasks in order, so the load has finished when this is run.
+            try {
+                executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                    }
+                }).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return engine;
+    }
+
+    /**
+     * Records time from startNanos.
+     *
+     * @return Current time, which is the start of the next operation.
+     */
+    private static long record(Result result, int operation, long startNanos) {
+        final long endNanos = System.nanoTime();
+        if (result != null) {
+            result.add(operation, endNanos - startNanos);
+        }
+        return endNanos;
+    }
+
+    /**
+     * Result of the benchmark.
+     */
+    public static final class Result {
+
+        private final long[][] mDurations = new long[OPERATION_COUNT][];
+
+        private final int[] mCounts = new int[OPERATION_COUNT];
+
+        private final long mBudgetNanos;
+
+        Result(int iterations, long budgetNanos) {
+            for (int i = 0; i < OPERATION_COUNT; i++) {
+                mDurations[i] = new long[!isBlockingOperation(i)
+                        ? iterations : (iterations + BLOCKING_OPERATION_INTERVAL - 1) / BLOCKING_OPERATION_INTERVAL];
+            }
+            mBudgetNanos = budgetNanos;
+        }
+
+        void add(int operation, long durationNanos) {
+            mDurations[operation][mCounts[operation]++] = durationNanos;
+        }
+
+        void sort() {
+            for (int i = 0; i < OPERATION_COUNT; i++) {
+                Arrays.sort(mDurations[i], 0, mCounts[i]);
+            }
+        }
+
+        /**
+         * Gets how many times the operation is measured.
+         *
+         * @param operation One of OPERATION_ constants.
+         * @return Count of the operation.
+         */
+        public int getCount(int operation) {
+            return mCounts[operation];
+        }
+
+        /**
+         * Gets how long the operation blocks the calling thread.
+         *
+         * @param operation  One of OPERATION_ constants.
+         * @param percentile Percentile from 0 to 100, e.g. 99.9 for p999.
+         * @return Duration in nanoseconds, or -1 if the operation isn't measured.
+         */
+        public long getPercentileNanos(int operation, double percentile) {
+            final int count = mCounts[operation];
+            if (count == 0) {
+                return -1;
+            }
+            final int rank = (int) Math.ceil(count * percentile / 100.0);
+            return mDurations[operation][Math.min(count, Math.max(1, rank)) - 1];
+        }
+
+        /**
+         * Gets the longest time the operation blocks the calling thread.
+         *
+         * @param operation One of OPERATION_ constants.
+         * @return Duration in nanoseconds, or -1 if the operation isn't measured.
+         */
+        public long getMaxNanos(int operation) {
+            return getPercentileNanos(operation, 100);
+        }
+
+        /**
+         * Gets how many times the operation exceeds the budget.
+         *
+         * @param operation One of OPERATION_ constants.
+         * @return Count of calls over the budget.
+         */
+        public int getOverBudgetCount(int operation) {
+            final long[] durations = mDurations[operation];
+            int count = 0;
+            for (int i = mCounts[operation] - 1; i >= 0 && durations[i] > mBudgetNanos; i--) {
+                count++;
+            }
+            return count;
+        }
+
+        /**
+         * Gets whether no call of main thread operations exceeds the budget.
+         *
+         * @return true if all calls are within the budget.
+         */
+        public boolean isWithinBudget() {
+            for (int i = 0; i < OPERATION_COUNT; i++) {
+                if (isMainThreadOperation(i) && getOverBudgetCount(i) > 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder builder = new StringBuilder("Result{budget=")
+                    .append(mBudgetNanos / 1000).append("us, withinBudget=").append(isWithinBudget());
+            for (int i = 0; i < OPERATION_COUNT; i++) {
+                builder.append(", ").append(OPERATION_NAMES[i])
+                        .append("(p50/p99/p999/max)=").append(getPercentileNanos(i, 50) / 1000)
+                        .append("/").append(getPercentileNanos(i, 99) / 1000)
+                        .append("/").append(getPercentileNanos(i, 99.9) / 1000)
+                        .append("/").append(getMaxNanos(i) / 1000).append("us");
+                if (isMainThreadOperation(i)) {
+                    builder.append(" over=").append(getOverBudgetCount(i));
+                }
+            }
+            return builder.append("}").toString();
+        }
+
+    }
+
+    /**
+     * Builder of {@link StorageLatencyBenchmark}.
+     */
+    public static class Builder {
+
+        private final RatingStateStorage mStorage;
+
+        private RatingCondition mCondition = DEFAULT_CONDITION;
+
+        private int mIterations = 10000;
+
+        private int mWarmupIterations = 1000;
+
+        private long mBudgetMillis = 16;
+
+        private boolean mInitialized;
+
+        /**
+         * Constructor.
+         *
+         * @param storage Storage to measure, e.g. {@link FaultInjectingStorage}.
+         */
+        public Builder(RatingStateStorage storage) {
+            mStorage = storage;
+        }
+
+        /**
+         * Sets the condition which is checked. Default is to show if "Rate" and "No, Thanks" are not clicked.
+         *
+         * @param condition Showing rate dialog condition.
+         * @return This builder.
+         */
+        public Builder setCondition(RatingCondition condition) {
+            mCondition = condition;
+            return this;
+        }
+
+        /**
+         * Sets how many times each operation is measured. Default is 10000.
+         *
+         * @param iterations Number of iterations.
+         * @return This builder.
+         */
+        public Builder setIterations(int iterations) {
+            mIterations = iterations;
+            return this;
+        }
+
+        /**
+         * Sets how many times operations are called before measuring, to warm up the JIT compiler. Default is 1000.
+         *
+         * @param warmupIterations Number of iterations.
+         * @return This builder.
+         */
+        public Builder setWarmupIterations(int warmupIterations) {
+            mWarmupIterations = warmupIterations;
+            return this;
+        }
+
+        /**
+         * Sets the longest time which main thread operations may block. Default is 16, a frame at 60 fps.
+         *
+         * @param budgetMillis Time in milliseconds.
+         * @return This builder.
+         */
+        public Builder setBudgetMillis(long budgetMillis) {
+            mBudgetMillis = budgetMillis;
+            return this;
+        }
+
+        /**
+         * Sets whether new engines are initialized in background before the first call,
+         * like clients initialized by {@code RmpAppiraterInitProvider}. Default is false.
+         *
+         * @param initialized true to load values in background before cold operations.
+         * @return This builder.
+         */
+        public Builder setInitialized(boolean initialized) {
+            mInitialized = initialized;
+            return this;
+        }
+
+        /**
+         * Builds the benchmark.
+         *
+         * @return Benchmark
+         */
+        public StorageLatencyBenchmark build() {
+            if (mStorage == null || mCondition == null) {
+                throw new IllegalStateException("Storage and condition must be set.");
+            }
+            if (mIterations <= 0 || mWarmupIterations < 0 || mBudgetMillis < 0) {
+                throw new IllegalArgumentException("Invalid iterations or budget.");
+            }
+            return new StorageLatencyBenchmark(this);
+        }
+
+    }
+
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2015-2016 Recruit Marketing Partners Co.,Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package jp.co.recruit_mp.android.rmp_appirater;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that main thread operations don't wait for slow, stalling and failing writes.
+ */
+public class StorageLatencyBenchmarkTest {
+
+    private static final long BUDGET_MILLIS = 16;
+
+    @Test
+    public void mainThreadOperationsAreWithinBudgetWhileWritesStall() {
+        final FaultInjectingStorage storage = new FaultInjectingStorage.Builder(new InMemoryStorage())
+                .setWriteLatencyMillis(20)
+                .setStall(0.1, 200)
+                .setFailureProbability(0.05)
+                .build();
+        final StorageLatencyBenchmark.Result result = newBuilder(storage).setInitialized(true).build().run();
+
+        assertTrue(result.toString(), result.isWithinBudget());
+        assertTrue(storage.getWriteCount() > 0);
+    }
+
+    @Test
+    public void coldOperationsAreOverBudgetWhenReadsAreSlow() {
+        final FaultInjectingStorage storage = new FaultInjectingStorage.Builder(new InMemoryStorage())
+                .setReadLatencyMillis(BUDGET_MILLIS * 2)
+                .build();
+        final StorageLatencyBenchmark.Result result = newBuilder(storage).build().run();
+
+        // Synchronous appLaunched and tryToShowPrompt load values on the main thread at the first call.
+        assertFalse(result.isWithinBudget());
+        final int count = result.getCount(StorageLatencyBenchmark.OPERATION_COLD_COUNT_LAUNCH);
+        assertTrue(count > 0);
+        assertEquals(count, result.getOverBudgetCount(StorageLatencyBenchmark.OPERATION_COLD_COUNT_LAUNCH));
+        assertEquals(count, result.getOverBudgetCount(StorageLatencyBenchmark.OPERATION_COLD_IS_SHOW_RATE_DIALOG));
+        assertEquals(0, result.getOverBudgetCount(StorageLatencyBenchmark.OPERATION_COUNT_LAUNCH));
+    }
+
+    @Test
+    public void coldOperationsAreWithinBudgetWhenInitializedInBackground() {
+        final FaultInjectingStorage storage = new FaultInjectingStorage.Builder(new InMemoryStorage())
+                .setReadLatencyMillis(BUDGET_MILLIS * 2)
+                .build();
+        final StorageLatencyBenchmark.Result result = newBuilder(storage).setInitialized(true).build().run();
+
+        assertTrue(result.toString(), result.isWithinBudget());
+    }
+
+    @Test
+    public void sharedStorageStaysShared() {
+        final InMemoryStorage sharedStorage = InMemoryStorage.shared();
+        final FaultInjectingStorage storage = new FaultInjectingStorage.Builder(sharedStorage)
+                .setFailureProbability(0.5)
+                .build();
+        assertTrue(storage instanceof SharedRatingStateStorage);
+
+        final RatingEngine engine = new RatingEngine.Builder()
+                .setStorage(storage)
+                .setVersionCodeProvider(new FixedVersionCodeProvider(1))
+                .build();
+        final int launches = 100;
+        for (int i = 0; i < launches; i++) {
+            engine.countLaunch(NEVER_SHOWN);
+            engine.flush();
+        }
+        for (int i = 0; i < launches && sharedStorage.getSavedState().getAppLaunchCount() < launches; i++) {
+            engine.flush();
+        }
+
+        // Launches of failed writes are kept in the cached state, and written by the next write.
+        assertTrue(storage.getFailureCount() > 0);
+        assertEquals(launches, sharedStorage.getSavedState().getAppLaunchCount());
+        assertEquals(launches, engine.getRatingState().getAppLaunchCount());
+    }
+
+    private static final RatingCondition NEVER_SHOWN = new RatingCondition() {
+        @Override
+        public boolean isShowRateDialog(RatingState state, int appVersionCode, int previousAppVersionCode,
+                                        long currentTimeMillis) {
+            return false;
+        }
+    };
+
+    private static StorageLatencyBenchmark.Builder newBuilder(RatingStateStorage storage) {
+        return new StorageLatencyBenchmark.Builder(storage)
+                .setIterations(1000)
+                .setWarmupIterations(200)
+                .setBudgetMillis(BUDGET_MILLIS);
+    }
+
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2015-2016 Recruit Marketing Partners Co.,Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.recruit_mp.android.rmp_appirater;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class VersionHistoryTest {
+
+    private static final long NOW = 1500000000000L;
+
+    @Test
+    public void sameVersionCountsLaunchesWithoutChangingOtherValues() throws Exception {
+        final VersionHistory launched = VersionHistory.EMPTY.withLaunch(1, NOW)
+                .withOutcome(1, VersionHistory.OUTCOME_SHOWN);
+        final VersionHistory relaunched = launched.withLaunch(1, NOW + 1);
+
+        assertEquals(1, relaunched.size());
+        assertEquals(1, relaunched.getVersionCode(0));
+        assertEquals(2, relaunched.getLaunchCount(0));
+        assertEquals(NOW, relaunched.getFirstLaunchDate(0));
+        assertEquals(VersionHistory.OUTCOME_SHOWN, relaunched.getOutcomes(0));
+        // The history is immutable, though the arrays which don't change are shared.
+        assertEquals(1, launched.getLaunchCount(0));
+    }
+
+    @Test
+    public void newVersionIsAddedToHead() throws Exception {
+        final VersionHistory history = VersionHistory.EMPTY
+                .withLaunch(1, NOW)
+                .withLaunch(1, NOW + 1)
+                .withOutcome(1, VersionHistory.OUTCOME_DECLINED)
+                .withLaunch(2, NOW + 2);
+
+        assertEquals(2, history.size());
+        assertEquals(2, history.getVersionCode(0));
+        assertEquals(1, history.getLaunchCount(0));
+        assertEquals(NOW + 2, history.getFirstLaunchDate(0));
+        assertEquals(0, history.getOutcomes(0));
+        assertEquals(1, history.getVersionCode(1));
+        assertEquals(2, history.getLaunchCount(1));
+        assertEquals(VersionHistory.OUTCOME_DECLINED, history.getOutcomes(1));
+        assertEquals(2, history.getLaunchCountOf(1));
+        assertEquals(0, history.getLaunchCountOf(3));
+    }
+
+    @Test
+    public void launchOnNewVersionKeepsHistoryOfPreviousVersion() throws Exception {
+        RatingState state = RatingState.EMPTY;
+        state = new RatingEvent(RatingEvent.TYPE_LAUNCH, 1, NOW).applyTo(state);
+        state = new RatingEvent(RatingEvent.TYPE_LAUNCH, 1, NOW + 1).applyTo(state);
+        state = new RatingEvent(RatingEvent.TYPE_LAUNCH, 2, NOW + 2).applyTo(state);
+
+        assertEquals(3, state.getAppLaunchCount());
+        assertEquals(1, state.getAppThisVersionCodeLaunchCount());
+        final VersionHistory history = state.getVersionHistory();
+        assertEquals(2, history.getVersionCode(0));
+        assertEquals(1, history.getLaunchCount(0));
+        assertEquals(2, history.getLaunchCountOf(1));
+    }
+
+    @Test
+    public void olderVersionLaunchedAgainMovesToHead() throws Exception {
+        final VersionHistory history = VersionHistory.EMPTY
+                .withLaunch(1, NOW)
+                .withOutcome(1, VersionHistory.OUTCOME_REMINDED)
+                .withLaunch(2, NOW + 1)
+                .withLaunch(3, NOW + 2)
+                .withLaunch(1, NOW + 3);
+
+        assertEquals(3, history.size());
+        assertEquals(1, history.getVersionCode(0));
+        assertEquals(2, history.getLaunchCount(0));
+        assertEquals(NOW, history.getFirstLaunchDate(0));
+        assertEquals(VersionHistory.OUTCOME_REMINDED, history.getOutcomes(0));
+        assertEquals(3, history.getVersionCode(1));
+        assertEquals(2, history.getVersionCode(2));
+    }
+
+    @Test
+    public void versionLaunchedLeastRecentlyIsEvicted() throws Exception {
+        VersionHistory history = VersionHistory.EMPTY;
+        for (int versionCode = 1; versionCode <= VersionHistory.MAX_SIZE; versionCode++) {
+            history = history.withLaunch(versionCode, NOW + versionCode);
+        }
+        // Version 1 is launched again, so version 2 is launched least recently.
+        history = history.withLaunch(1, NOW + 100);
+        assertEquals(VersionHistory.MAX_SIZE, history.size());
+
+        history = history.withLaunch(VersionHistory.MAX_SIZE + 1, NOW + 101);
+
+        assertEquals(VersionHistory.MAX_SIZE, history.size());
+        assertEquals(VersionHistory.MAX_SIZE + 1, history.getVersionCode(0));
+        assertEquals(1, history.getVersionCode(1));
+        assertEquals(2, history.getLaunchCountOf(1));
+        assertEquals(-1, history.indexOf(2));
+        assertEquals(3, history.getVersionCode(VersionHistory.MAX_SIZE - 1));
+    }
+
+    @Test
+    public void outcomeIsAddedOnlyToLaunchedVersion() throws Exception {
+        final VersionHistory history = VersionHistory.EMPTY.withLaunch(1, NOW)
+                .withOutcome(1, VersionHistory.OUTCOME_SHOWN);
+
+        assertSame(history, history.withOutcome(1, VersionHistory.OUTCOME_SHOWN));
+        assertSame(history, history.withOutcome(2, VersionHistory.OUTCOME_RATED));
+        assertEquals(VersionHistory.OUTCOME_SHOWN | VersionHistory.OUTCOME_RATED,
+                history.withOutcome(1, VersionHistory.OUTCOME_RATED).getOutcomes(0));
+    }
+
+    @Test
+    public void encodedHistoryIsDecoded() throws Exception {
+        VersionHistory history = VersionHistory.EMPTY;
+        for (int versionCode = 1; versionCode <= VersionHistory.MAX_SIZE; versionCode++) {
+            history = history.withLaunch(versionCode, NOW + versionCode).withLaunch(versionCode, NOW);
+        }
+        history = history.withOutcome(3, VersionHistory.OUTCOME_SHOWN | VersionHistory.OUTCOME_DECLINED);
+
+        final VersionHistory decoded = VersionHistory.decode(history.encode());
+
+        assertEquals(history, decoded);
+        assertEquals(history.hashCode(), decoded.hashCode());
+        assertEquals(VersionHistory.EMPTY, VersionHistory.decode(VersionHistory.EMPTY.encode()));
+    }
+
+    @Test
+    public void invalidStringIsDecodedAsEmpty() throws Exception {
+        assertSame(VersionHistory.EMPTY, VersionHistory.decode(null));
+        assertSame(VersionHistory.EMPTY, VersionHistory.decode("1,2,3"));
+        assertSame(VersionHistory.EMPTY, VersionHistory.decode("1,2,x,0"));
+        // More versions than MAX_SIZE.
+        final StringBuilder tooMany = new StringBuilder("0,1,0,0");
+        for (int i = 1; i <= VersionHistory.MAX_SIZE; i++) {
+            tooMany.append(';').append(i).append(",1,0,0");
+        }
+        assertSame(VersionHistory.EMPTY, VersionHistory.decode(tooMany.toString()));
+    }
+
+    @Test
+    public void recentVersionsAreCheckedFromHead() throws Exception {
+        final VersionHistory history = VersionHistory.EMPTY
+                .withLaunch(1, NOW)
+                .withLaunch(2, NOW).withLaunch(2, NOW)
+                .withLaunch(3, NOW).withLaunch(3, NOW);
+
+        assertTrue(history.isLaunchedOnRecentVersions(2, 2));
+        assertFalse(history.isLaunchedOnRecentVersions(3, 2));
+        assertFalse(history.isLaunchedOnRecentVersions(4, 1));
+    }
+
+}
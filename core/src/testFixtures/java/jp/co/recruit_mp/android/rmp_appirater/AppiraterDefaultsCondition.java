@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2015-2016 Recruit Marketing Partners Co.,Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.recruit_mp.android.rmp_appirater;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hand-written condition which is the same as {@link RatingRules#appiraterDefaults()},
+ * as applications have written before RatingRules.
+ * <p/>
+ * This is compared with the compiled rules by the tests of core and by the benchmark module.
+ */
+public class AppiraterDefaultsCondition extends MillisShowRateDialogCondition {
+
+    private static final long MIN_LAUNCH_COUNT = 20;
+
+    private static final long MIN_MILLIS_SINCE_FIRST_LAUNCH = TimeUnit.DAYS.toMillis(30);
+
+    private static final long MIN_MILLIS_SINCE_REMINDER = TimeUnit.DAYS.toMillis(1);
+
+    @Override
+    public boolean isShowRateDialog(long appLaunchCount, long appThisVersionCodeLaunchCount,
+                                    long firstLaunchDate, int appVersionCode, int previousAppVersionCode,
+                                    long rateClickDate, long reminderClickDate, boolean doNotShowAgain) {
+        final long now = System.currentTimeMillis();
+        return rateClickDate == 0 && !doNotShowAgain
+                && appLaunchCount >= MIN_LAUNCH_COUNT
+                && firstLaunchDate != 0 && now - firstLaunchDate >= MIN_MILLIS_SINCE_FIRST_LAUNCH
+                && (reminderClickDate == 0 || now - reminderClickDate >= MIN_MILLIS_SINCE_REMINDER);
+    }
+
+}
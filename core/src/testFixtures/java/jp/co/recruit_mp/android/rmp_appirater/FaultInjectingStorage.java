@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2015-2016 Recruit Marketing Partners Co.,Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.recruit_mp.android.rmp_appirater;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link RatingStateStorage} which makes another storage slow and unreliable, like degraded flash memory.
+ * <p/>
+ * Each write waits for the fsync latency, sometimes stalls much longer, and sometimes fails.
+ * A failed write is dropped like a failed commit, and the next write saves the latest values.
+ * If the storage is {@link SharedRatingStateStorage}, the built storage is also shared,
+ * so events are still applied by {@link SharedRatingStateStorage#apply(List)} with the same faults.
+ * A failed apply returns null like a file which can't be locked, and the events are applied again later.
+ * <p/>
+ * Use this with {@code StorageLatencyBenchmark}, or set it to a client to try the app with slow storage.
+ * This is a test fixture, which is compiled into the tests of core and library, but not into the aar.
+ */
+public class FaultInjectingStorage implements RatingStateStorage {
+
+    private final RatingStateStorage mStorage;
+
+    private final long mReadLatencyMillis;
+
+    private final long mWriteLatencyMillis;
+
+    private final double mStallProbability;
+
+    private final long mStallMillis;
+
+    private final double mFailureProbability;
+
+    /**
+     * Guarded by itself.
+     */
+    private final Random mRandom;
+
+    private final AtomicLong mWriteCount = new AtomicLong();
+
+    private final AtomicLong mStallCount = new AtomicLong();
+
+    private final AtomicLong mFailureCount = new AtomicLong();
+
+    private FaultInjectingStorage(Builder builder) {
+        mStorage = builder.mStorage;
+        mReadLatencyMillis = builder.mReadLatencyMillis;
+        mWriteLatencyMillis = builder.mWriteLatencyMillis;
+        mStallProbability = builder.mStallProbability;
+        mStallMillis = builder.mStallMillis;
+        mFailureProbability = builder.mFailureProbability;
+        mRandom = new Random(builder.mSeed);
+    }
+
+    @Override
+    public RatingState load() {
+        sleep(mReadLatencyMillis);
+        return mStorage.load();
+    }
+
+    @Override
+    public void save(RatingState state, List<RatingEvent> events) {
+        if (write()) {
+            mStorage.save(state, events);
+        }
+    }
+
+    /**
+     * Waits for the write latency or a stall.
+     *
+     * @return false if the write fails.
+     */
+    boolean write() {
+        mWriteCount.incrementAndGet();
+        final double stall;
+        final double failure;
+        synchronized (mRandom) {
+            stall = mRandom.nextDouble();
+            failure = mRandom.nextDouble();
+        }
+
+        if (stall < mStallProbability) {
+            mStallCount.incrementAndGet();
+            sleep(mStallMillis);
+        } else {
+            sleep(mWriteLatencyMillis);
+        }
+        if (failure < mFailureProbability) {
+            mFailureCount.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Gets how many times values are written, including stalled and failed writes.
+     *
+     * @return Count of writes.
+     */
+    public long getWriteCount() {
+        return mWriteCount.get();
+    }
+
+    /**
+     * Gets how many writes are stalled.
+     *
+     * @return Count of stalls.
+     */
+    public long getStallCount() {
+        return mStallCount.get();
+    }
+
+    /**
+     * Gets how many writes are failed.
+     *
+     * @return Count of failures.
+     */
+    public long getFailureCount() {
+        return mFailureCount.get();
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * FaultInjectingStorage of {@link SharedRatingStateStorage}.
+     */
+    private static class Shared extends FaultInjectingStorage implements SharedRatingStateStorage {
+
+        private final SharedRatingStateStorage mSharedStorage;
+
+        Shared(Builder builder) {
+            super(builder);
+            mSharedStorage = (SharedRatingStateStorage) builder.mStorage;
+        }
+
+        @Override
+        public RatingState apply(List<RatingEvent> events) {
+            if (write()) {
+                return mSharedStorage.apply(events);
+            }
+            return null;
+        }
+
+    }
+
+    /**
+     * Builder of {@link FaultInjectingStorage}.
+     */
+    public static class Builder {
+
+        private final RatingStateStorage mStorage;
+
+        private long mReadLatencyMillis;
+
+        private long mWriteLatencyMillis;
+
+        private double mStallProbability;
+
+        private long mStallMillis;
+
+        private double mFailureProbability;
+
+        private long mSeed;
+
+        /**
+         * Constructor.
+         *
+         * @param storage Storage which actually keeps values.
+         */
+        public Builder(RatingStateStorage storage) {
+            mStorage = storage;
+        }
+
+        /**
+         * Sets time to load values. Default is 0.
+         *
+         * @param readLatencyMillis Time in milliseconds.
+         * @return This builder.
+         */
+        public Builder setReadLatencyMillis(long readLatencyMillis) {
+            mReadLatencyMillis = readLatencyMillis;
+            return this;
+        }
+
+        /**
+         * Sets time to write values, e.g. the time of fsync. Default is 0.
+         *
+         * @param writeLatencyMillis Time in milliseconds.
+         * @return This builder.
+         */
+        public Builder setWriteLatencyMillis(long writeLatencyMillis) {
+            mWriteLatencyMillis = writeLatencyMillis;
+            return this;
+        }
+
+        /**
+         * Sets how often and how long a write stalls instead of the usual latency. Default is never.
+         *
+         * @param stallProbability Probability from 0 to 1.
+         * @param stallMillis      Time in milliseconds.
+         * @return This builder.
+         */
+        public Builder setStall(double stallProbability, long stallMillis) {
+            mStallProbability = stallProbability;
+            mStallMillis = stallMillis;
+            return this;
+        }
+
+        /**
+         * Sets how often a write fails. Default is never.
+         *
+         * @param failureProbability Probability from 0 to 1.
+         * @return This builder.
+         */
+        public Builder setFailureProbability(double failureProbability) {
+            mFailureProbability = failureProbability;
+            return this;
+        }
+
+        /**
+         * Sets the seed of random numbers. Default is 0.
+         *
+         * @param seed Seed
+         * @return This builder.
+         */
+        public Builder setSeed(long seed) {
+            mSeed = seed;
+            return this;
+        }
+
+        /**
+         * Builds the storage.
+         *
+         * @return Storage, which implements {@link SharedRatingStateStorage} if the given storage implements it.
+         */
+        public FaultInjectingStorage build() {
+            if (mStorage == null) {
+                throw new IllegalStateException("Storage must be set.");
+            }
+            if (mReadLatencyMillis < 0 || mWriteLatencyMillis < 0 || mStallMillis < 0) {
+                throw new IllegalArgumentException("Invalid latency.");
+            }
+            if (mStorage instanceof SharedRatingStateStorage) {
+                return new Shared(this);
+            }
+            return new FaultInjectingStorage(this);
+        }
+
+    }
+
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2015-2016 Recruit Marketing Partners Co.,Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package jp.co.recruit_mp.android.rmp_appirater;
+
+import java.util.List;
+
+/**
+ * {@link RatingStateStorage} which keeps values in memory, to test and measure RMP-Appirater without files.
+ * <p/>
+ * Use {@link #shared()} to test the path of {@link SharedRatingStateStorage}.
+ * This is a test fixture, which is compiled into the tests of core and library, but not into the aar.
+ */
+public class InMemoryStorage implements RatingStateStorage {
+
+    /**
+     * Guarded by this.
+     */
+    private RatingState mState;
+
+    /**
+     * Guarded by this.
+     */
+    private int mWriteCount;
+
+    /**
+     * Constructor. Nothing is saved.
+     */
+    public InMemoryStorage() {
+        this(RatingState.EMPTY);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param state Saved state.
+     */
+    public InMemoryStorage(RatingState state) {
+        mState = state;
+    }
+
+    /**
+     * Creates a storage which is shared by processes, and applies events to the saved state.
+     *
+     * @return Storage which implements {@link SharedRatingStateStorage}.
+     */
+    public static InMemoryStorage shared() {
+        return new Shared();
+    }
+
+    @Override
+    public synchronized RatingState load() {
+        return mState;
+    }
+
+    @Override
+    public synchronized void save(RatingState state, List<RatingEvent> events) {
+        mState = state;
+        mWriteCount++;
+    }
+
+    /**
+     * Gets the saved state without counting as a load.
+     *
+     * @return Saved state.
+     */
+    public synchronized RatingState getSavedState() {
+        return mState;
+    }
+
+    /**
+     * Gets how many times values are written.
+     *
+     * @return Count of writes.
+     */
+    public synchronized int getWriteCount() {
+        return mWriteCount;
+    }
+
+    private static class Shared extends InMemoryStorage implements SharedRatingStateStorage {
+
+        @Override
+        public synchronized RatingState apply(List<RatingEvent> events) {
+            RatingState state = getSavedState();
+            if (events.isEmpty()) {
+                return state;
+            }
+            for (RatingEvent event : events) {
+                state = event.applyTo(state);
+            }
+            save(state, events);
+            return state;
+        }
+
+    }
+
+}
@@ -19,8 +19,7 @@ package jp.co.recruit_mp.android.rmp_appirater_demo;
 import android.support.v7.app.ActionBarActivity;
 import android.os.Bundle;
 
-import java.util.Date;
-
+import jp.co.recruit_mp.android.rmp_appirater.MillisShowRateDialogCondition;
 import jp.co.recruit_mp.android.rmp_appirater.RmpAppirater;
 
 public class MainActivity extends ActionBarActivity {
@@ -36,17 +35,17 @@ public class MainActivity extends ActionBarActivity {
         /*
         // You can custom dialog texts and a showing rating dialog condition.
         RmpAppirater.appLaunched(this,
-                new RmpAppirater.ShowRateDialogCondition() {
+                new MillisShowRateDialogCondition() {
                     @Override
                     public boolean isShowRateDialog(
                             long appLaunchCount, long appThisVersionCodeLaunchCount,
                             long firstLaunchDate, int appVersionCode,
-                            int previousAppVersionCode, Date rateClickDate,
-                            Date reminderClickDate, boolean doNotShowAgain) {
+                            int previousAppVersionCode, long rateClickDate,
+                            long reminderClickDate, boolean doNotShowAgain) {
                         // Show rating dialog if user isn't rating yet
                         // && don't select "Not show again"
                         // && launched app more than 5 times.
-                        return (rateClickDate == null && !doNotShowAgain && appLaunchCount >= 5);
+                        return (rateClickDate == 0 && !doNotShowAgain && appLaunchCount >= 5);
                     }
                 },
                 new RmpAppirater.Options(
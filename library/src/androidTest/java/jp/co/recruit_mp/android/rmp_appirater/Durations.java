@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2015-2016 Recruit Marketing Partners Co.,Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.recruit_mp.android.rmp_appirater;
+
+import android.util.Log;
+
+import java.util.Arrays;
+
+/**
+ * Reports durations measured by the instrumentation tests.
+ */
+final class Durations {
+
+    private Durations() {
+    }
+
+    /**
+     * Sorts the durations, and writes p50/p99/p999/max of them to the log.
+     *
+     * @param tag       Tag of the log.
+     * @param name      Name of the measured operation.
+     * @param durations Durations in nanoseconds, which are sorted.
+     */
+    static void report(String tag, String name, long[] durations) {
+        Arrays.sort(durations);
+        Log.i(tag, name + " (p50/p99/p999/max)=" + percentile(durations, 50) / 1000
+                + "/" + percentile(durations, 99) / 1000
+                + "/" + percentile(durations, 99.9) / 1000
+                + "/" + durations[durations.length - 1] / 1000 + "us");
+    }
+
+    static long percentile(long[] sortedDurations, double percentile) {
+        final int rank = (int) Math.ceil(sortedDurations.length * percentile / 100.0);
+        return sortedDurations[Math.min(sortedDurations.length, Math.max(1, rank)) - 1];
+    }
+
+}
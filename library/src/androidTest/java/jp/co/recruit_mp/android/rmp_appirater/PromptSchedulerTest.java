@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2015-2016 Recruit Marketing Partners Co.,Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.recruit_mp.android.rmp_appirater;
+
+import android.app.Activity;
+import android.app.DialogFragment;
+import android.app.Instrumentation;
+import android.content.Context;
+import android.os.Build;
+import android.test.ActivityInstrumentationTestCase2;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shows rating dialog deferred by appLaunchedDeferred at the triggers, and drops it after the expiry.
+ */
+public class PromptSchedulerTest extends ActivityInstrumentationTestCase2<LatencyTestActivity> {
+
+    private static final MillisShowRateDialogCondition ALWAYS = new MillisShowRateDialogCondition() {
+        @Override
+        public boolean isShowRateDialog(long appLaunchCount, long appThisVersionCodeLaunchCount,
+                                        long firstLaunchDate, int appVersionCode, int previousAppVersionCode,
+                                        long rateClickDate, long reminderClickDate, boolean doNotShowAgain) {
+            return true;
+        }
+    };
+
+    private Activity mActivity;
+
+    private RmpAppirater.Client mClient;
+
+    public PromptSchedulerTest() {
+        super(LatencyTestActivity.class);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mActivity = getActivity();
+        mClient = new RmpAppirater.Client.Builder(mActivity)
+                .setStorage(new InMemoryStorage())
+                .setVersionCodeProvider(new FixedVersionCodeProvider(1))
+                .build();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mClient.cancelPendingPrompt();
+            }
+        });
+        super.tearDown();
+    }
+
+    public void testIdleTriggerShowsOnActivity() throws Exception {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            // Rating dialog is shown without fragment.
+            return;
+        }
+        final RmpAppirater.Options options = new RmpAppirater.Options();
+        options.setPromptTrigger(RmpAppirater.Options.PROMPT_TRIGGER_IDLE);
+        options.setPromptDelayMillis(0);
+        appLaunchedDeferred(mActivity, options, null);
+
+        assertTrue(waitForRateDialog(true));
+        assertFalse(mClient.hasPendingPrompt());
+        cancelRateDialog();
+    }
+
+    public void testIdleTriggerShowsOnResumedActivity() throws Exception {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
+            // Resumed Activities aren't tracked.
+            return;
+        }
+        final RmpAppirater.Options options = new RmpAppirater.Options();
+        options.setPromptTrigger(RmpAppirater.Options.PROMPT_TRIGGER_IDLE);
+        options.setPromptDelayMillis(0);
+        // The Activity isn't known until it's resumed.
+        appLaunchedDeferred(mActivity.getApplicationContext(), options, null);
+        assertFalse(waitForRateDialog(false));
+        assertTrue(mClient.hasPendingPrompt());
+
+        final Instrumentation instrumentation = getInstrumentation();
+        instrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                instrumentation.callActivityOnPause(mActivity);
+                instrumentation.callActivityOnResume(mActivity);
+            }
+        });
+
+        assertTrue(waitForRateDialog(true));
+        assertFalse(mClient.hasPendingPrompt());
+        cancelRateDialog();
+    }
+
+    public void testExpiredPromptIsDropped() throws Exception {
+        final RmpAppirater.Options options = new RmpAppirater.Options();
+        options.setPromptTrigger(RmpAppirater.Options.PROMPT_TRIGGER_SIGNAL);
+        options.setPromptExpiryMillis(100);
+        final Listener listener = new Listener();
+        appLaunchedDeferred(mActivity, options, listener);
+
+        assertTrue(listener.mNotShown.await(10, TimeUnit.SECONDS));
+        assertFalse(mClient.hasPendingPrompt());
+        assertFalse(showPendingPrompt());
+    }
+
+    public void testListenerIsKeptUntilRateDialogIsClosed() throws Exception {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            // Rating dialog is shown without fragment.
+            return;
+        }
+        final RmpAppirater.Options options = new RmpAppirater.Options();
+        options.setPromptTrigger(RmpAppirater.Options.PROMPT_TRIGGER_SIGNAL);
+        final CountDownLatch completed = new CountDownLatch(1);
+        // Only the prompt refers to the listener.
+        appLaunchedDeferred(mActivity, options, new RmpAppirater.OnCompleteListener() {
+            @Override
+            public void onComplete() {
+                completed.countDown();
+            }
+
+            @Override
+            public void onNotShownDialog() {
+            }
+        });
+        for (int i = 0; i < 3; i++) {
+            Runtime.getRuntime().gc();
+        }
+
+        assertTrue(showPendingPrompt());
+        assertTrue(waitForRateDialog(true));
+        cancelRateDialog();
+        assertTrue(completed.await(10, TimeUnit.SECONDS));
+    }
+
+    public void testShowPendingPromptReturnsFalseIfAnotherRateDialogIsShown() throws Exception {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            // Rating dialog is shown without fragment.
+            return;
+        }
+        final RmpAppirater.Options options = new RmpAppirater.Options();
+        options.setPromptTrigger(RmpAppirater.Options.PROMPT_TRIGGER_SIGNAL);
+        final Listener listener = new Listener();
+        appLaunchedDeferred(mActivity, options, listener);
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mClient.tryToShowPrompt(mActivity, ALWAYS, null, null);
+            }
+        });
+        assertTrue(waitForRateDialog(true));
+
+        assertFalse(showPendingPrompt());
+        assertTrue(listener.mNotShown.await(10, TimeUnit.SECONDS));
+        assertFalse(mClient.hasPendingPrompt());
+        cancelRateDialog();
+    }
+
+    /**
+     * Counts the launch, and waits until the prompt is kept.
+     */
+    private void appLaunchedDeferred(final Context context, final RmpAppirater.Options options,
+                                     final RmpAppirater.OnCompleteListener listener) throws InterruptedException {
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mClient.appLaunchedDeferred(context, ALWAYS, options, listener);
+            }
+        });
+        final long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (!mClient.hasPendingPrompt() && System.currentTimeMillis() < deadline) {
+            getInstrumentation().waitForIdleSync();
+            Thread.sleep(10);
+        }
+    }
+
+    private boolean showPendingPrompt() {
+        final boolean[] shown = new boolean[1];
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                shown[0] = mClient.showPendingPrompt(mActivity);
+            }
+        });
+        return shown[0];
+    }
+
+    /**
+     * Waits for rating dialog for 10 seconds if it's expected, otherwise for a short time.
+     *
+     * @return true if rating dialog is shown.
+     */
+    private boolean waitForRateDialog(boolean expected) throws InterruptedException {
+        final Instrumentation instrumentation = getInstrumentation();
+        final boolean[] shown = new boolean[1];
+        final long deadline = System.currentTimeMillis() + (expected ? TimeUnit.SECONDS.toMillis(10) : 500);
+        while (!shown[0] && System.currentTimeMillis() < deadline) {
+            instrumentation.waitForIdleSync();
+            instrumentation.runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    shown[0] = mActivity.getFragmentManager()
+                            .findFragmentByTag(RateDialogFragment.FRAGMENT_TAG) != null;
+                }
+            });
+            if (!shown[0]) {
+                Thread.sleep(10);
+            }
+        }
+        return shown[0];
+    }
+
+    private void cancelRateDialog() {
+        final Instrumentation instrumentation = getInstrumentation();
+        instrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                final DialogFragment fragment = (DialogFragment) mActivity.getFragmentManager()
+                        .findFragmentByTag(RateDialogFragment.FRAGMENT_TAG);
+                fragment.getDialog().cancel();
+            }
+        });
+        instrumentation.waitForIdleSync();
+    }
+
+    private static class Listener implements RmpAppirater.OnCompleteListener {
+
+        final CountDownLatch mNotShown = new CountDownLatch(1);
+
+        @Override
+        public void onComplete() {
+        }
+
+        @Override
+        public void onNotShownDialog() {
+            mNotShown.countDown();
+        }
+
+    }
+
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2015-2016 Recruit Marketing Partners Co.,Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.recruit_mp.android.rmp_appirater;
+
+import android.app.Activity;
+import android.app.DialogFragment;
+import android.app.Instrumentation;
+import android.os.Build;
+import android.os.Bundle;
+import android.test.ActivityInstrumentationTestCase2;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shows rating dialog after the Activity has saved its state, e.g. when the app goes to the background
+ * while the launch is counted by appLaunchedAsync.
+ */
+public class RateDialogFragmentTest extends ActivityInstrumentationTestCase2<LatencyTestActivity> {
+
+    private static final MillisShowRateDialogCondition ALWAYS = new MillisShowRateDialogCondition() {
+        @Override
+        public boolean isShowRateDialog(long appLaunchCount, long appThisVersionCodeLaunchCount,
+                                        long firstLaunchDate, int appVersionCode, int previousAppVersionCode,
+                                        long rateClickDate, long reminderClickDate, boolean doNotShowAgain) {
+            return true;
+        }
+    };
+
+    private Activity mActivity;
+
+    private RmpAppirater.Client mClient;
+
+    public RateDialogFragmentTest() {
+        super(LatencyTestActivity.class);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mActivity = getActivity();
+        mClient = new RmpAppirater.Client.Builder(mActivity)
+                .setStorage(new InMemoryStorage())
+                .setVersionCodeProvider(new FixedVersionCodeProvider(1))
+                .build();
+    }
+
+    public void testShowAfterSaveInstanceState() throws Exception {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            // Rating dialog is shown without fragment.
+            return;
+        }
+        final Instrumentation instrumentation = getInstrumentation();
+        saveInstanceState();
+        instrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mClient.tryToShowPrompt(mActivity, ALWAYS, null, null);
+            }
+        });
+        instrumentation.waitForIdleSync();
+
+        assertRateDialogIsShown();
+        cancelRateDialog();
+    }
+
+    public void testAppLaunchedAsyncPostedAfterSaveInstanceState() throws Exception {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            // Rating dialog is shown without fragment.
+            return;
+        }
+        final Instrumentation instrumentation = getInstrumentation();
+        final CountDownLatch counted = new CountDownLatch(1);
+        // Block the main thread until the state is saved, so the result is posted after it.
+        instrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mClient.appLaunchedAsync(mActivity, new MillisShowRateDialogCondition() {
+                    @Override
+                    public boolean isShowRateDialog(long appLaunchCount, long appThisVersionCodeLaunchCount,
+                                                    long firstLaunchDate, int appVersionCode,
+                                                    int previousAppVersionCode, long rateClickDate,
+                                                    long reminderClickDate, boolean doNotShowAgain) {
+                        counted.countDown();
+                        return true;
+                    }
+                }, null, null);
+                instrumentation.callActivityOnSaveInstanceState(mActivity, new Bundle());
+                try {
+                    assertTrue(counted.await(10, TimeUnit.SECONDS));
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+            }
+        });
+        instrumentation.waitForIdleSync();
+
+        assertRateDialogIsShown();
+        cancelRateDialog();
+    }
+
+    private void saveInstanceState() {
+        final Instrumentation instrumentation = getInstrumentation();
+        instrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                instrumentation.callActivityOnSaveInstanceState(mActivity, new Bundle());
+            }
+        });
+    }
+
+    /**
+     * Waits for rating dialog, which may be posted from the background thread after the main thread becomes idle.
+     */
+    private void assertRateDialogIsShown() throws InterruptedException {
+        final Instrumentation instrumentation = getInstrumentation();
+        final boolean[] shown = new boolean[1];
+        final long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (!shown[0] && System.currentTimeMillis() < deadline) {
+            instrumentation.waitForIdleSync();
+            instrumentation.runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    shown[0] = mActivity.getFragmentManager()
+                            .findFragmentByTag(RateDialogFragment.FRAGMENT_TAG) != null;
+                }
+            });
+            if (!shown[0]) {
+                Thread.sleep(10);
+            }
+        }
+        assertTrue(shown[0]);
+    }
+
+    private void cancelRateDialog() {
+        final Instrumentation instrumentation = getInstrumentation();
+        instrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                final DialogFragment fragment = (DialogFragment) mActivity.getFragmentManager()
+                        .findFragmentByTag(RateDialogFragment.FRAGMENT_TAG);
+                fragment.getDialog().cancel();
+            }
+        });
+        instrumentation.waitForIdleSync();
+    }
+
+}
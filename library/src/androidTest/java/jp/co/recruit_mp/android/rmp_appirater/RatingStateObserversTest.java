@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2015-2016 Recruit Marketing Partners Co.,Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.recruit_mp.android.rmp_appirater;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.test.AndroidTestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delivers changes of the state to listeners on a handler thread.
+ */
+public class RatingStateObserversTest extends AndroidTestCase {
+
+    private static final int APP_VERSION_CODE = 1;
+
+    /**
+     * Shown after 2 launches unless the user has declined.
+     */
+    private static final MillisShowRateDialogCondition AFTER_TWO_LAUNCHES = new MillisShowRateDialogCondition() {
+        @Override
+        public boolean isShowRateDialog(long appLaunchCount, long appThisVersionCodeLaunchCount,
+                                        long firstLaunchDate, int appVersionCode, int previousAppVersionCode,
+                                        long rateClickDate, long reminderClickDate, boolean doNotShowAgain) {
+            return appLaunchCount >= 2 && !doNotShowAgain;
+        }
+    };
+
+    private HandlerThread mHandlerThread;
+
+    private Handler mHandler;
+
+    private RatingStateObservers mObservers;
+
+    private RecordingListener mListener;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mHandlerThread = new HandlerThread("RatingStateObserversTest");
+        mHandlerThread.start();
+        mHandler = new Handler(mHandlerThread.getLooper());
+        final RmpAppirater.Client client = new RmpAppirater.Client.Builder()
+                .setStorage(new InMemoryStorage())
+                .setVersionCodeProvider(new FixedVersionCodeProvider(APP_VERSION_CODE))
+                .build();
+        mObservers = new RatingStateObservers(client);
+        mListener = new RecordingListener();
+        mObservers.add(mListener, AFTER_TWO_LAUNCHES, mHandler);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mHandlerThread.quit();
+        super.tearDown();
+    }
+
+    public void testChangesBeforeDeliveryAreMerged() throws Exception {
+        final CountDownLatch blocked = blockHandler();
+        mObservers.onStateChanged(launched(0));
+        mObservers.onStateChanged(launched(1));
+        blocked.countDown();
+        waitForDelivery();
+
+        assertEquals(1, mListener.mStates.size());
+        assertEquals(launched(1), mListener.mStates.get(0));
+        // Checked first even if it's false.
+        assertEquals(1, mListener.mShowRateDialogs.size());
+        assertFalse(mListener.mShowRateDialogs.get(0));
+    }
+
+    public void testStateEqualToDeliveredOneIsDropped() throws Exception {
+        mObservers.onStateChanged(launched(1));
+        waitForDelivery();
+        // Equal values in another instance, e.g. written by another change.
+        mObservers.onStateChanged(launched(1));
+        waitForDelivery();
+
+        assertEquals(1, mListener.mStates.size());
+        assertEquals(1, mListener.mShowRateDialogs.size());
+    }
+
+    public void testShowRateDialogChangeIsDeliveredOnlyWhenItChanges() throws Exception {
+        mObservers.onStateChanged(launched(1));
+        waitForDelivery();
+        mObservers.onStateChanged(launched(2));
+        waitForDelivery();
+        mObservers.onStateChanged(launched(3));
+        waitForDelivery();
+        mObservers.onStateChanged(new RatingEvent(RatingEvent.TYPE_DECLINE, APP_VERSION_CODE, 3).applyTo(launched(3)));
+        waitForDelivery();
+
+        assertEquals(4, mListener.mStates.size());
+        assertEquals(3, mListener.mShowRateDialogs.size());
+        assertFalse(mListener.mShowRateDialogs.get(0));
+        assertTrue(mListener.mShowRateDialogs.get(1));
+        assertFalse(mListener.mShowRateDialogs.get(2));
+    }
+
+    public void testRemovedListenerReceivesNothing() throws Exception {
+        final CountDownLatch blocked = blockHandler();
+        mObservers.onStateChanged(launched(1));
+        mObservers.remove(mListener);
+        blocked.countDown();
+        waitForDelivery();
+        mObservers.onStateChanged(launched(2));
+        waitForDelivery();
+
+        assertTrue(mListener.mStates.isEmpty());
+        assertTrue(mListener.mShowRateDialogs.isEmpty());
+    }
+
+    public void testAddingListenerAgainReplacesIt() throws Exception {
+        mObservers.add(mListener, AFTER_TWO_LAUNCHES, mHandler);
+        mObservers.onStateChanged(launched(2));
+        waitForDelivery();
+
+        assertEquals(1, mListener.mStates.size());
+        assertEquals(1, mListener.mShowRateDialogs.size());
+        assertTrue(mListener.mShowRateDialogs.get(0));
+    }
+
+    private static RatingState launched(int launchCount) {
+        RatingState state = RatingState.EMPTY;
+        for (int i = 0; i < launchCount; i++) {
+            state = new RatingEvent(RatingEvent.TYPE_LAUNCH, APP_VERSION_CODE, i).applyTo(state);
+        }
+        return state;
+    }
+
+    /**
+     * Blocks the handler thread until the returned latch is counted down, so changes are offered before delivery.
+     */
+    private CountDownLatch blockHandler() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    blocked.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        return blocked;
+    }
+
+    /**
+     * Waits until the deliveries posted before are run.
+     */
+    private void waitForDelivery() throws InterruptedException {
+        final CountDownLatch delivered = new CountDownLatch(1);
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                delivered.countDown();
+            }
+        });
+        assertTrue(delivered.await(10, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Records deliveries, which are read after {@link #waitForDelivery()}.
+     */
+    private static class RecordingListener implements RmpAppirater.OnRatingStateChangeListener {
+
+        final List<RatingState> mStates = new ArrayList<RatingState>();
+
+        final List<Boolean> mShowRateDialogs = new ArrayList<Boolean>();
+
+        @Override
+        public void onRatingStateChanged(RatingState state) {
+            mStates.add(state);
+        }
+
+        @Override
+        public void onShowRateDialogChanged(boolean showRateDialog) {
+            mShowRateDialogs.add(showRateDialog);
+        }
+
+    }
+
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2015-2016 Recruit Marketing Partners Co.,Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.recruit_mp.android.rmp_appirater;
+
+import android.app.Activity;
+import android.app.DialogFragment;
+import android.app.Instrumentation;
+import android.os.Build;
+import android.test.ActivityInstrumentationTestCase2;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Requests rating dialog from many threads at once, and checks that only one dialog is shown.
+ * <p/>
+ * The other requests are told by onNotShownDialog, and every launch is counted once.
+ */
+public class RmpAppiraterConcurrencyTest extends ActivityInstrumentationTestCase2<LatencyTestActivity> {
+
+    private static final int THREAD_COUNT = 8;
+
+    private static final MillisShowRateDialogCondition ALWAYS = new MillisShowRateDialogCondition() {
+        @Override
+        public boolean isShowRateDialog(long appLaunchCount, long appThisVersionCodeLaunchCount,
+                                        long firstLaunchDate, int appVersionCode, int previousAppVersionCode,
+                                        long rateClickDate, long reminderClickDate, boolean doNotShowAgain) {
+            return true;
+        }
+    };
+
+    private Activity mActivity;
+
+    private RmpAppirater.Client mClient;
+
+    private final AtomicInteger mCompleteCount = new AtomicInteger();
+
+    private final AtomicInteger mNotShownCount = new AtomicInteger();
+
+    private CountDownLatch mNotShownLatch;
+
+    private final RmpAppirater.OnCompleteListener mListener = new RmpAppirater.OnCompleteListener() {
+        @Override
+        public void onComplete() {
+            mCompleteCount.incrementAndGet();
+        }
+
+        @Override
+        public void onNotShownDialog() {
+            mNotShownCount.incrementAndGet();
+            mNotShownLatch.countDown();
+        }
+    };
+
+    public RmpAppiraterConcurrencyTest() {
+        super(LatencyTestActivity.class);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mActivity = getActivity();
+        mClient = new RmpAppirater.Client.Builder(mActivity)
+                .setStorage(new InMemoryStorage())
+                .setVersionCodeProvider(new FixedVersionCodeProvider(1))
+                .build();
+    }
+
+    public void testConcurrentAppLaunchedAsyncShowsOneRateDialog() throws Exception {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            // The dialog is found by the fragment.
+            return;
+        }
+        mNotShownLatch = new CountDownLatch(THREAD_COUNT - 1);
+        final CountDownLatch start = new CountDownLatch(1);
+        final Thread[] threads = new Thread[THREAD_COUNT];
+        for (int i = 0; i < THREAD_COUNT; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    mClient.appLaunchedAsync(mActivity, ALWAYS, null, mListener);
+                }
+            });
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertTrue(mNotShownLatch.await(10, TimeUnit.SECONDS));
+        final Instrumentation instrumentation = getInstrumentation();
+        instrumentation.waitForIdleSync();
+        assertEquals(THREAD_COUNT - 1, mNotShownCount.get());
+        assertEquals(THREAD_COUNT, mClient.getRatingState().getAppLaunchCount());
+        assertEquals(0, mCompleteCount.get());
+
+        answerRateDialog();
+        assertEquals(1, mCompleteCount.get());
+        assertEquals(THREAD_COUNT - 1, mNotShownCount.get());
+    }
+
+    public void testTryToShowPromptFromActivitiesShowsOneRateDialog() throws Exception {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            // The dialog is found by the fragment.
+            return;
+        }
+        mNotShownLatch = new CountDownLatch(THREAD_COUNT - 1);
+        final Instrumentation instrumentation = getInstrumentation();
+        // Requests are posted together, like Activities which check the condition in onResume().
+        instrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < THREAD_COUNT; i++) {
+                    mActivity.getWindow().getDecorView().post(new Runnable() {
+                        @Override
+                        public void run() {
+                            mClient.tryToShowPrompt(mActivity, ALWAYS, null, mListener);
+                        }
+                    });
+                }
+            }
+        });
+        instrumentation.waitForIdleSync();
+
+        assertEquals(THREAD_COUNT - 1, mNotShownCount.get());
+        answerRateDialog();
+        assertEquals(1, mCompleteCount.get());
+
+        // The dialog can be shown again after it's answered.
+        mNotShownLatch = new CountDownLatch(0);
+        instrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mClient.tryToShowPrompt(mActivity, ALWAYS, null, mListener);
+            }
+        });
+        instrumentation.waitForIdleSync();
+        assertEquals(THREAD_COUNT - 1, mNotShownCount.get());
+        answerRateDialog();
+        assertEquals(2, mCompleteCount.get());
+    }
+
+    /**
+     * Answers the shown rating dialog with "Remind me later".
+     */
+    private void answerRateDialog() {
+        final Instrumentation instrumentation = getInstrumentation();
+        instrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                final DialogFragment fragment = (DialogFragment) mActivity.getFragmentManager()
+                        .findFragmentByTag(RateDialogFragment.FRAGMENT_TAG);
+                assertNotNull(fragment);
+                fragment.getDialog().cancel();
+            }
+        });
+        instrumentation.waitForIdleSync();
+    }
+
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2015-2016 Recruit Marketing Partners Co.,Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package jp.co.recruit_mp.android.rmp_appirater;
+
+import android.app.Activity;
+import android.app.DialogFragment;
+import android.app.Instrumentation;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Build;
+import android.test.ActivityInstrumentationTestCase2;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long the public API blocks the main thread while the storage is slow, stalls and fails.
+ * <p/>
+ * Unlike {@code StorageLatencyBenchmark} of core, this calls {@link RmpAppirater.Client} on the main thread,
+ * so showing rating dialog, the buttons of it and starting the store are measured too.
+ * p50/p99/p999/max of each call are written to the log.
+ */
+public class RmpAppiraterLatencyTest extends ActivityInstrumentationTestCase2<LatencyTestActivity> {
+    private static final String TAG = "RmpAppiraterLatency";
+
+    private static final long BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(16);
+
+    private static final int ITERATIONS = 200;
+
+    /**
+     * New clients register callbacks to the application, so fewer clients are created.
+     */
+    private static final int COLD_ITERATIONS = 20;
+
+    private static final MillisShowRateDialogCondition NEVER = new MillisShowRateDialogCondition() {
+        @Override
+        public boolean isShowRateDialog(long appLaunchCount, long appThisVersionCodeLaunchCount,
+                                        long firstLaunchDate, int appVersionCode, int previousAppVersionCode,
+                                        long rateClickDate, long reminderClickDate, boolean doNotShowAgain) {
+            return false;
+        }
+    };
+
+    private static final MillisShowRateDialogCondition ALWAYS = new MillisShowRateDialogCondition() {
+        @Override
+        public boolean isShowRateDialog(long appLaunchCount, long appThisVersionCodeLaunchCount,
+                                        long firstLaunchDate, int appVersionCode, int previousAppVersionCode,
+                                        long rateClickDate, long reminderClickDate, boolean doNotShowAgain) {
+            return true;
+        }
+    };
+
+    private Activity mActivity;
+
+    private FaultInjectingStorage mStorage;
+
+    private RmpAppirater.Client mClient;
+
+    public RmpAppiraterLatencyTest() {
+        super(LatencyTestActivity.class);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mActivity = getActivity();
+        mStorage = new FaultInjectingStorage.Builder(new InMemoryStorage())
+                .setReadLatencyMillis(50)
+                .setWriteLatencyMillis(20)
+                .setStall(0.01, 500)
+                .setFailureProbability(0.05)
+                .build();
+        mClient = newClient();
+        // Load values on this thread, like clients initialized in background.
+        mClient.getRatingState();
+    }
+
+    public void testAppLaunchedIsWithinBudget() {
+        final long[] durations = measure("appLaunched", ITERATIONS, new Runnable() {
+            @Override
+            public void run() {
+                mClient.appLaunched(mActivity, NEVER, null, null);
+            }
+        });
+        assertWithinBudget("appLaunched", durations);
+    }
+
+    public void testTryToShowPromptIsWithinBudget() {
+        final long[] durations = measure("tryToShowPrompt", ITERATIONS, new Runnable() {
+            @Override
+            public void run() {
+                mClient.tryToShowPrompt(mActivity, NEVER, null, null);
+            }
+        });
+        assertWithinBudget("tryToShowPrompt", durations);
+    }
+
+    public void testUserDidSignificantEventIsWithinBudget() {
+        final long[] durations = measure("userDidSignificantEvent", ITERATIONS, new Runnable() {
+            @Override
+            public void run() {
+                mClient.userDidSignificantEvent();
+            }
+        });
+        assertWithinBudget("userDidSignificantEvent", durations);
+    }
+
+    public void testShowingAndAnsweringRateDialogIsWithinBudget() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            // The dialog is found by the fragment.
+            return;
+        }
+        final long[] showDurations = new long[ITERATIONS];
+        final long[] answerDurations = new long[ITERATIONS];
+        final Instrumentation instrumentation = getInstrumentation();
+        for (int i = 0; i < ITERATIONS; i++) {
+            final int index = i;
+            instrumentation.runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    final long startNanos = System.nanoTime();
+                    mClient.appLaunched(mActivity, ALWAYS, null, null);
+                    showDurations[index] = System.nanoTime() - startNanos;
+                }
+            });
+            instrumentation.waitForIdleSync();
+            instrumentation.runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    final DialogFragment fragment = (DialogFragment) mActivity.getFragmentManager()
+                            .findFragmentByTag(RateDialogFragment.FRAGMENT_TAG);
+                    final long startNanos = System.nanoTime();
+                    // Canceling is answered as "Remind me later".
+                    fragment.getDialog().cancel();
+                    answerDurations[index] = System.nanoTime() - startNanos;
+                }
+            });
+            instrumentation.waitForIdleSync();
+        }
+        Durations.report(TAG, "showRateDialog", showDurations);
+        Durations.report(TAG, "remind", answerDurations);
+        assertWithinBudget("showRateDialog", showDurations);
+        assertWithinBudget("remind", answerDurations);
+    }
+
+    public void testRateAppIsWithinBudget() {
+        final IntentFilter filter = new IntentFilter(Intent.ACTION_VIEW);
+        filter.addDataScheme("market");
+        filter.addDataScheme("https");
+        // Block the store, so startActivity is measured without leaving the test.
+        final Instrumentation.ActivityMonitor monitor = getInstrumentation().addMonitor(filter, null, true);
+        try {
+            final long[] durations = measure("rateApp", ITERATIONS, new Runnable() {
+                @Override
+                public void run() {
+                    mClient.rateApp(mActivity);
+                }
+            });
+            assertEquals(ITERATIONS, monitor.getHits());
+            assertWithinBudget("rateApp", durations);
+        } finally {
+            getInstrumentation().removeMonitor(monitor);
+        }
+    }
+
+    public void testColdAppLaunchedAsyncIsWithinBudget() {
+        final long[] durations = measure("coldAppLaunchedAsync", COLD_ITERATIONS, new Runnable() {
+            @Override
+            public void run() {
+                newClient().appLaunchedAsync(mActivity, NEVER, null, null);
+            }
+        });
+        assertWithinBudget("coldAppLaunchedAsync", durations);
+    }
+
+    public void testColdAppLaunchedLoadsOnMainThread() {
+        // Synchronous appLaunched reads the storage at the first call in a process.
+        // Use appLaunchedAsync or RmpAppiraterInitProvider on slow storage.
+        final long[] durations = measure("coldAppLaunched", COLD_ITERATIONS, new Runnable() {
+            @Override
+            public void run() {
+                newClient().appLaunched(mActivity, NEVER, null, null);
+            }
+        });
+        assertTrue(durations[0] >= TimeUnit.MILLISECONDS.toNanos(50));
+    }
+
+    private RmpAppirater.Client newClient() {
+        return new RmpAppirater.Client.Builder(mActivity)
+                .setStorage(mStorage)
+                .setVersionCodeProvider(new FixedVersionCodeProvider(1))
+                .build();
+    }
+
+    /**
+     * Calls the operation on the main thread, and measures how long it blocks.
+     *
+     * @return Sorted durations in nanoseconds.
+     */
+    private long[] measure(String name, int iterations, final Runnable operation) {
+        final long[] durations = new long[iterations];
+        for (int i = 0; i < iterations; i++) {
+            final int index = i;
+            getInstrumentation().runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    final long startNanos = System.nanoTime();
+                    operation.run();
+                    durations[index] = System.nanoTime() - startNanos;
+                }
+            });
+        }
+        Durations.report(TAG, name, durations);
+        return durations;
+    }
+
+    private static void assertWithinBudget(String name, long[] sortedDurations) {
+        final long max = sortedDurations[sortedDurations.length - 1];
+        assertTrue(name + " blocked the main thread for " + max / 1000 + "us", max <= BUDGET_NANOS);
+    }
+
+}
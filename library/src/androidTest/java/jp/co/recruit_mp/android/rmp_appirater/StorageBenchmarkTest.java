@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2015-2016 Recruit Marketing Partners Co.,Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.recruit_mp.android.rmp_appirater;
+
+import android.content.Context;
+import android.test.AndroidTestCase;
+
+import java.io.File;
+
+/**
+ * Compares the cost of a launch which is counted and written, with each storage on the device.
+ * <p/>
+ * Each launch is written at once by {@link RatingEngine#flush()}, like a process which is killed soon after the launch.
+ * p50/p99/p999/max of each storage are written to the log.
+ * Compare them with {@code StorageBenchmark} of the benchmark module, which runs on the JVM.
+ */
+public class StorageBenchmarkTest extends AndroidTestCase {
+    private static final String TAG = "RmpAppiraterStorage";
+
+    private static final int ITERATIONS = 200;
+
+    private static final String PREFS_PACKAGE_NAME_SUFFIX = ".RmpAppirater";
+
+    private final RatingCondition mCondition = RatingRules.appiraterDefaults().build();
+
+    private File mDirectory;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDirectory = new File(getContext().getCacheDir(), "storage_benchmark");
+        deleteRecursively(mDirectory);
+        assertTrue(mDirectory.mkdirs());
+        clearSharedPreferences();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteRecursively(mDirectory);
+        clearSharedPreferences();
+        super.tearDown();
+    }
+
+    public void testSharedPreferencesStorage() {
+        measure("SharedPreferencesStorage", new SharedPreferencesStorage(getContext()));
+    }
+
+    public void testMappedFileStorage() {
+        measure("MappedFileStorage", new MappedFileStorage(new File(mDirectory, "rmp_appirater.bin"), null));
+    }
+
+    public void testEventLogStorage() {
+        measure("EventLogStorage", new EventLogStorage(new File(mDirectory, "rmp_appirater"), null));
+    }
+
+    /**
+     * Counts and writes launches, and checks that every launch is saved.
+     */
+    private void measure(String name, RatingStateStorage storage) {
+        final RatingEngine engine = newEngine(storage);
+        engine.getRatingState();
+        final long[] durations = new long[ITERATIONS];
+        for (int i = 0; i < ITERATIONS; i++) {
+            final long startNanos = System.nanoTime();
+            engine.countLaunch(mCondition);
+            engine.flush();
+            durations[i] = System.nanoTime() - startNanos;
+        }
+        Durations.report(TAG, name, durations);
+        assertEquals(ITERATIONS, storage.load().getAppLaunchCount());
+    }
+
+    private RatingEngine newEngine(RatingStateStorage storage) {
+        return new RatingEngine.Builder()
+                .setStorage(storage)
+                .setVersionCodeProvider(new FixedVersionCodeProvider(1))
+                .build();
+    }
+
+    private void clearSharedPreferences() {
+        getContext().getSharedPreferences(getContext().getPackageName() + PREFS_PACKAGE_NAME_SUFFIX,
+                Context.MODE_PRIVATE).edit().clear().commit();
+    }
+
+    private static void deleteRecursively(File file) {
+        final File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+
+}
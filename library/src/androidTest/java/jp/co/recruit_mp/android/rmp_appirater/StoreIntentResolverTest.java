@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2015-2016 Recruit Marketing Partners Co.,Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.recruit_mp.android.rmp_appirater;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.test.AndroidTestCase;
+import android.test.mock.MockPackageManager;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Resolves the store page with a PackageManager which opens only the given schemes.
+ */
+public class StoreIntentResolverTest extends AndroidTestCase {
+
+    private static final String PACKAGE_NAME = "com.example.app";
+
+    private static final String ALTERNATIVE_STORE_URI = "amzn://apps/android?p=%s";
+
+    private FakePackageManager mPackageManager;
+
+    private Context mContext;
+
+    private StoreIntentResolver mResolver;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPackageManager = new FakePackageManager();
+        mContext = new ContextWrapper(getContext()) {
+            @Override
+            public PackageManager getPackageManager() {
+                return mPackageManager;
+            }
+
+            @Override
+            public String getPackageName() {
+                return PACKAGE_NAME;
+            }
+        };
+        mResolver = new StoreIntentResolver(Collections.singletonList(ALTERNATIVE_STORE_URI));
+    }
+
+    public void testPlayStoreAppIsResolvedFirst() {
+        mPackageManager.setSchemes("market", "amzn", "https");
+
+        assertEquals("market://details?id=" + PACKAGE_NAME, resolve());
+    }
+
+    public void testAlternativeStoreIsResolvedWithoutPlayStoreApp() {
+        mPackageManager.setSchemes("amzn", "https");
+
+        assertEquals("amzn://apps/android?p=" + PACKAGE_NAME, resolve());
+    }
+
+    public void testWebPageIsResolvedWithoutStoreApps() {
+        mPackageManager.setSchemes("https");
+
+        assertEquals("https://play.google.com/store/apps/details?id=" + PACKAGE_NAME, resolve());
+    }
+
+    public void testResolvedIntentIsCached() {
+        mPackageManager.setSchemes("amzn", "https");
+        resolve();
+        final int resolveCount = mPackageManager.mResolveCount;
+
+        // Installing the Play Store app doesn't change the cached intent, and PackageManager isn't asked.
+        mPackageManager.setSchemes("market", "amzn", "https");
+        assertEquals("amzn://apps/android?p=" + PACKAGE_NAME, resolve());
+        mResolver.refresh(mContext);
+        assertEquals("amzn://apps/android?p=" + PACKAGE_NAME, resolve());
+        assertEquals(resolveCount, mPackageManager.mResolveCount);
+    }
+
+    public void testInvalidateResolvesAgain() {
+        mPackageManager.setSchemes("market", "https");
+        resolve();
+
+        // The Play Store app is uninstalled, and starting the intent has failed.
+        mPackageManager.setSchemes("https");
+        mResolver.invalidate();
+
+        assertEquals("https://play.google.com/store/apps/details?id=" + PACKAGE_NAME, resolve());
+    }
+
+    public void testFallbackIsCachedUntilRefresh() {
+        // Nothing can be opened, e.g. the browser is hidden by package visibility.
+        mPackageManager.setSchemes();
+        assertEquals("https://play.google.com/store/apps/details?id=" + PACKAGE_NAME, resolve());
+        final int resolveCount = mPackageManager.mResolveCount;
+
+        // Clicking "Rate" again doesn't ask PackageManager.
+        resolve();
+        mResolver.createIntent(mContext);
+        assertEquals(resolveCount, mPackageManager.mResolveCount);
+
+        // A store installed later is resolved when rating dialog is shown next.
+        mPackageManager.setSchemes("amzn");
+        mResolver.refresh(mContext);
+        assertEquals("amzn://apps/android?p=" + PACKAGE_NAME, resolve());
+    }
+
+    public void testCreateIntentAddsNewTaskFlagWithoutActivity() {
+        mPackageManager.setSchemes("market");
+
+        final Intent intent = mResolver.createIntent(mContext);
+
+        assertEquals(Intent.ACTION_VIEW, intent.getAction());
+        assertTrue((intent.getFlags() & Intent.FLAG_ACTIVITY_NEW_TASK) != 0);
+    }
+
+    private String resolve() {
+        return mResolver.resolve(mContext).getData().toString();
+    }
+
+    private static class FakePackageManager extends MockPackageManager {
+
+        private volatile Set<String> mSchemes = Collections.emptySet();
+
+        int mResolveCount;
+
+        void setSchemes(String... schemes) {
+            mSchemes = new HashSet<String>(Arrays.asList(schemes));
+        }
+
+        @Override
+        public ResolveInfo resolveActivity(Intent intent, int flags) {
+            mResolveCount++;
+            return mSchemes.contains(intent.getData().getScheme()) ? new ResolveInfo() : null;
+        }
+
+    }
+
+}
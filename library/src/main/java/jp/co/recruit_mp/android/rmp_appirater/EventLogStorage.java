@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2015-2016 Recruit Marketing Partners Co.,Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.recruit_mp.android.rmp_appirater;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+
+/**
+ * {@link RatingStateStorage} which appends events to a binary log file instead of rewriting all values.
+ * <p/>
+ * Saving an event is a sequential append of a small record. When the log grows, older events are compacted
+ * into a snapshot file, and recent events are kept in the log as history, see {@link #getEvents()}.
+ * A broken record at the end of the log, e.g. by a crash while writing, is dropped on loading.
+ * <p/>
+ * The values saved by {@link SharedPreferencesStorage} are migrated on the first load.
+ * The files are read and written by {@link RatingEventLog}.
+ */
+public class EventLogStorage extends RatingEventLog {
+    private static final String TAG = "RmpAppirater";
+
+    private static final String DIRECTORY_NAME = "rmp_appirater";
+
+    /**
+     * Constructor.
+     *
+     * @param context Context
+     */
+    public EventLogStorage(Context context) {
+        this(new File(context.getFilesDir(), DIRECTORY_NAME), new SharedPreferencesStorage(context));
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param directory       Directory to save files.
+     * @param migrationSource Storage to migrate values from on the first load, or null.
+     */
+    public EventLogStorage(File directory, RatingStateStorage migrationSource) {
+        super(directory, migrationSource);
+    }
+
+    @Override
+    protected void onWarning(String message, Throwable throwable) {
+        Log.w(TAG, message, throwable);
+    }
+
+}
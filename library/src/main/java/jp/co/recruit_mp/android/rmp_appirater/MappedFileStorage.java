@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2015-2016 Recruit Marketing Partners Co.,Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.recruit_mp.android.rmp_appirater;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+
+/**
+ * {@link RatingStateStorage} which saves the state to a small memory-mapped file in a fixed binary layout.
+ * <p/>
+ * Saving is an in-place write of a few fields instead of rewriting the whole XML file of SharedPreferences.
+ * The file is locked while it's written, and launch counts are added to the values saved by other processes,
+ * so this storage can be used by multiple processes of the application.
+ * Use only one instance for a file in a process.
+ * <p/>
+ * The values saved by {@link SharedPreferencesStorage} are migrated on the first load.
+ * The file is read and written by {@link RatingStateFile}.
+ */
+public class MappedFileStorage extends RatingStateFile {
+    private static final String TAG = "RmpAppirater";
+
+    private static final String FILE_NAME = "rmp_appirater.bin";
+
+    /**
+     * Constructor.
+     *
+     * @param context Context
+     */
+    public MappedFileStorage(Context context) {
+        this(new File(context.getFilesDir(), FILE_NAME), new SharedPreferencesStorage(context));
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param file            File to save the state.
+     * @param migrationSource Storage to migrate values from on the first load, or null.
+     */
+    public MappedFileStorage(File file, RatingStateStorage migrationSource) {
+        super(file, migrationSource);
+    }
+
+    @Override
+    protected void onWarning(String message, Throwable throwable) {
+        Log.w(TAG, message, throwable);
+    }
+
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2015-2016 Recruit Marketing Partners Co.,Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.recruit_mp.android.rmp_appirater;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.util.Log;
+
+/**
+ * {@link VersionCodeProvider} which asks PackageManager only the first time.
+ */
+public class PackageVersionCodeProvider implements VersionCodeProvider {
+    private static final String TAG = "RmpAppirater";
+
+    private final Context mContext;
+
+    private volatile boolean mResolved;
+
+    private volatile int mVersionCode;
+
+    /**
+     * Constructor.
+     *
+     * @param context Context
+     */
+    public PackageVersionCodeProvider(Context context) {
+        mContext = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+    }
+
+    @Override
+    public int getVersionCode() {
+        if (!mResolved) {
+            int versionCode = Integer.MIN_VALUE;
+            try {
+                versionCode = mContext.getPackageManager().getPackageInfo(mContext.getPackageName(), 0).versionCode;
+            } catch (PackageManager.NameNotFoundException e) {
+                Log.w(TAG, "Occurred PackageManager.NameNotFoundException", e);
+            }
+            mVersionCode = versionCode;
+            mResolved = true;
+        }
+        return mVersionCode;
+    }
+
+}
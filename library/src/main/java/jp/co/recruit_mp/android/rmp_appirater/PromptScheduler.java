@@ -0,0 +1,362 @@
+/*
+ * Copyright (C) 2015-2016 Recruit Marketing Partners Co.,Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.recruit_mp.android.rmp_appirater;
+
+import android.annotation.TargetApi;
+import android.app.Activity;
+import android.app.Application;
+import android.content.Context;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.view.View;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * Keeps rating dialog which is decided to be shown at launch, and shows it later.
+ * <p/>
+ * With {@link RmpAppirater.Options#PROMPT_TRIGGER_IDLE}, the dialog is shown when the main thread becomes idle
+ * after the Activity is drawn. With {@link RmpAppirater.Options#PROMPT_TRIGGER_SIGNAL}, it's shown only when
+ * the application tells a good moment. The dialog is kept across Activity transitions on API level 14 and higher,
+ * and it's dropped after the expiry.
+ * <p/>
+ * The listener is kept strongly while the prompt is waiting, so it's always told the result.
+ * It's released when the prompt is shown, dropped or canceled, so the Activity which has given it is kept
+ * until the expiry at most.
+ * <p/>
+ * All methods are called on the main thread.
+ */
+class PromptScheduler {
+
+    private final RmpAppirater.Client mClient;
+
+    private final Clock mClock;
+
+    /**
+     * Prompt which is waiting for a trigger, or null.
+     */
+    private PendingPrompt mPendingPrompt;
+
+    /**
+     * Activity which is resumed now, or null if it's unknown.
+     */
+    private WeakReference<Activity> mResumedActivity;
+
+    private boolean mActivityTrackerRegistered;
+
+    /**
+     * Application which the tracker is registered to, or null.
+     */
+    private Application mTrackedApplication;
+
+    /**
+     * Tracker which is registered, or null. It's an ActivityTracker, which is loaded only on API level 14 and higher.
+     */
+    private Object mActivityTracker;
+
+    PromptScheduler(RmpAppirater.Client client, Clock clock) {
+        mClient = client;
+        mClock = clock;
+    }
+
+    /**
+     * Keeps the prompt until a trigger, replacing the prompt which is kept already.
+     */
+    void schedule(Context context, RmpAppirater.Options options, RmpAppirater.OnCompleteListener onCompleteListener) {
+        final RmpAppirater.Options promptOptions = (options != null) ? options : new RmpAppirater.Options();
+        final PendingPrompt prompt = new PendingPrompt(promptOptions, onCompleteListener,
+                mClock.currentTimeMillis() + promptOptions.getPromptExpiryMillis());
+
+        final PendingPrompt oldPrompt = mPendingPrompt;
+        mPendingPrompt = prompt;
+        if (oldPrompt != null) {
+            drop(oldPrompt);
+        }
+
+        if (context instanceof Activity && getResumedActivity() == null) {
+            mResumedActivity = new WeakReference<Activity>((Activity) context);
+        }
+        registerActivityTracker(context);
+
+        // Drop the prompt after the expiry even if no trigger comes.
+        prompt.mExpiryRunnable = new Runnable() {
+            @Override
+            public void run() {
+                if (mPendingPrompt == prompt) {
+                    mPendingPrompt = null;
+                    drop(prompt);
+                }
+            }
+        };
+        RmpAppirater.MainHandlerHolder.HANDLER.postDelayed(prompt.mExpiryRunnable, promptOptions.getPromptExpiryMillis());
+
+        if (promptOptions.getPromptTrigger() == RmpAppirater.Options.PROMPT_TRIGGER_IDLE) {
+            requestIdleShow(getResumedActivity());
+        }
+    }
+
+    /**
+     * Shows the kept prompt on the Activity now.
+     *
+     * @return true if rating dialog is shown.
+     */
+    boolean show(Activity activity) {
+        final PendingPrompt prompt = mPendingPrompt;
+        if (prompt == null) {
+            return false;
+        }
+        if (mClock.currentTimeMillis() >= prompt.mExpiresAt) {
+            mPendingPrompt = null;
+            drop(prompt);
+            return false;
+        }
+        if (activity == null || activity.isFinishing()) {
+            // Keep it for the next Activity.
+            return false;
+        }
+
+        mPendingPrompt = null;
+        RmpAppirater.MainHandlerHolder.HANDLER.removeCallbacks(prompt.mExpiryRunnable);
+        // Refused if another rating dialog is shown. The listener is told it then.
+        return mClient.showRateDialog(activity, prompt.mOptions, null, prompt.takeOnCompleteListener());
+    }
+
+    /**
+     * Drops the kept prompt.
+     */
+    void cancel() {
+        final PendingPrompt prompt = mPendingPrompt;
+        if (prompt != null) {
+            mPendingPrompt = null;
+            drop(prompt);
+        }
+    }
+
+    /**
+     * Tells the listener that the prompt isn't shown, and removes the expiry callback which keeps the prompt.
+     */
+    private void drop(PendingPrompt prompt) {
+        if (prompt.mExpiryRunnable != null) {
+            RmpAppirater.MainHandlerHolder.HANDLER.removeCallbacks(prompt.mExpiryRunnable);
+        }
+        mClient.notifyNotShownDialog(prompt.takeOnCompleteListener());
+    }
+
+    boolean hasPendingPrompt() {
+        return mPendingPrompt != null;
+    }
+
+    /**
+     * Shows the prompt when the main thread becomes idle after the Activity is drawn and the delay.
+     */
+    private void requestIdleShow(Activity activity) {
+        final PendingPrompt prompt = mPendingPrompt;
+        if (prompt == null || activity == null || activity.getWindow() == null) {
+            return;
+        }
+
+        final MessageQueue.IdleHandler idleHandler = new MessageQueue.IdleHandler() {
+            @Override
+            public boolean queueIdle() {
+                if (mPendingPrompt == prompt) {
+                    show(getResumedActivity());
+                }
+                return false;
+            }
+        };
+
+        // Runnables posted to the decor view run after the first traversal of the Activity.
+        final View decorView = activity.getWindow().getDecorView();
+        decorView.post(new Runnable() {
+            @Override
+            public void run() {
+                RmpAppirater.MainHandlerHolder.HANDLER.postDelayed(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (mPendingPrompt == prompt) {
+                            Looper.myQueue().addIdleHandler(idleHandler);
+                        }
+                    }
+                }, prompt.mOptions.getPromptDelayMillis());
+            }
+        });
+    }
+
+    private Activity getResumedActivity() {
+        return (mResumedActivity != null) ? mResumedActivity.get() : null;
+    }
+
+    private void registerActivityTracker(Context context) {
+        if (mActivityTrackerRegistered || Build.VERSION.SDK_INT < Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
+            return;
+        }
+        final Context applicationContext = context.getApplicationContext();
+        if (applicationContext instanceof Application) {
+            mTrackedApplication = (Application) applicationContext;
+            mActivityTracker = ActivityTracker.register(mTrackedApplication, this);
+            mActivityTrackerRegistered = true;
+        }
+    }
+
+    /**
+     * Drops the kept prompt and stops tracking Activities, when the client is replaced.
+     * This can be called from any thread, and runs on the main thread.
+     */
+    void close() {
+        if (Looper.myLooper() != Looper.getMainLooper()) {
+            RmpAppirater.MainHandlerHolder.HANDLER.post(new Runnable() {
+                @Override
+                public void run() {
+                    close();
+                }
+            });
+            return;
+        }
+        cancel();
+        if (mActivityTracker != null) {
+            ActivityTracker.unregister(mTrackedApplication, mActivityTracker);
+            mActivityTracker = null;
+            mTrackedApplication = null;
+        }
+    }
+
+    void onActivityResumed(Activity activity) {
+        mResumedActivity = new WeakReference<Activity>(activity);
+        final PendingPrompt prompt = mPendingPrompt;
+        if (prompt != null && prompt.mOptions.getPromptTrigger() == RmpAppirater.Options.PROMPT_TRIGGER_IDLE) {
+            requestIdleShow(activity);
+        }
+    }
+
+    void onActivityPaused(Activity activity) {
+        if (getResumedActivity() == activity) {
+            mResumedActivity = null;
+        }
+    }
+
+    private static class PendingPrompt {
+
+        final RmpAppirater.Options mOptions;
+
+        /**
+         * Listener, or null if it's not given or taken.
+         */
+        private RmpAppirater.OnCompleteListener mOnCompleteListener;
+
+        final long mExpiresAt;
+
+        /**
+         * Runnable which drops this prompt after the expiry, or null until it's posted.
+         */
+        Runnable mExpiryRunnable;
+
+        PendingPrompt(RmpAppirater.Options options, RmpAppirater.OnCompleteListener onCompleteListener, long expiresAt) {
+            mOptions = options;
+            mOnCompleteListener = onCompleteListener;
+            mExpiresAt = expiresAt;
+        }
+
+        /**
+         * Gets the listener and releases it, because runnables of the trigger may keep this prompt a little longer.
+         *
+         * @return Listener, or null if it's not given or taken already.
+         */
+        RmpAppirater.OnCompleteListener takeOnCompleteListener() {
+            final RmpAppirater.OnCompleteListener onCompleteListener = mOnCompleteListener;
+            mOnCompleteListener = null;
+            return onCompleteListener;
+        }
+
+    }
+
+    /**
+     * Tells the resumed Activity to the scheduler. This class is loaded only on API level 14 and higher.
+     * <p/>
+     * This keeps the scheduler weakly, so the client which isn't used anymore can be collected,
+     * and unregisters itself after that.
+     */
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+    private static class ActivityTracker implements Application.ActivityLifecycleCallbacks {
+
+        private final WeakReference<PromptScheduler> mScheduler;
+
+        private ActivityTracker(PromptScheduler scheduler) {
+            mScheduler = new WeakReference<PromptScheduler>(scheduler);
+        }
+
+        static Object register(Application application, PromptScheduler scheduler) {
+            final ActivityTracker tracker = new ActivityTracker(scheduler);
+            application.registerActivityLifecycleCallbacks(tracker);
+            return tracker;
+        }
+
+        static void unregister(Application application, Object tracker) {
+            application.unregisterActivityLifecycleCallbacks((ActivityTracker) tracker);
+        }
+
+        @Override
+        public void onActivityResumed(Activity activity) {
+            final PromptScheduler scheduler = getScheduler(activity);
+            if (scheduler != null) {
+                scheduler.onActivityResumed(activity);
+            }
+        }
+
+        @Override
+        public void onActivityPaused(Activity activity) {
+            final PromptScheduler scheduler = getScheduler(activity);
+            if (scheduler != null) {
+                scheduler.onActivityPaused(activity);
+            }
+        }
+
+        /**
+         * Gets the scheduler, or unregisters this if it's collected.
+         */
+        private PromptScheduler getScheduler(Activity activity) {
+            final PromptScheduler scheduler = mScheduler.get();
+            if (scheduler == null) {
+                activity.getApplication().unregisterActivityLifecycleCallbacks(this);
+            }
+            return scheduler;
+        }
+
+        @Override
+        public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+        }
+
+        @Override
+        public void onActivityStarted(Activity activity) {
+        }
+
+        @Override
+        public void onActivityStopped(Activity activity) {
+        }
+
+        @Override
+        public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+        }
+
+        @Override
+        public void onActivityDestroyed(Activity activity) {
+        }
+
+    }
+
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2015-2016 Recruit Marketing Partners Co.,Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.recruit_mp.android.rmp_appirater;
+
+import android.annotation.SuppressLint;
+import android.app.AlertDialog;
+import android.content.Context;
+import android.content.DialogInterface;
+import android.view.View;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Rating dialog which is shown without fragment, e.g. on API level 10 or by a Context which isn't an Activity.
+ * <p/>
+ * This is loaded only when rating dialog is shown, so counting launches doesn't load dialog classes.
+ */
+class RateAlertDialog {
+
+    private RateAlertDialog() {
+    }
+
+    /**
+     * Shows rating dialog.
+     *
+     * @param context            Context which shows rating dialog.
+     * @param client             Client which records the answer.
+     * @param options            RMP-Appirater options, or null.
+     * @param content            Content prepared in background, or null to create it now.
+     * @param prompt             Rating dialog in flight, which is released when the dialog is dismissed.
+     * @param onCompleteListener Listener which be called after process of review dialog finished, or null.
+     */
+    @SuppressLint("NewApi")
+    static void show(final Context context, final RmpAppirater.Client client, RmpAppirater.Options options,
+                     RateDialogContent content, final RmpAppirater.InFlightPrompt prompt,
+                     final RmpAppirater.OnCompleteListener onCompleteListener) {
+        if (content == null) {
+            content = RateDialogContent.create(context, options);
+        }
+
+        // The answer is handled only once even if buttons are clicked repeatedly.
+        final AtomicBoolean answered = new AtomicBoolean();
+
+        final AlertDialog.Builder builder = new AlertDialog.Builder(context);
+
+        builder.setOnCancelListener(new DialogInterface.OnCancelListener() {
+            @Override
+            public void onCancel(DialogInterface dialog) {
+                if (!answered.compareAndSet(false, true)) {
+                    return;
+                }
+                client.remindApp();
+                if (onCompleteListener != null) {
+                    onCompleteListener.onComplete();
+                }
+            }
+        });
+
+        builder.setCancelable(true);
+        builder.setTitle(content.mTitle);
+        builder.setView(content.mLayout);
+
+        final AlertDialog dialog = builder.create();
+
+        dialog.setOnDismissListener(new DialogInterface.OnDismissListener() {
+            @Override
+            public void onDismiss(DialogInterface dialog) {
+                prompt.release();
+            }
+        });
+
+        content.mRateButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                if (!answered.compareAndSet(false, true)) {
+                    return;
+                }
+                client.rateApp(context);
+                dialog.dismiss();
+                if (onCompleteListener != null) {
+                    onCompleteListener.onComplete();
+                }
+            }
+        });
+
+        content.mRateLaterButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                if (!answered.compareAndSet(false, true)) {
+                    return;
+                }
+                client.remindApp();
+                dialog.dismiss();
+                if (onCompleteListener != null) {
+                    onCompleteListener.onComplete();
+                }
+            }
+        });
+
+        content.mRateCancelButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                if (!answered.compareAndSet(false, true)) {
+                    return;
+                }
+                client.cancelRateApp();
+                dialog.dismiss();
+                if (onCompleteListener != null) {
+                    onCompleteListener.onComplete();
+                }
+            }
+        });
+
+        prompt.setShown(dialog);
+        dialog.show();
+    }
+
+}
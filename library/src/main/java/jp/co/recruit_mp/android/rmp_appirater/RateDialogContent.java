@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2015-2016 Recruit Marketing Partners Co.,Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.recruit_mp.android.rmp_appirater;
+
+import android.content.Context;
+import android.text.TextUtils;
+import android.view.LayoutInflater;
+import android.widget.Button;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+
+/**
+ * Inflated views and resolved texts of rating dialog.
+ * <p/>
+ * This can be created on a background thread before rating dialog is shown,
+ * because the views are not attached to any window yet.
+ */
+class RateDialogContent {
+
+    /**
+     * Texts which are set to the views.
+     */
+    final RmpAppirater.Options mTexts;
+
+    final CharSequence mTitle;
+
+    final LinearLayout mLayout;
+
+    final Button mRateButton;
+
+    final Button mRateLaterButton;
+
+    final Button mRateCancelButton;
+
+    private RateDialogContent(RmpAppirater.Options texts, LinearLayout layout) {
+        mTexts = texts;
+        mTitle = texts.getDialogTitle();
+        mLayout = layout;
+        mRateButton = (Button) layout.findViewById(R.id.rate);
+        mRateLaterButton = (Button) layout.findViewById(R.id.rate_later);
+        mRateCancelButton = (Button) layout.findViewById(R.id.rate_cancel);
+    }
+
+    /**
+     * Inflates views and sets texts.
+     *
+     * @param context Context of the Activity which shows rating dialog.
+     * @param options RMP-Appirater options.
+     * @return Content of rating dialog.
+     */
+    static RateDialogContent create(Context context, RmpAppirater.Options options) {
+        final RmpAppirater.Options texts = resolveTexts(context, options);
+
+        LinearLayout layout = (LinearLayout) LayoutInflater.from(context).inflate(R.layout.rmp_appirater_dialog, null);
+        RateDialogContent content = new RateDialogContent(texts, layout);
+
+        TextView messageView = (TextView) layout.findViewById(R.id.message);
+        messageView.setText(texts.getDialogMessage());
+        content.mRateButton.setText(texts.getDialogRateButtonText());
+        content.mRateLaterButton.setText(texts.getDialogRateLaterButtonText());
+        content.mRateCancelButton.setText(texts.getDialogRateCancelButtonText());
+
+        return content;
+    }
+
+    /**
+     * Gets texts of rating dialog, which are given by options or default.
+     *
+     * @param context Context
+     * @param options RMP-Appirater options, or null.
+     * @return Options which have all texts.
+     */
+    static RmpAppirater.Options resolveTexts(Context context, RmpAppirater.Options options) {
+        final int applicationNameResId = context.getApplicationInfo().labelRes;
+        final String applicationName = context.getString(applicationNameResId);
+
+        final CharSequence title;
+        if (options != null && !TextUtils.isEmpty(options.getDialogTitle())) {
+            title = options.getDialogTitle();
+        } else {
+            title = context.getString(R.string.rmp_appirater_rate_title, applicationName);
+        }
+
+        final CharSequence message;
+        if (options != null && !TextUtils.isEmpty(options.getDialogMessage())) {
+            message = options.getDialogMessage();
+        } else {
+            message = context.getString(R.string.rmp_appirater_rate_message, applicationName);
+        }
+
+        final CharSequence rateButtonText;
+        if (options != null && !TextUtils.isEmpty(options.getDialogRateButtonText())) {
+            rateButtonText = options.getDialogRateButtonText();
+        } else {
+            rateButtonText = context.getString(R.string.rmp_appirater_rate, applicationName);
+        }
+
+        final CharSequence rateLaterButtonText;
+        if (options != null && !TextUtils.isEmpty(options.getDialogRateLaterButtonText())) {
+            rateLaterButtonText = options.getDialogRateLaterButtonText();
+        } else {
+            rateLaterButtonText = context.getString(R.string.rmp_appirater_rate_later, applicationName);
+        }
+
+        final CharSequence rateCancelButtonText;
+        if (options != null && !TextUtils.isEmpty(options.getDialogRateCancelButtonText())) {
+            rateCancelButtonText = options.getDialogRateCancelButtonText();
+        } else {
+            rateCancelButtonText = context.getString(R.string.rmp_appirater_rate_cancel, applicationName);
+        }
+
+        return new RmpAppirater.Options(title, message, rateButtonText, rateLaterButtonText, rateCancelButtonText);
+    }
+
+}
@@ -0,0 +1,290 @@
+/*
+ * Copyright (C) 2015-2016 Recruit Marketing Partners Co.,Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.recruit_mp.android.rmp_appirater;
+
+import android.annotation.TargetApi;
+import android.app.Activity;
+import android.app.AlertDialog;
+import android.app.Dialog;
+import android.app.DialogFragment;
+import android.content.DialogInterface;
+import android.os.Build;
+import android.os.Bundle;
+import android.view.View;
+
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Host of rating dialog which is recreated after configuration changes, e.g. rotation.
+ * <p/>
+ * The texts are saved in the arguments, so the dialog is rebuilt from them.
+ * Listeners are kept by the request which is removed when rating dialog is finished or the Activity is finished,
+ * and only weakly after the Activity is recreated, so this fragment doesn't keep the destroyed Activity.
+ * This is used by RMP-Appirater on API level 11 and higher.
+ */
+@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+public class RateDialogFragment extends DialogFragment {
+
+    static final String FRAGMENT_TAG = "RmpAppiraterRateDialog";
+
+    private static final String ARG_REQUEST_ID = "request_id";
+    private static final String ARG_TITLE = "title";
+    private static final String ARG_MESSAGE = "message";
+    private static final String ARG_RATE_BUTTON_TEXT = "rate_button_text";
+    private static final String ARG_RATE_LATER_BUTTON_TEXT = "rate_later_button_text";
+    private static final String ARG_RATE_CANCEL_BUTTON_TEXT = "rate_cancel_button_text";
+
+    /**
+     * Requests of rating dialogs which are shown. Accessed on the main thread.
+     */
+    private static final Map<Integer, Request> sRequests = new HashMap<Integer, Request>();
+
+    private static int sNextRequestId;
+
+    private boolean mAnswered;
+
+    /**
+     * Constructor. Use {@link #show} to show rating dialog.
+     */
+    public RateDialogFragment() {
+    }
+
+    /**
+     * Shows rating dialog on the Activity. Call this only on API level 11 and higher,
+     * because this class can't be loaded without DialogFragment.
+     * <p/>
+     * The fragment is added even after the Activity has saved its state, e.g. when rating dialog is posted
+     * by appLaunchedAsync while the app goes to the background, like the dialog without fragment is shown.
+     */
+    static void show(Activity activity, RmpAppirater.Client client, RmpAppirater.Options options,
+                     RateDialogContent preparedContent, RmpAppirater.InFlightPrompt prompt,
+                     RmpAppirater.OnCompleteListener onCompleteListener) {
+        // Texts of the prepared content are resolved in background already.
+        final RmpAppirater.Options texts = (preparedContent != null)
+                ? preparedContent.mTexts : RateDialogContent.resolveTexts(activity, options);
+        final int requestId = ++sNextRequestId;
+
+        final Bundle arguments = new Bundle();
+        arguments.putInt(ARG_REQUEST_ID, requestId);
+        arguments.putCharSequence(ARG_TITLE, texts.getDialogTitle());
+        arguments.putCharSequence(ARG_MESSAGE, texts.getDialogMessage());
+        arguments.putCharSequence(ARG_RATE_BUTTON_TEXT, texts.getDialogRateButtonText());
+        arguments.putCharSequence(ARG_RATE_LATER_BUTTON_TEXT, texts.getDialogRateLaterButtonText());
+        arguments.putCharSequence(ARG_RATE_CANCEL_BUTTON_TEXT, texts.getDialogRateCancelButtonText());
+
+        // Don't keep the Activity as the listener, because it's replaced by configuration changes.
+        // Other listeners are kept weakly after configuration changes, see Request#detachListener().
+        final boolean listenerIsActivity = (onCompleteListener == activity);
+        sRequests.put(requestId, new Request(client, listenerIsActivity ? null : onCompleteListener,
+                listenerIsActivity, prompt, preparedContent));
+
+        final RateDialogFragment fragment = new RateDialogFragment();
+        fragment.setArguments(arguments);
+        try {
+            // DialogFragment#show() throws IllegalStateException after onSaveInstanceState().
+            activity.getFragmentManager().beginTransaction()
+                    .add(fragment, FRAGMENT_TAG)
+                    .commitAllowingStateLoss();
+        } catch (RuntimeException e) {
+            sRequests.remove(requestId);
+            throw e;
+        }
+    }
+
+    @Override
+    public Dialog onCreateDialog(Bundle savedInstanceState) {
+        final Activity activity = getActivity();
+        final Request request = getRequest();
+        if (request.mPrompt != null) {
+            request.mPrompt.setContext(activity);
+        }
+
+        RateDialogContent content = request.mPreparedContent;
+        request.mPreparedContent = null;
+        if (content == null) {
+            final Bundle arguments = getArguments();
+            content = RateDialogContent.create(activity, new RmpAppirater.Options(
+                    arguments.getCharSequence(ARG_TITLE),
+                    arguments.getCharSequence(ARG_MESSAGE),
+                    arguments.getCharSequence(ARG_RATE_BUTTON_TEXT),
+                    arguments.getCharSequence(ARG_RATE_LATER_BUTTON_TEXT),
+                    arguments.getCharSequence(ARG_RATE_CANCEL_BUTTON_TEXT)));
+        }
+
+        content.mRateButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                answer(RatingEvent.TYPE_RATE);
+            }
+        });
+
+        content.mRateLaterButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                answer(RatingEvent.TYPE_REMIND);
+            }
+        });
+
+        content.mRateCancelButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                answer(RatingEvent.TYPE_DECLINE);
+            }
+        });
+
+        return new AlertDialog.Builder(activity)
+                .setTitle(content.mTitle)
+                .setView(content.mLayout)
+                .create();
+    }
+
+    @Override
+    public void onCancel(DialogInterface dialog) {
+        super.onCancel(dialog);
+        answer(RatingEvent.TYPE_REMIND);
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        final Activity activity = getActivity();
+        if (activity == null || !activity.isChangingConfigurations()) {
+            // Not recreated. Release the request which may keep the listener.
+            final Request request = sRequests.remove(getRequestId());
+            if (request != null && request.mPrompt != null) {
+                request.mPrompt.release();
+            }
+        } else {
+            // The listener may be an inner class of the destroyed Activity. Don't keep it until the answer.
+            final Request request = sRequests.get(getRequestId());
+            if (request != null) {
+                request.detachListener();
+            }
+        }
+    }
+
+    private void answer(int type) {
+        if (mAnswered) {
+            return;
+        }
+        mAnswered = true;
+
+        final Activity activity = getActivity();
+        final Request request = getRequest();
+        sRequests.remove(getRequestId());
+
+        switch (type) {
+            case RatingEvent.TYPE_RATE:
+                request.mClient.rateApp(activity);
+                break;
+            case RatingEvent.TYPE_DECLINE:
+                request.mClient.cancelRateApp();
+                break;
+            default:
+                request.mClient.remindApp();
+                break;
+        }
+
+        if (getDialog() != null && getDialog().isShowing()) {
+            dismissAllowingStateLoss();
+        }
+        if (request.mPrompt != null) {
+            request.mPrompt.release();
+        }
+
+        final RmpAppirater.OnCompleteListener onCompleteListener = request.mListenerIsActivity
+                ? (RmpAppirater.OnCompleteListener) activity : request.getOnCompleteListener();
+        if (onCompleteListener != null) {
+            onCompleteListener.onComplete();
+        }
+    }
+
+    private int getRequestId() {
+        return getArguments().getInt(ARG_REQUEST_ID);
+    }
+
+    /**
+     * Gets the request. If the process has been recreated, the default client is used without listener.
+     */
+    private Request getRequest() {
+        final int requestId = getRequestId();
+        Request request = sRequests.get(requestId);
+        if (request == null) {
+            request = new Request(RmpAppirater.getClient(getActivity()), null, false, null, null);
+            sRequests.put(requestId, request);
+        }
+        return request;
+    }
+
+    private static class Request {
+
+        final RmpAppirater.Client mClient;
+
+        /**
+         * Listener which is kept strongly until the Activity is recreated, or null.
+         */
+        private RmpAppirater.OnCompleteListener mOnCompleteListener;
+
+        /**
+         * Listener which is kept weakly after the Activity is recreated, or null.
+         */
+        private WeakReference<RmpAppirater.OnCompleteListener> mWeakOnCompleteListener;
+
+        /**
+         * Whether the listener is the Activity, which is got from this fragment.
+         */
+        final boolean mListenerIsActivity;
+
+        final RmpAppirater.InFlightPrompt mPrompt;
+
+        /**
+         * Content prepared in background, which is used only at the first time.
+         */
+        RateDialogContent mPreparedContent;
+
+        Request(RmpAppirater.Client client, RmpAppirater.OnCompleteListener onCompleteListener,
+                boolean listenerIsActivity, RmpAppirater.InFlightPrompt prompt, RateDialogContent preparedContent) {
+            mClient = client;
+            mOnCompleteListener = onCompleteListener;
+            mListenerIsActivity = listenerIsActivity;
+            mPrompt = prompt;
+            mPreparedContent = preparedContent;
+        }
+
+        /**
+         * Keeps the listener only weakly, because the Activity which has given it is destroyed.
+         * The listener is still called if the app keeps it, e.g. by a retained object.
+         */
+        void detachListener() {
+            if (mOnCompleteListener != null) {
+                mWeakOnCompleteListener = new WeakReference<RmpAppirater.OnCompleteListener>(mOnCompleteListener);
+                mOnCompleteListener = null;
+            }
+        }
+
+        RmpAppirater.OnCompleteListener getOnCompleteListener() {
+            if (mOnCompleteListener != null) {
+                return mOnCompleteListener;
+            }
+            return (mWeakOnCompleteListener != null) ? mWeakOnCompleteListener.get() : null;
+        }
+
+    }
+
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2015-2016 Recruit Marketing Partners Co.,Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.recruit_mp.android.rmp_appirater;
+
+import android.os.Handler;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Pushes changes of the state to {@link RmpAppirater.OnRatingStateChangeListener}s.
+ * <p/>
+ * Listeners are kept weakly, so a screen which forgets to remove its listener isn't leaked.
+ * Changes are delivered on the handler of each listener. Changes which happen before the delivery are merged
+ * into the latest state, and a state equal to the delivered one is dropped.
+ */
+class RatingStateObservers implements StateStore.OnStateChangedListener {
+
+    private final RmpAppirater.Client mClient;
+
+    private final CopyOnWriteArrayList<Subscription> mSubscriptions = new CopyOnWriteArrayList<Subscription>();
+
+    RatingStateObservers(RmpAppirater.Client client) {
+        mClient = client;
+    }
+
+    /**
+     * Adds the listener. The listener which is already added is replaced.
+     *
+     * @return Subscription of the listener.
+     */
+    Subscription add(RmpAppirater.OnRatingStateChangeListener listener,
+                     DateShowRateDialogCondition showRateDialogCondition, Handler handler) {
+        remove(listener);
+        final Subscription subscription = new Subscription(listener, showRateDialogCondition, handler);
+        mSubscriptions.add(subscription);
+        return subscription;
+    }
+
+    /**
+     * Removes the listener, and listeners which are already collected.
+     */
+    void remove(RmpAppirater.OnRatingStateChangeListener listener) {
+        for (Subscription subscription : mSubscriptions) {
+            final RmpAppirater.OnRatingStateChangeListener subscribedListener = subscription.mListener.get();
+            if (subscribedListener == null || subscribedListener == listener) {
+                mSubscriptions.remove(subscription);
+            }
+        }
+    }
+
+    @Override
+    public void onStateChanged(RatingState state) {
+        for (Subscription subscription : mSubscriptions) {
+            subscription.offer(state);
+        }
+    }
+
+    class Subscription implements Runnable {
+
+        final WeakReference<RmpAppirater.OnRatingStateChangeListener> mListener;
+
+        private final DateShowRateDialogCondition mShowRateDialogCondition;
+
+        private final Handler mHandler;
+
+        /**
+         * Latest state which is not delivered yet, or null if the delivery isn't posted.
+         */
+        private final AtomicReference<RatingState> mPendingState = new AtomicReference<RatingState>();
+
+        /**
+         * Accessed on the thread of the handler.
+         */
+        private RatingState mDeliveredState;
+
+        /**
+         * Accessed on the thread of the handler.
+         */
+        private boolean mShowRateDialog;
+
+        private Subscription(RmpAppirater.OnRatingStateChangeListener listener,
+                             DateShowRateDialogCondition showRateDialogCondition, Handler handler) {
+            mListener = new WeakReference<RmpAppirater.OnRatingStateChangeListener>(listener);
+            mShowRateDialogCondition = showRateDialogCondition;
+            mHandler = handler;
+        }
+
+        /**
+         * Delivers the state later. Only one delivery is posted at a time.
+         */
+        void offer(RatingState state) {
+            if (mPendingState.getAndSet(state) == null) {
+                mHandler.post(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            final RatingState state = mPendingState.getAndSet(null);
+            final RmpAppirater.OnRatingStateChangeListener listener = mListener.get();
+            if (listener == null) {
+                mSubscriptions.remove(this);
+                return;
+            }
+            if (!mSubscriptions.contains(this) || state == null || state.equals(mDeliveredState)) {
+                return;
+            }
+
+            final boolean firstDelivery = (mDeliveredState == null);
+            mDeliveredState = state;
+            listener.onRatingStateChanged(state);
+
+            final boolean showRateDialog = mClient.isShowRateDialog(mShowRateDialogCondition, state);
+            if (firstDelivery || showRateDialog != mShowRateDialog) {
+                mShowRateDialog = showRateDialog;
+                listener.onShowRateDialogChanged(showRateDialog);
+            }
+        }
+
+    }
+
+}
@@ -16,38 +16,72 @@
 
 package jp.co.recruit_mp.android.rmp_appirater;
 
-import android.annotation.SuppressLint;
-import android.app.AlertDialog;
+import android.annotation.TargetApi;
+import android.app.Activity;
+import android.app.Dialog;
 import android.content.ActivityNotFoundException;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
-import android.content.DialogInterface;
-import android.content.Intent;
-import android.content.SharedPreferences;
-import android.content.pm.PackageManager;
-import android.net.Uri;
-import android.text.TextUtils;
+import android.content.res.Configuration;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
 import android.util.Log;
-import android.view.LayoutInflater;
-import android.view.View;
-import android.widget.Button;
-import android.widget.LinearLayout;
-import android.widget.TextView;
 
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class RmpAppirater {
     private static final String TAG = "RmpAppirater";
 
-    // Pref keys
-    private static final String PREF_KEY_APP_LAUNCH_COUNT = "PREF_KEY_APP_LAUNCH_COUNT";
-    private static final String PREF_KEY_APP_THIS_VERSION_CODE_LAUNCH_COUNT = "PREF_KEY_APP_THIS_VERSION_CODE_LAUNCH_COUNT";
-    private static final String PREF_KEY_APP_FIRST_LAUNCHED_DATE = "PREF_KEY_APP_FIRST_LAUNCHED_DATE";
-    private static final String PREF_KEY_APP_VERSION_CODE = "PREF_KEY_APP_VERSION_CODE";
-    private static final String PREF_KEY_RATE_CLICK_DATE = "PREF_KEY_RATE_CLICK_DATE";
-    private static final String PREF_KEY_REMINDER_CLICK_DATE = "PREF_KEY_REMINDER_CLICK_DATE";
-    private static final String PREF_KEY_DO_NOT_SHOW_AGAIN = "PREF_KEY_DO_NOT_SHOW_AGAIN";
+    /**
+     * Default showing rate dialog condition.
+     * <p/>
+     * Show rating dialog if user isn't rating yet and don't select "Not show again".
+     */
+    public static final MillisShowRateDialogCondition DEFAULT_SHOW_RATE_DIALOG_CONDITION = new MillisShowRateDialogCondition() {
+        @Override
+        public boolean isShowRateDialog(long appLaunchCount, long appThisVersionCodeLaunchCount,
+                                        long firstLaunchDate, int appVersionCode, int previousAppVersionCode,
+                                        long rateClickDate, long reminderClickDate, boolean doNotShowAgain) {
+            return (rateClickDate == 0 && !doNotShowAgain);
+        }
+    };
+
+    /**
+     * Client used by static methods, or null until it's created.
+     */
+    private static volatile Client sClient;
+
+    private static RatingStateStorage sStorage;
+
+    private static VersionCodeProvider sVersionCodeProvider;
+
+    private static MetricsListener sMetricsListener;
+
+    /**
+     * Whether clients used by static methods are initialized by {@link #initialize(Context)}.
+     */
+    private static boolean sInitialized;
+
+    /**
+     * Launch of this process which is counted by a replaced client, or null. Guarded by RmpAppirater.class.
+     */
+    private static RatingEngine.ProcessLaunch sProcessLaunch;
 
-    private static final String PREFS_PACKAGE_NAME_SUFFIX = ".RmpAppirater";
+    /**
+     * Rating dialog which is requested or shown now, or null.
+     * Only one rating dialog is shown at a time, and other requests are notified with onNotShownDialog.
+     */
+    private static final AtomicReference<InFlightPrompt> sInFlightPrompt = new AtomicReference<InFlightPrompt>();
 
     /**
      * Tells RMP-Appirater that the app has launched.
@@ -68,10 +102,20 @@ public class RmpAppirater {
      * @param context                 Context
      * @param showRateDialogCondition Showing rate dialog condition.
      */
-    public static void appLaunched(Context context, ShowRateDialogCondition showRateDialogCondition) {
+    public static void appLaunched(Context context, DateShowRateDialogCondition showRateDialogCondition) {
         appLaunched(context, showRateDialogCondition, null, null);
     }
 
+    /**
+     * Same as {@link #appLaunched(Context, DateShowRateDialogCondition)}, kept for binary compatibility.
+     *
+     * @param context                 Context
+     * @param showRateDialogCondition Showing rate dialog condition.
+     */
+    public static void appLaunched(Context context, ShowRateDialogCondition showRateDialogCondition) {
+        appLaunched(context, (DateShowRateDialogCondition) showRateDialogCondition);
+    }
+
     /**
      * Tells RMP-Appirater that the app has launched.
      * <p/>
@@ -93,10 +137,21 @@ public class RmpAppirater {
      * @param showRateDialogCondition Showing rate dialog condition.
      * @param options                 RMP-Appirater options.
      */
-    public static void appLaunched(Context context, ShowRateDialogCondition showRateDialogCondition, Options options) {
+    public static void appLaunched(Context context, DateShowRateDialogCondition showRateDialogCondition, Options options) {
         appLaunched(context, showRateDialogCondition, options, null);
     }
 
+    /**
+     * Same as {@link #appLaunched(Context, DateShowRateDialogCondition, Options)}, kept for binary compatibility.
+     *
+     * @param context                 Context
+     * @param showRateDialogCondition Showing rate dialog condition.
+     * @param options                 RMP-Appirater options.
+     */
+    public static void appLaunched(Context context, ShowRateDialogCondition showRateDialogCondition, Options options) {
+        appLaunched(context, (DateShowRateDialogCondition) showRateDialogCondition, options);
+    }
+
     /**
      * Tells RMP-Appirater that the app has launched.
      * <p/>
@@ -107,79 +162,107 @@ public class RmpAppirater {
      * @param options                 RMP-Appirater options.
      * @param onCompleteListener      Listener which be called after process of review dialog finished.
      */
-    public static void appLaunched(Context context, ShowRateDialogCondition showRateDialogCondition, Options options, OnCompleteListener onCompleteListener) {
-        // Set default show rate dialog condition.
-        if (showRateDialogCondition == null) {
-            showRateDialogCondition = new ShowRateDialogCondition() {
-                @Override
-                public boolean isShowRateDialog(long appLaunchCount, long appThisVersionCodeLaunchCount,
-                                                long firstLaunchDate, int appVersionCode, int previousAppVersionCode,
-                                                Date rateClickDate, Date reminderClickDate, boolean doNotShowAgain) {
-                    // Show rating dialog if user isn't rating yet and don't select "Not show again".
-                    return (rateClickDate == null && !doNotShowAgain);
-                }
-            };
-        }
-
-        SharedPreferences prefs = getSharedPreferences(context);
-        SharedPreferences.Editor prefsEditor = prefs.edit();
+    public static void appLaunched(Context context, DateShowRateDialogCondition showRateDialogCondition, Options options, OnCompleteListener onCompleteListener) {
+        getClient(context).appLaunched(context, showRateDialogCondition, options, onCompleteListener);
+    }
 
-        // Load appThisVersionCodeLaunchCount
-        long appLaunchCount = prefs.getLong(PREF_KEY_APP_LAUNCH_COUNT, 0);
-        // Load appThisVersionCodeLaunchCount
-        long appThisVersionCodeLaunchCount = prefs.getLong(PREF_KEY_APP_THIS_VERSION_CODE_LAUNCH_COUNT, 0);
-        // Load firstLaunchDate
-        long firstLaunchDate = prefs.getLong(PREF_KEY_APP_FIRST_LAUNCHED_DATE, 0);
-        // Load appVersionCode and prefsAppVersionCode
-        int appVersionCode = Integer.MIN_VALUE;
-        final int previousAppVersionCode = prefs.getInt(PREF_KEY_APP_VERSION_CODE, Integer.MIN_VALUE);
-        try {
-            appVersionCode = context.getPackageManager().getPackageInfo(context.getPackageName(), 0).versionCode;
-            if (previousAppVersionCode != appVersionCode) {
-                // Reset appThisVersionCodeLaunchCount
-                appThisVersionCodeLaunchCount = 0;
-            }
-        } catch (PackageManager.NameNotFoundException e) {
-            Log.w(TAG, "Occurred PackageManager.NameNotFoundException", e);
-        }
-        // Load rateClickDate
-        final long rateClickDateMills = prefs.getLong(PREF_KEY_RATE_CLICK_DATE, 0);
-        final Date rateClickDate = (rateClickDateMills > 0) ? new Date(rateClickDateMills) : null;
-        // Load reminderClickDate
-        final long reminderClickDateMills = prefs.getLong(PREF_KEY_REMINDER_CLICK_DATE, 0);
-        final Date reminderClickDate = (reminderClickDateMills > 0) ? new Date(reminderClickDateMills) : null;
-        // Load doNotShowAgain
-        final boolean doNotShowAgain = prefs.getBoolean(PREF_KEY_DO_NOT_SHOW_AGAIN, false);
+    /**
+     * Same as {@link #appLaunched(Context, DateShowRateDialogCondition, Options, OnCompleteListener)},
+     * kept for binary compatibility.
+     *
+     * @param context                 Context
+     * @param showRateDialogCondition Showing rate dialog condition.
+     * @param options                 RMP-Appirater options.
+     * @param onCompleteListener      Listener which be called after process of review dialog finished.
+     */
+    public static void appLaunched(Context context, ShowRateDialogCondition showRateDialogCondition, Options options, OnCompleteListener onCompleteListener) {
+        appLaunched(context, (DateShowRateDialogCondition) showRateDialogCondition, options, onCompleteListener);
+    }
 
-        // Increment appLaunchCount
-        ++appLaunchCount;
-        prefsEditor.putLong(PREF_KEY_APP_LAUNCH_COUNT, appLaunchCount);
+    /**
+     * Tells RMP-Appirater that the app has launched, without blocking the calling thread.
+     * <p/>
+     * Show rating dialog if user isn't rating yet and don't select "Not show again".
+     *
+     * @param context Context
+     * @return Handle to cancel showing the rating dialog.
+     */
+    public static CancellationHandle appLaunchedAsync(Context context) {
+        return appLaunchedAsync(context, null, null, null);
+    }
 
-        // Increment appThisVersionCodeLaunchCount
-        ++appThisVersionCodeLaunchCount;
-        prefsEditor.putLong(PREF_KEY_APP_THIS_VERSION_CODE_LAUNCH_COUNT, appThisVersionCodeLaunchCount);
+    /**
+     * Tells RMP-Appirater that the app has launched, without blocking the calling thread.
+     * <p/>
+     * The launch is counted and saved on a background thread, and showRateDialogCondition is also called on it.
+     * After that, rating dialog is shown (or onCompleteListener is called) on the main thread.
+     * Nothing is shown when the returned handle has been canceled or the Activity is finishing.
+     *
+     * @param context                 Context
+     * @param showRateDialogCondition Showing rate dialog condition.
+     * @param options                 RMP-Appirater options.
+     * @param onCompleteListener      Listener which be called after process of review dialog finished.
+     * @return Handle to cancel showing the rating dialog.
+     */
+    public static CancellationHandle appLaunchedAsync(Context context, DateShowRateDialogCondition showRateDialogCondition,
+                                                      Options options, OnCompleteListener onCompleteListener) {
+        return getClient(context).appLaunchedAsync(context, showRateDialogCondition, options, onCompleteListener);
+    }
 
-        // Set app first launch date.
-        if (firstLaunchDate == 0) {
-            firstLaunchDate = System.currentTimeMillis();
-            prefsEditor.putLong(PREF_KEY_APP_FIRST_LAUNCHED_DATE, firstLaunchDate);
-        }
+    /**
+     * Tells RMP-Appirater that the app has launched, and shows rating dialog later.
+     * <p/>
+     * Show rating dialog if user isn't rating yet and don't select "Not show again".
+     *
+     * @param context Context
+     */
+    public static void appLaunchedDeferred(Context context) {
+        appLaunchedDeferred(context, null, null, null);
+    }
 
-        // Set app version code
-        if (appVersionCode != Integer.MIN_VALUE) {
-            prefsEditor.putInt(PREF_KEY_APP_VERSION_CODE, appVersionCode);
-        }
+    /**
+     * Tells RMP-Appirater that the app has launched, and shows rating dialog later.
+     * <p/>
+     * The launch is counted and showRateDialogCondition is checked on a background thread like appLaunchedAsync.
+     * If rating dialog should be shown, it's kept and shown at the trigger of {@link Options#getPromptTrigger()},
+     * so it doesn't slow down the startup. The dialog is kept across Activity transitions on API level 14 and higher,
+     * and dropped after {@link Options#getPromptExpiryMillis()}.
+     * <p/>
+     * The listener is kept strongly while rating dialog is waiting, and released when it's shown or dropped.
+     * If the listener refers to the Activity, the Activity is kept until then, up to the expiry.
+     * Call {@link #cancelPendingPrompt(Context)}, e.g. in onDestroy(), to release it earlier.
+     *
+     * @param context                 Context
+     * @param showRateDialogCondition Showing rate dialog condition.
+     * @param options                 RMP-Appirater options.
+     * @param onCompleteListener      Listener which be called after process of review dialog finished.
+     */
+    public static void appLaunchedDeferred(Context context, DateShowRateDialogCondition showRateDialogCondition,
+                                           Options options, OnCompleteListener onCompleteListener) {
+        getClient(context).appLaunchedDeferred(context, showRateDialogCondition, options, onCompleteListener);
+    }
 
-        prefsEditor.commit();
+    /**
+     * Shows rating dialog deferred by appLaunchedDeferred now, e.g. when the user has finished a task.
+     * <p/>
+     * Call this on the main thread.
+     *
+     * @param activity Activity which shows rating dialog.
+     * @return true if rating dialog is shown.
+     */
+    public static boolean showPendingPrompt(Activity activity) {
+        return getClient(activity).showPendingPrompt(activity);
+    }
 
-        if (showRateDialogCondition.isShowRateDialog(appLaunchCount, appThisVersionCodeLaunchCount, firstLaunchDate,
-                appVersionCode, previousAppVersionCode, rateClickDate, reminderClickDate, doNotShowAgain)) {
-            showRateDialog(context, options, onCompleteListener);
-        } else {
-            if (onCompleteListener != null) {
-                onCompleteListener.onNotShownDialog();
-            }
-        }
+    /**
+     * Drops rating dialog deferred by appLaunchedDeferred.
+     * <p/>
+     * Call this on the main thread.
+     *
+     * @param context Context
+     */
+    public static void cancelPendingPrompt(Context context) {
+        getClient(context).cancelPendingPrompt();
     }
 
     /**
@@ -214,57 +297,21 @@ public class RmpAppirater {
      * @param options                 RMP-Appirater options.
      * @param onCompleteListener      Listener which be called after process of review dialog finished.
      */
-    public static void tryToShowPrompt(Context context, ShowRateDialogCondition showRateDialogCondition, Options options, OnCompleteListener onCompleteListener) {
-        // Set default show rate dialog condition.
-        if (showRateDialogCondition == null) {
-            showRateDialogCondition = new ShowRateDialogCondition() {
-                @Override
-                public boolean isShowRateDialog(long appLaunchCount, long appThisVersionCodeLaunchCount,
-                                                long firstLaunchDate, int appVersionCode, int previousAppVersionCode,
-                                                Date rateClickDate, Date reminderClickDate, boolean doNotShowAgain) {
-                    // Show rating dialog if user isn't rating yet and don't select "Not show again".
-                    return (rateClickDate == null && !doNotShowAgain);
-                }
-            };
-        }
-
-        SharedPreferences prefs = getSharedPreferences(context);
+    public static void tryToShowPrompt(Context context, DateShowRateDialogCondition showRateDialogCondition, Options options, OnCompleteListener onCompleteListener) {
+        getClient(context).tryToShowPrompt(context, showRateDialogCondition, options, onCompleteListener);
+    }
 
-        // Load appThisVersionCodeLaunchCount
-        long appLaunchCount = prefs.getLong(PREF_KEY_APP_LAUNCH_COUNT, 0);
-        // Load appThisVersionCodeLaunchCount
-        long appThisVersionCodeLaunchCount = prefs.getLong(PREF_KEY_APP_THIS_VERSION_CODE_LAUNCH_COUNT, 0);
-        // Load firstLaunchDate
-        long firstLaunchDate = prefs.getLong(PREF_KEY_APP_FIRST_LAUNCHED_DATE, 0);
-        // Load appVersionCode and prefsAppVersionCode
-        int appVersionCode = Integer.MIN_VALUE;
-        final int previousAppVersionCode = prefs.getInt(PREF_KEY_APP_VERSION_CODE, Integer.MIN_VALUE);
-        try {
-            appVersionCode = context.getPackageManager().getPackageInfo(context.getPackageName(), 0).versionCode;
-            if (previousAppVersionCode != appVersionCode) {
-                // Reset appThisVersionCodeLaunchCount
-                appThisVersionCodeLaunchCount = 0;
-            }
-        } catch (PackageManager.NameNotFoundException e) {
-            Log.w(TAG, "Occurred PackageManager.NameNotFoundException", e);
-        }
-        // Load rateClickDate
-        final long rateClickDateMills = prefs.getLong(PREF_KEY_RATE_CLICK_DATE, 0);
-        final Date rateClickDate = (rateClickDateMills > 0) ? new Date(rateClickDateMills) : null;
-        // Load reminderClickDate
-        final long reminderClickDateMills = prefs.getLong(PREF_KEY_REMINDER_CLICK_DATE, 0);
-        final Date reminderClickDate = (reminderClickDateMills > 0) ? new Date(reminderClickDateMills) : null;
-        // Load doNotShowAgain
-        final boolean doNotShowAgain = prefs.getBoolean(PREF_KEY_DO_NOT_SHOW_AGAIN, false);
-
-        if (showRateDialogCondition.isShowRateDialog(appLaunchCount, appThisVersionCodeLaunchCount, firstLaunchDate,
-                appVersionCode, previousAppVersionCode, rateClickDate, reminderClickDate, doNotShowAgain)) {
-            showRateDialog(context, options, onCompleteListener);
-        } else {
-            if (onCompleteListener != null) {
-                onCompleteListener.onNotShownDialog();
-            }
-        }
+    /**
+     * Same as {@link #tryToShowPrompt(Context, DateShowRateDialogCondition, Options, OnCompleteListener)},
+     * kept for binary compatibility.
+     *
+     * @param context                 Context
+     * @param showRateDialogCondition Showing rate dialog condition.
+     * @param options                 RMP-Appirater options.
+     * @param onCompleteListener      Listener which be called after process of review dialog finished.
+     */
+    public static void tryToShowPrompt(Context context, ShowRateDialogCondition showRateDialogCondition, Options options, OnCompleteListener onCompleteListener) {
+        tryToShowPrompt(context, (DateShowRateDialogCondition) showRateDialogCondition, options, onCompleteListener);
     }
 
     /**
@@ -273,27 +320,58 @@ public class RmpAppirater {
      * @param context Context
      */
     public static void resetIfAppVersionChanged(Context context) {
-        SharedPreferences prefs = getSharedPreferences(context);
+        getClient(context).resetIfAppVersionChanged();
+    }
 
-        int appVersionCode = Integer.MIN_VALUE;
-        final int previousAppVersionCode = prefs.getInt(PREF_KEY_APP_VERSION_CODE, Integer.MIN_VALUE);
-        try {
-            appVersionCode = context.getPackageManager().getPackageInfo(context.getPackageName(), 0).versionCode;
-        } catch (PackageManager.NameNotFoundException e) {
-            Log.w(TAG, "Occurred PackageManager.NameNotFoundException", e);
-        }
+    /**
+     * Tells RMP-Appirater that the user did a significant event, e.g. completed a purchase or a search.
+     * <p/>
+     * This can be called frequently from any thread. Events are counted in memory and saved in batches.
+     *
+     * @param context Context
+     * @see RatingRules.Builder#minSignificantEventCount(long)
+     */
+    public static void userDidSignificantEvent(Context context) {
+        getClient(context).userDidSignificantEvent();
+    }
 
-        if (previousAppVersionCode != appVersionCode) {
-            SharedPreferences.Editor prefsEditor = prefs.edit();
-            prefsEditor.putLong(PREF_KEY_APP_LAUNCH_COUNT, 0);
-            prefsEditor.putLong(PREF_KEY_APP_THIS_VERSION_CODE_LAUNCH_COUNT, 0);
-            prefsEditor.putLong(PREF_KEY_APP_FIRST_LAUNCHED_DATE, 0);
-            prefsEditor.putInt(PREF_KEY_APP_VERSION_CODE, Integer.MIN_VALUE);
-            prefsEditor.putLong(PREF_KEY_RATE_CLICK_DATE, 0);
-            prefsEditor.putLong(PREF_KEY_REMINDER_CLICK_DATE, 0);
-            prefsEditor.putBoolean(PREF_KEY_DO_NOT_SHOW_AGAIN, false);
-            prefsEditor.commit();
-        }
+    /**
+     * Registers the listener which receives changes of values on the main thread.
+     * <p/>
+     * <b>The listener is kept only weakly.</b> A listener which nothing else refers to, e.g. an anonymous class
+     * created in this call, is collected and stops receiving changes without any error.
+     * Keep it while it's used, e.g. implement it by the Activity or keep it in a field, and remove it after that.
+     *
+     * @param context                 Context
+     * @param listener                Listener, which is kept weakly.
+     * @param showRateDialogCondition Showing rate dialog condition, or null to use default.
+     * @see Client#addOnRatingStateChangeListener(OnRatingStateChangeListener, DateShowRateDialogCondition, Handler)
+     */
+    public static void addOnRatingStateChangeListener(Context context, OnRatingStateChangeListener listener,
+                                                      DateShowRateDialogCondition showRateDialogCondition) {
+        getClient(context).addOnRatingStateChangeListener(listener, showRateDialogCondition, null);
+    }
+
+    /**
+     * Unregisters the listener.
+     *
+     * @param context  Context
+     * @param listener Listener
+     */
+    public static void removeOnRatingStateChangeListener(Context context, OnRatingStateChangeListener listener) {
+        getClient(context).removeOnRatingStateChangeListener(listener);
+    }
+
+    /**
+     * Changes saved values atomically.
+     *
+     * @param context     Context
+     * @param transaction Transaction which changes values.
+     * @return Values after the transaction.
+     * @see Client#edit(Transaction)
+     */
+    public static RatingState edit(Context context, Transaction transaction) {
+        return getClient(context).edit(transaction);
     }
 
     /**
@@ -305,12 +383,7 @@ public class RmpAppirater {
      * @param appLaunchCount Launch count of This application.
      */
     public static void setAppLaunchCount(Context context, long appLaunchCount) {
-        SharedPreferences prefs = getSharedPreferences(context);
-        SharedPreferences.Editor prefsEditor = prefs.edit();
-
-        prefsEditor.putLong(PREF_KEY_APP_LAUNCH_COUNT, appLaunchCount);
-
-        prefsEditor.commit();
+        getClient(context).setAppLaunchCount(appLaunchCount);
     }
 
     /**
@@ -322,12 +395,7 @@ public class RmpAppirater {
      * @param appThisVersionCodeLaunchCount Launch count of This application current version.
      */
     public static void setAppThisVersionCodeLaunchCount(Context context, long appThisVersionCodeLaunchCount) {
-        SharedPreferences prefs = getSharedPreferences(context);
-        SharedPreferences.Editor prefsEditor = prefs.edit();
-
-        prefsEditor.putLong(PREF_KEY_APP_LAUNCH_COUNT, appThisVersionCodeLaunchCount);
-
-        prefsEditor.commit();
+        getClient(context).setAppThisVersionCodeLaunchCount(appThisVersionCodeLaunchCount);
     }
 
     /**
@@ -339,12 +407,7 @@ public class RmpAppirater {
      * @param firstLaunchDate First launch date.
      */
     public static void setFirstLaunchDate(Context context, long firstLaunchDate) {
-        SharedPreferences prefs = getSharedPreferences(context);
-        SharedPreferences.Editor prefsEditor = prefs.edit();
-
-        prefsEditor.putLong(PREF_KEY_APP_FIRST_LAUNCHED_DATE, firstLaunchDate);
-
-        prefsEditor.commit();
+        getClient(context).setFirstLaunchDate(firstLaunchDate);
     }
 
     /**
@@ -356,14 +419,7 @@ public class RmpAppirater {
      * @param rateClickDate Date of "Rate" button clicked.
      */
     public static void setRateClickDate(Context context, Date rateClickDate) {
-        final long rateClickDateMills = ((rateClickDate != null) ? rateClickDate.getTime() : 0);
-
-        SharedPreferences prefs = getSharedPreferences(context);
-        SharedPreferences.Editor prefsEditor = prefs.edit();
-
-        prefsEditor.putLong(PREF_KEY_RATE_CLICK_DATE, rateClickDateMills);
-
-        prefsEditor.commit();
+        getClient(context).setRateClickDate(rateClickDate);
     }
 
     /**
@@ -375,14 +431,7 @@ public class RmpAppirater {
      * @param reminderClickDate Date of "Remind me later" button clicked.
      */
     public static void setReminderClickDate(Context context, Date reminderClickDate) {
-        final long reminderClickDateMills = ((reminderClickDate != null) ? reminderClickDate.getTime() : 0);
-
-        SharedPreferences prefs = getSharedPreferences(context);
-        SharedPreferences.Editor prefsEditor = prefs.edit();
-
-        prefsEditor.putLong(PREF_KEY_REMINDER_CLICK_DATE, reminderClickDateMills);
-
-        prefsEditor.commit();
+        getClient(context).setReminderClickDate(reminderClickDate);
     }
 
     /**
@@ -394,157 +443,1099 @@ public class RmpAppirater {
      * @param doNotShowAgain Clicked "No, Thanks" if true.
      */
     public static void setDoNotShowAgain(Context context, boolean doNotShowAgain) {
-        SharedPreferences prefs = getSharedPreferences(context);
-        SharedPreferences.Editor prefsEditor = prefs.edit();
-
-        prefsEditor.putBoolean(PREF_KEY_DO_NOT_SHOW_AGAIN, doNotShowAgain);
-
-        prefsEditor.commit();
+        getClient(context).setDoNotShowAgain(doNotShowAgain);
     }
 
-    private static SharedPreferences getSharedPreferences(Context context) {
-        return context.getSharedPreferences(context.getPackageName() + PREFS_PACKAGE_NAME_SUFFIX, Context.MODE_PRIVATE);
+    /**
+     * Writes changed values to storage immediately.
+     * <p/>
+     * Values are written on a background thread shortly after they are changed.
+     * Call this before the process may be killed, e.g. in a shutdown path.
+     *
+     * @param context Context
+     */
+    public static void flush(Context context) {
+        getClient(context).flush();
     }
 
-    @SuppressLint("NewApi")
-    private static void showRateDialog(final Context context, Options options, final OnCompleteListener onCompleteListener) {
-        final int applicationNameResId = context.getApplicationInfo().labelRes;
-        final String applicationName = context.getString(applicationNameResId);
-
-        final AlertDialog.Builder builder = new AlertDialog.Builder(context);
-
-        LinearLayout layout = (LinearLayout) LayoutInflater.from(context).inflate(R.layout.rmp_appirater_dialog, null);
-        TextView messageView = (TextView) layout.findViewById(R.id.message);
-        if (options != null && !TextUtils.isEmpty(options.getDialogMessage())) {
-            messageView.setText(options.getDialogMessage());
-        } else {
-            messageView.setText(context.getString(R.string.rmp_appirater_rate_message, applicationName));
-        }
+    /**
+     * Gets values saved by RMP-Appirater.
+     *
+     * @param context Context
+     * @return Current values.
+     */
+    public static RatingState getRatingState(Context context) {
+        return getClient(context).getRatingState();
+    }
 
-        Button rateButton = (Button) layout.findViewById(R.id.rate);
-        if (options != null && !TextUtils.isEmpty(options.getDialogRateButtonText())) {
-            rateButton.setText(options.getDialogRateButtonText());
-        } else {
-            rateButton.setText(context.getString(R.string.rmp_appirater_rate, applicationName));
+    /**
+     * Sets storage of values.
+     * <p/>
+     * By default, values are saved to SharedPreferences.
+     * Call this before other methods, e.g. in Application#onCreate().
+     *
+     * @param storage Storage, or null to use default.
+     */
+    public static void setStorage(RatingStateStorage storage) {
+        synchronized (RmpAppirater.class) {
+            sStorage = storage;
+            resetDefaultClient();
         }
+    }
 
-        Button rateLaterButton = (Button) layout.findViewById(R.id.rate_later);
-        if (options != null && !TextUtils.isEmpty(options.getDialogRateLaterButtonText())) {
-            rateLaterButton.setText(options.getDialogRateLaterButtonText());
-        } else {
-            rateLaterButton.setText(context.getString(R.string.rmp_appirater_rate_later, applicationName));
+    /**
+     * Sets listener which receives how long each operation takes and how many times events happen.
+     * <p/>
+     * Nothing is measured while no listener is set.
+     * Call this before other methods, e.g. in Application#onCreate().
+     *
+     * @param metricsListener Listener, or null to stop measuring.
+     */
+    public static void setMetricsListener(MetricsListener metricsListener) {
+        synchronized (RmpAppirater.class) {
+            sMetricsListener = metricsListener;
+            resetDefaultClient();
         }
+    }
 
-        Button rateCancelButton = (Button) layout.findViewById(R.id.rate_cancel);
-        if (options != null && !TextUtils.isEmpty(options.getDialogRateCancelButtonText())) {
-            rateCancelButton.setText(options.getDialogRateCancelButtonText());
-        } else {
-            rateCancelButton.setText(context.getString(R.string.rmp_appirater_rate_cancel, applicationName));
+    /**
+     * Sets provider of this application version code.
+     * <p/>
+     * By default, the version code is got from PackageManager once per process.
+     * Call this before other methods, e.g. with {@link FixedVersionCodeProvider} and BuildConfig.VERSION_CODE.
+     *
+     * @param versionCodeProvider Provider of this application version code, or null to use default.
+     */
+    public static void setVersionCodeProvider(VersionCodeProvider versionCodeProvider) {
+        synchronized (RmpAppirater.class) {
+            sVersionCodeProvider = versionCodeProvider;
+            resetDefaultClient();
         }
+    }
 
-        builder.setOnCancelListener(new DialogInterface.OnCancelListener() {
-            @Override
-            public void onCancel(DialogInterface dialog) {
-                remindApp(context);
-                if (onCompleteListener != null) {
-                    onCompleteListener.onComplete();
-                }
+    /**
+     * Sets client used by static methods.
+     * <p/>
+     * Call this before other methods, e.g. in Application#onCreate().
+     * Values set by {@link #setStorage}, {@link #setVersionCodeProvider} and {@link #setMetricsListener} are ignored.
+     *
+     * @param client Client, or null to use a client with default values.
+     */
+    public static void setClient(Client client) {
+        synchronized (RmpAppirater.class) {
+            if (sClient == client) {
+                return;
+            }
+            resetDefaultClient();
+            sClient = client;
+            if (client != null && sInitialized) {
+                client.initialize(sProcessLaunch);
             }
-        });
-
-        builder.setCancelable(true);
-        if (options != null && !TextUtils.isEmpty(options.getDialogTitle())) {
-            builder.setTitle(options.getDialogTitle());
-        } else {
-            builder.setTitle(context.getString(R.string.rmp_appirater_rate_title, applicationName));
         }
-        builder.setView(layout);
-
-        final AlertDialog dialog = builder.create();
+    }
 
-        rateButton.setOnClickListener(new View.OnClickListener() {
-            @Override
-            public void onClick(View v) {
-                rateApp(context);
-                dialog.dismiss();
-                if (onCompleteListener != null) {
-                    onCompleteListener.onComplete();
+    /**
+     * Gets client used by static methods.
+     *
+     * @param context Context
+     * @return Client which is set by {@link #setClient(Client)}, or created with default values.
+     */
+    public static Client getClient(Context context) {
+        Client client = sClient;
+        if (client == null) {
+            synchronized (RmpAppirater.class) {
+                client = sClient;
+                if (client == null) {
+                    client = new Client.Builder(context)
+                            .setStorage(sStorage)
+                            .setVersionCodeProvider(sVersionCodeProvider)
+                            .setMetricsListener(sMetricsListener)
+                            .build();
+                    if (sInitialized) {
+                        client.initialize(sProcessLaunch);
+                    }
+                    sClient = client;
                 }
             }
-        });
+        }
+        return client;
+    }
 
-        rateLaterButton.setOnClickListener(new View.OnClickListener() {
-            @Override
-            public void onClick(View v) {
-                remindApp(context);
-                dialog.dismiss();
-                if (onCompleteListener != null) {
-                    onCompleteListener.onComplete();
-                }
-            }
-        });
+    /**
+     * Counts the launch of this process and loads values on the background thread.
+     * <p/>
+     * After this, appLaunched doesn't count the launch again in this process, and only checks the condition.
+     * Clients set or created after this are also initialized.
+     * This is called by {@link RmpAppiraterInitProvider} if it's enabled.
+     *
+     * @param context Context
+     */
+    public static void initialize(Context context) {
+        synchronized (RmpAppirater.class) {
+            sInitialized = true;
+        }
+        getClient(context).initialize();
+    }
 
-        rateCancelButton.setOnClickListener(new View.OnClickListener() {
-            @Override
-            public void onClick(View v) {
-                cancelRateApp(context);
-                dialog.dismiss();
-                if (onCompleteListener != null) {
-                    onCompleteListener.onComplete();
-                }
+    /**
+     * Writes values of the current client, and makes the client be created again with the new values.
+     * <p/>
+     * If the current client is initialized, the launch of this process is handed over to the next client,
+     * so it's counted once even if the client is replaced before its initialization finishes.
+     * Called with the lock of RmpAppirater.class.
+     */
+    private static void resetDefaultClient() {
+        if (sClient != null) {
+            final RatingEngine.ProcessLaunch launch = sClient.retire();
+            if (launch != null) {
+                sProcessLaunch = launch;
             }
-        });
-
-        dialog.show();
+            sClient = null;
+        }
     }
 
-    private static void rateApp(Context context) {
+    private static RateDialogContent prepareRateDialogContent(Context context, Options options) {
         try {
-            context.startActivity(new Intent(Intent.ACTION_VIEW, Uri.parse("market://details?id=" + context.getPackageName())));
-        } catch (ActivityNotFoundException e) {
-            Log.w(TAG, "Occurred ActivityNotFoundException.", e);
+            return RateDialogContent.create(context, options);
+        } catch (RuntimeException e) {
+            // Some views can't be inflated on a background thread. Inflate it again on the main thread.
+            Log.w(TAG, "Failed to prepare rating dialog.", e);
+            return null;
         }
+    }
 
-        SharedPreferences.Editor prefsEditor = getSharedPreferences(context).edit();
-        prefsEditor.putLong(PREF_KEY_RATE_CLICK_DATE, System.currentTimeMillis());
-        prefsEditor.commit();
+    private static Context getApplicationContext(Context context) {
+        final Context applicationContext = context.getApplicationContext();
+        return (applicationContext != null) ? applicationContext : context;
     }
 
-    private static void remindApp(Context context) {
-        SharedPreferences.Editor prefsEditor = getSharedPreferences(context).edit();
-        prefsEditor.putLong(PREF_KEY_REMINDER_CLICK_DATE, System.currentTimeMillis());
-        prefsEditor.commit();
+    private static boolean isFinishing(Context context) {
+        return (context instanceof Activity) && ((Activity) context).isFinishing();
     }
 
-    private static void cancelRateApp(Context context) {
-        SharedPreferences.Editor prefsEditor = getSharedPreferences(context).edit();
-        prefsEditor.putBoolean(PREF_KEY_DO_NOT_SHOW_AGAIN, true);
-        prefsEditor.commit();
+    /**
+     * Makes the prompt in flight if no other prompt is in flight.
+     *
+     * @return true if the prompt is in flight.
+     */
+    private static boolean acquirePrompt(InFlightPrompt prompt) {
+        while (true) {
+            final InFlightPrompt current = sInFlightPrompt.get();
+            if (current != null && !current.isStale()) {
+                return false;
+            }
+            if (sInFlightPrompt.compareAndSet(current, prompt)) {
+                return true;
+            }
+        }
     }
 
     /**
-     * RMP-Appirater options.
+     * RMP-Appirater instance which holds the storage, version code provider, executor and metrics listener.
+     * <p/>
+     * Values are loaded once and kept in memory while the client is used, so build one per process.
+     * Static methods of RmpAppirater use the client which is set by {@link RmpAppirater#setClient(Client)},
+     * or a client created with default values.
+     * <p/>
+     * Values are counted and checked by {@link RatingEngine}, and this client shows rating dialog with it.
+     * Methods which don't take Context can be used without Android, e.g. in tests and benchmarks,
+     * with a storage and a version code provider which don't use Android.
      */
-    public static class Options {
+    public static class Client {
 
-        private CharSequence mDialogTitle;
+        private final RatingEngine mEngine;
 
-        private CharSequence mDialogMessage;
+        private final ScheduledExecutorService mExecutor;
 
-        private CharSequence mDialogRateButtonText;
+        private final Metrics mMetrics;
 
-        private CharSequence mDialogRateLaterButtonText;
+        private final PromptScheduler mPromptScheduler;
 
-        private CharSequence mDialogRateCancelButtonText;
+        private final StoreIntentResolver mStoreIntentResolver;
+
+        private final RatingStateObservers mObservers;
+
+        private Client(Builder builder) {
+            mEngine = new RatingEngine.Builder()
+                    .setStorage(builder.mStorage)
+                    .setVersionCodeProvider(builder.mVersionCodeProvider)
+                    .setExecutor(builder.mExecutor)
+                    .setMetricsListener(builder.mMetricsListener)
+                    .setClock(builder.mClock)
+                    .build();
+            mExecutor = mEngine.getExecutor();
+            mMetrics = mEngine.getMetrics();
+            mPromptScheduler = new PromptScheduler(this, mEngine.getClock());
+            mStoreIntentResolver = new StoreIntentResolver(builder.mAlternativeStoreUris);
+            mObservers = new RatingStateObservers(this);
+            mEngine.setOnStateChangedListener(mObservers);
+            if (builder.mContext != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
+                BackgroundFlusher.register(builder.mContext, this);
+            }
+        }
 
         /**
-         * Constructor.
+         * Tells RMP-Appirater that the app has launched, and shows rating dialog if showRateDialogCondition is met.
+         *
+         * @param context                 Context
+         * @param showRateDialogCondition Showing rate dialog condition, or null to use default.
+         * @param options                 RMP-Appirater options, or null.
+         * @param onCompleteListener      Listener which be called after process of review dialog finished, or null.
+         * @see RmpAppirater#appLaunched(Context, DateShowRateDialogCondition, Options, OnCompleteListener)
          */
-        public Options() {
+        public void appLaunched(Context context, DateShowRateDialogCondition showRateDialogCondition, Options options,
+                                OnCompleteListener onCompleteListener) {
+            if (countLaunch(showRateDialogCondition)) {
+                showRateDialog(context, options, null, onCompleteListener);
+            } else {
+                notifyNotShownDialog(onCompleteListener);
+            }
         }
 
         /**
-         * Constructor.
+         * Tells RMP-Appirater that the app has launched, without blocking the calling thread.
+         *
+         * @param context                 Context
+         * @param showRateDialogCondition Showing rate dialog condition, or null to use default.
+         * @param options                 RMP-Appirater options, or null.
+         * @param onCompleteListener      Listener which be called after process of review dialog finished, or null.
+         * @return Handle to cancel showing the rating dialog.
+         * @see RmpAppirater#appLaunchedAsync(Context, DateShowRateDialogCondition, Options, OnCompleteListener)
+         */
+        public CancellationHandle appLaunchedAsync(final Context context, final DateShowRateDialogCondition showRateDialogCondition,
+                                                   final Options options, final OnCompleteListener onCompleteListener) {
+            final CancellationHandle cancellationHandle = new CancellationHandle();
+
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    // Count the launch even if it's canceled, because the app has actually launched.
+                    final boolean isShowRateDialog = countLaunch(showRateDialogCondition);
+
+                    if (isShowRateDialog && options != null && options.isPrepareDialogInBackground()
+                            && !cancellationHandle.isCanceled()) {
+                        cancellationHandle.setPreparedContent(prepareRateDialogContent(context, options));
+                    }
+
+                    MainHandlerHolder.HANDLER.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            final RateDialogContent preparedContent = cancellationHandle.takePreparedContent();
+                            if (cancellationHandle.isCanceled() || isFinishing(context)) {
+                                return;
+                            }
+
+                            if (isShowRateDialog) {
+                                showRateDialog(context, options, preparedContent, onCompleteListener);
+                            } else {
+                                notifyNotShownDialog(onCompleteListener);
+                            }
+                        }
+                    });
+                }
+            });
+
+            return cancellationHandle;
+        }
+
+        /**
+         * Tells RMP-Appirater that the app has launched, and shows rating dialog later.
+         * The listener is kept strongly while rating dialog is waiting.
+         *
+         * @param context                 Context
+         * @param showRateDialogCondition Showing rate dialog condition, or null to use default.
+         * @param options                 RMP-Appirater options, or null.
+         * @param onCompleteListener      Listener which be called after process of review dialog finished, or null.
+         * @see RmpAppirater#appLaunchedDeferred(Context, DateShowRateDialogCondition, Options, OnCompleteListener)
+         */
+        public void appLaunchedDeferred(final Context context, final DateShowRateDialogCondition showRateDialogCondition,
+                                        final Options options, final OnCompleteListener onCompleteListener) {
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    final boolean isShowRateDialog = countLaunch(showRateDialogCondition);
+
+                    MainHandlerHolder.HANDLER.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (isShowRateDialog) {
+                                mPromptScheduler.schedule(context, options, onCompleteListener);
+                            } else {
+                                notifyNotShownDialog(onCompleteListener);
+                            }
+                        }
+                    });
+                }
+            });
+        }
+
+        /**
+         * Shows rating dialog deferred by appLaunchedDeferred now. Call this on the main thread.
+         *
+         * @param activity Activity which shows rating dialog.
+         * @return true if rating dialog is shown.
+         */
+        public boolean showPendingPrompt(Activity activity) {
+            return mPromptScheduler.show(activity);
+        }
+
+        /**
+         * Drops rating dialog deferred by appLaunchedDeferred. Call this on the main thread.
+         */
+        public void cancelPendingPrompt() {
+            mPromptScheduler.cancel();
+        }
+
+        /**
+         * Gets whether rating dialog deferred by appLaunchedDeferred is waiting. Call this on the main thread.
+         *
+         * @return true if rating dialog is waiting.
+         */
+        public boolean hasPendingPrompt() {
+            return mPromptScheduler.hasPendingPrompt();
+        }
+
+        /**
+         * Counts the launch and checks showRateDialogCondition, without showing rating dialog.
+         *
+         * @param showRateDialogCondition Showing rate dialog condition, or null to use default.
+         * @return true if rating dialog should be shown.
+         */
+        public boolean countLaunch(DateShowRateDialogCondition showRateDialogCondition) {
+            return mEngine.countLaunch(toRatingCondition(showRateDialogCondition));
+        }
+
+        /**
+         * Counts the launch of this process and loads values on the background thread.
+         * <p/>
+         * After this, appLaunched doesn't count the launch again in this process, e.g. when the Activity is recreated,
+         * and only checks the condition with values in memory. This is called by {@link RmpAppiraterInitProvider}.
+         */
+        public void initialize() {
+            mEngine.initialize();
+        }
+
+        /**
+         * Initializes this client, taking over the launch counted by the client replaced by this.
+         *
+         * @param launch Launch counted by the replaced client, or null to count it by this client.
+         */
+        void initialize(RatingEngine.ProcessLaunch launch) {
+            mEngine.initialize(launch);
+        }
+
+        /**
+         * Stops this client when it's replaced by another client of static methods.
+         * <p/>
+         * Writes values, drops the deferred prompt and stops tracking Activities, so this client can be collected.
+         *
+         * @return Launch of this process counted by this client, or null if it's not counted.
+         */
+        RatingEngine.ProcessLaunch retire() {
+            mPromptScheduler.close();
+            return mEngine.handOverProcessLaunch();
+        }
+
+        /**
+         * Checks showRateDialogCondition with the current values, without counting the launch.
+         *
+         * @param showRateDialogCondition Showing rate dialog condition, or null to use default.
+         * @return true if rating dialog should be shown.
+         */
+        public boolean isShowRateDialog(DateShowRateDialogCondition showRateDialogCondition) {
+            return mEngine.isShowRateDialog(toRatingCondition(showRateDialogCondition));
+        }
+
+        /**
+         * Checks showRateDialogCondition with the given values.
+         */
+        boolean isShowRateDialog(DateShowRateDialogCondition showRateDialogCondition, RatingState state) {
+            return mEngine.isShowRateDialog(toRatingCondition(showRateDialogCondition), state);
+        }
+
+        /**
+         * Registers the listener which receives changes of values, instead of checking them repeatedly.
+         * <p/>
+         * The current values are delivered first, and after that only changed values are delivered.
+         * Changes which happen before the delivery are merged into the latest values.
+         * Whether rating dialog should be shown is checked with the changed values, and delivered when it's changed.
+         * It isn't checked when only the time passes.
+         * <p/>
+         * <b>The listener is kept only weakly</b>, so a screen which forgets to remove it isn't leaked.
+         * A listener which nothing else refers to, e.g. an anonymous class created in this call, is collected
+         * and stops receiving changes without any error.
+         * Keep it while it's used, e.g. implement it by the Activity or keep it in a field, and remove it after that.
+         *
+         * @param listener                Listener, which is kept weakly.
+         * @param showRateDialogCondition Showing rate dialog condition, or null to use default.
+         * @param handler                 Handler of the thread to deliver, or null to deliver on the main thread.
+         */
+        public void addOnRatingStateChangeListener(OnRatingStateChangeListener listener,
+                                                   DateShowRateDialogCondition showRateDialogCondition, Handler handler) {
+            final RatingStateObservers.Subscription subscription = mObservers.add(listener, showRateDialogCondition,
+                    (handler != null) ? handler : MainHandlerHolder.HANDLER);
+
+            final RatingState state = mEngine.peekRatingState();
+            if (state != null) {
+                subscription.offer(state);
+                return;
+            }
+            // Load values without blocking the caller.
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    subscription.offer(mEngine.getRatingState());
+                }
+            });
+        }
+
+        /**
+         * Unregisters the listener.
+         *
+         * @param listener Listener
+         */
+        public void removeOnRatingStateChangeListener(OnRatingStateChangeListener listener) {
+            mObservers.remove(listener);
+        }
+
+        /**
+         * Shows rating dialog if showRateDialogCondition is met.
+         *
+         * @param context                 Context
+         * @param showRateDialogCondition Showing rate dialog condition, or null to use default.
+         * @param options                 RMP-Appirater options, or null.
+         * @param onCompleteListener      Listener which be called after process of review dialog finished, or null.
+         * @see RmpAppirater#tryToShowPrompt(Context, DateShowRateDialogCondition, Options, OnCompleteListener)
+         */
+        public void tryToShowPrompt(Context context, DateShowRateDialogCondition showRateDialogCondition, Options options,
+                                    OnCompleteListener onCompleteListener) {
+            if (isShowRateDialog(showRateDialogCondition)) {
+                showRateDialog(context, options, null, onCompleteListener);
+            } else {
+                notifyNotShownDialog(onCompleteListener);
+            }
+        }
+
+        /**
+         * Reset saved conditions if app version changed.
+         * <p/>
+         * The current version is saved with the reset values, so calling this again does nothing.
+         */
+        public void resetIfAppVersionChanged() {
+            mEngine.resetIfAppVersionChanged();
+        }
+
+        /**
+         * Changes saved values atomically.
+         * <p/>
+         * The transaction is called with the lock of the values, and the changes are applied all at once after it returns.
+         * If the transaction throws an exception, nothing is changed.
+         * The changed values are written to storage by one write on the background thread. Call {@link #flush()}
+         * to write them immediately.
+         *
+         * @param transaction Transaction which changes values. Don't block in it.
+         * @return Values after the transaction.
+         */
+        public RatingState edit(Transaction transaction) {
+            return mEngine.edit(transaction);
+        }
+
+        /**
+         * Modify internal value.
+         *
+         * @param appLaunchCount Launch count of This application.
+         */
+        public void setAppLaunchCount(final long appLaunchCount) {
+            edit(new Transaction() {
+                @Override
+                public void run(RatingStateEditor editor) {
+                    editor.setAppLaunchCount(appLaunchCount);
+                }
+            });
+        }
+
+        /**
+         * Modify internal value.
+         *
+         * @param appThisVersionCodeLaunchCount Launch count of This application current version.
+         */
+        public void setAppThisVersionCodeLaunchCount(final long appThisVersionCodeLaunchCount) {
+            edit(new Transaction() {
+                @Override
+                public void run(RatingStateEditor editor) {
+                    editor.setAppThisVersionCodeLaunchCount(appThisVersionCodeLaunchCount);
+                }
+            });
+        }
+
+        /**
+         * Modify internal value.
+         *
+         * @param firstLaunchDate First launch date.
+         */
+        public void setFirstLaunchDate(final long firstLaunchDate) {
+            edit(new Transaction() {
+                @Override
+                public void run(RatingStateEditor editor) {
+                    editor.setFirstLaunchDate(firstLaunchDate);
+                }
+            });
+        }
+
+        /**
+         * Modify internal value.
+         *
+         * @param rateClickDate Date of "Rate" button clicked.
+         */
+        public void setRateClickDate(Date rateClickDate) {
+            final long rateClickDateMills = ((rateClickDate != null) ? rateClickDate.getTime() : 0);
+
+            edit(new Transaction() {
+                @Override
+                public void run(RatingStateEditor editor) {
+                    editor.setRateClickDate(rateClickDateMills);
+                }
+            });
+        }
+
+        /**
+         * Modify internal value.
+         *
+         * @param reminderClickDate Date of "Remind me later" button clicked.
+         */
+        public void setReminderClickDate(Date reminderClickDate) {
+            final long reminderClickDateMills = ((reminderClickDate != null) ? reminderClickDate.getTime() : 0);
+
+            edit(new Transaction() {
+                @Override
+                public void run(RatingStateEditor editor) {
+                    editor.setReminderClickDate(reminderClickDateMills);
+                }
+            });
+        }
+
+        /**
+         * Modify internal value.
+         *
+         * @param doNotShowAgain Clicked "No, Thanks" if true.
+         */
+        public void setDoNotShowAgain(final boolean doNotShowAgain) {
+            edit(new Transaction() {
+                @Override
+                public void run(RatingStateEditor editor) {
+                    editor.setDoNotShowAgain(doNotShowAgain);
+                }
+            });
+        }
+
+        /**
+         * Tells RMP-Appirater that the user did a significant event, e.g. completed a purchase or a search.
+         * <p/>
+         * This doesn't take a lock, and can be called frequently from any thread. Events are counted in memory,
+         * and applied to the values in a batch a few seconds later, when the condition is checked,
+         * or when the application goes to the background (API level 14 and higher).
+         *
+         * @see RatingRules.Builder#minSignificantEventCount(long)
+         */
+        public void userDidSignificantEvent() {
+            mEngine.userDidSignificantEvent();
+        }
+
+        /**
+         * Writes changed values to storage immediately.
+         */
+        public void flush() {
+            mEngine.flush();
+        }
+
+        /**
+         * Gets values saved by RMP-Appirater.
+         *
+         * @return Current values.
+         */
+        public RatingState getRatingState() {
+            return mEngine.getRatingState();
+        }
+
+        /**
+         * Gets the engine which counts launches and checks conditions without Android.
+         *
+         * @return Engine of this client.
+         */
+        public RatingEngine getEngine() {
+            return mEngine;
+        }
+
+        /**
+         * Gets the condition which is checked by the engine.
+         *
+         * @param showRateDialogCondition Showing rate dialog condition, or null to use default.
+         * @return The condition itself if it receives dates as epoch milliseconds, or a condition which converts them.
+         */
+        private static RatingCondition toRatingCondition(final DateShowRateDialogCondition showRateDialogCondition) {
+            // Set default show rate dialog condition.
+            if (showRateDialogCondition == null) {
+                return DEFAULT_SHOW_RATE_DIALOG_CONDITION;
+            }
+
+            if (showRateDialogCondition instanceof MillisShowRateDialogCondition) {
+                return (MillisShowRateDialogCondition) showRateDialogCondition;
+            }
+
+            return new RatingCondition() {
+                @Override
+                public boolean isShowRateDialog(RatingState state, int appVersionCode, int previousAppVersionCode,
+                                                long currentTimeMillis) {
+                    final Date rateClickDate = (state.getRateClickDate() > 0) ? new Date(state.getRateClickDate()) : null;
+                    final Date reminderClickDate = (state.getReminderClickDate() > 0) ? new Date(state.getReminderClickDate()) : null;
+
+                    return showRateDialogCondition.isShowRateDialog(state.getAppLaunchCount(),
+                            state.getAppThisVersionCodeLaunchCount(appVersionCode), state.getFirstLaunchDate(),
+                            appVersionCode, previousAppVersionCode, rateClickDate, reminderClickDate,
+                            state.isDoNotShowAgain());
+                }
+            };
+        }
+
+        void notifyNotShownDialog(OnCompleteListener onCompleteListener) {
+            mMetrics.event(MetricsListener.EVENT_DIALOG_NOT_SHOWN);
+            if (onCompleteListener != null) {
+                onCompleteListener.onNotShownDialog();
+            }
+        }
+
+        /**
+         * Shows rating dialog unless another rating dialog is shown.
+         *
+         * @return true if rating dialog is shown. false if another one is shown, and onNotShownDialog is called.
+         */
+        boolean showRateDialog(Context context, Options options, RateDialogContent content,
+                               OnCompleteListener onCompleteListener) {
+            final InFlightPrompt prompt = new InFlightPrompt(context);
+            if (!acquirePrompt(prompt)) {
+                // Another rating dialog is shown.
+                notifyNotShownDialog(onCompleteListener);
+                return false;
+            }
+
+            final long showStartNanos = mMetrics.start();
+            try {
+                // Check this before touching RateDialogFragment, which can't be loaded without DialogFragment.
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB && context instanceof Activity) {
+                    // Recreated after configuration changes without keeping the Activity.
+                    RateDialogFragment.show((Activity) context, this, options, content, prompt, onCompleteListener);
+                    prompt.setShown(null);
+                } else {
+                    RateAlertDialog.show(context, this, options, content, prompt, onCompleteListener);
+                }
+            } catch (RuntimeException e) {
+                // e.g. BadTokenException when the Activity has already finished.
+                prompt.release();
+                throw e;
+            }
+            mEngine.recordEvent(RatingEvent.TYPE_SHOW);
+            mMetrics.end(MetricsListener.PHASE_SHOW, showStartNanos);
+            mMetrics.event(MetricsListener.EVENT_DIALOG_SHOWN);
+
+            // Resolve the store page while the user reads the dialog.
+            final Context applicationContext = getApplicationContext(context);
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    mStoreIntentResolver.refresh(applicationContext);
+                }
+            });
+            return true;
+        }
+
+        void rateApp(Context context) {
+            mMetrics.event(MetricsListener.EVENT_RATED);
+            try {
+                context.startActivity(mStoreIntentResolver.createIntent(context));
+            } catch (ActivityNotFoundException e) {
+                // The store is uninstalled after it's resolved, or no candidate is resolved.
+                Log.w(TAG, "Occurred ActivityNotFoundException.", e);
+                mStoreIntentResolver.invalidate();
+            }
+
+            mEngine.recordEvent(RatingEvent.TYPE_RATE);
+        }
+
+        void remindApp() {
+            mMetrics.event(MetricsListener.EVENT_REMINDED);
+            mEngine.recordEvent(RatingEvent.TYPE_REMIND);
+        }
+
+        void cancelRateApp() {
+            mMetrics.event(MetricsListener.EVENT_DECLINED);
+            mEngine.recordEvent(RatingEvent.TYPE_DECLINE);
+        }
+
+        /**
+         * Builder of {@link Client}.
+         */
+        public static class Builder {
+
+            private final Context mContext;
+
+            private RatingStateStorage mStorage;
+
+            private VersionCodeProvider mVersionCodeProvider;
+
+            private ScheduledExecutorService mExecutor;
+
+            private MetricsListener mMetricsListener;
+
+            private Clock mClock;
+
+            private final List<String> mAlternativeStoreUris = new ArrayList<String>();
+
+            /**
+             * Constructor.
+             *
+             * @param context Context
+             */
+            public Builder(Context context) {
+                mContext = getApplicationContext(context);
+            }
+
+            /**
+             * Constructor without Android.
+             * <p/>
+             * Storage and version code provider must be set.
+             */
+            public Builder() {
+                mContext = null;
+            }
+
+            /**
+             * Sets storage of values.
+             *
+             * @param storage Storage, or null to use SharedPreferences.
+             * @return This builder.
+             */
+            public Builder setStorage(RatingStateStorage storage) {
+                mStorage = storage;
+                return this;
+            }
+
+            /**
+             * Sets provider of this application version code.
+             *
+             * @param versionCodeProvider Provider, or null to ask PackageManager.
+             * @return This builder.
+             */
+            public Builder setVersionCodeProvider(VersionCodeProvider versionCodeProvider) {
+                mVersionCodeProvider = versionCodeProvider;
+                return this;
+            }
+
+            /**
+             * Sets executor to load and save values and to call appLaunchedAsync.
+             *
+             * @param executor Executor, or null to use a background thread shared by clients.
+             * @return This builder.
+             */
+            public Builder setExecutor(ScheduledExecutorService executor) {
+                mExecutor = executor;
+                return this;
+            }
+
+            /**
+             * Sets listener which receives how long each operation takes and how many times events happen.
+             *
+             * @param metricsListener Listener, or null not to measure.
+             * @return This builder.
+             */
+            public Builder setMetricsListener(MetricsListener metricsListener) {
+                mMetricsListener = metricsListener;
+                return this;
+            }
+
+            /**
+             * Sets source of the current time, which is used to save dates and to check conditions.
+             *
+             * @param clock Clock, or null to use {@link Clock#SYSTEM}.
+             * @return This builder.
+             */
+            public Builder setClock(Clock clock) {
+                mClock = clock;
+                return this;
+            }
+
+            /**
+             * Adds an alternative store which is opened by "Rate" button when the Play Store app isn't installed.
+             * <p/>
+             * Stores are tried in order of the Play Store app, alternative stores and the Play Store web page.
+             *
+             * @param uri URI of the store page, in which "%s" is replaced with the package name,
+             *            e.g. "amzn://apps/android?p=%s".
+             * @return This builder.
+             */
+            public Builder addAlternativeStoreUri(String uri) {
+                mAlternativeStoreUris.add(uri);
+                return this;
+            }
+
+            /**
+             * Builds the client.
+             *
+             * @return Client
+             * @throws IllegalStateException if storage or version code provider is not set without Context.
+             */
+            public Client build() {
+                if (mStorage == null) {
+                    if (mContext == null) {
+                        throw new IllegalStateException("Storage must be set without Context.");
+                    }
+                    mStorage = new SharedPreferencesStorage(mContext);
+                }
+                if (mVersionCodeProvider == null) {
+                    if (mContext == null) {
+                        throw new IllegalStateException("VersionCodeProvider must be set without Context.");
+                    }
+                    mVersionCodeProvider = new PackageVersionCodeProvider(mContext);
+                }
+                if (mExecutor == null) {
+                    mExecutor = BackgroundExecutorHolder.EXECUTOR;
+                }
+                if (mClock == null) {
+                    mClock = Clock.SYSTEM;
+                }
+                return new Client(this);
+            }
+
+        }
+
+    }
+
+    /**
+     * Writes values when the UI of the application is hidden, because the process may be killed after that.
+     * <p/>
+     * This keeps the client weakly, so the client replaced by {@link #setClient(Client)} can be collected.
+     */
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+    private static class BackgroundFlusher implements ComponentCallbacks2 {
+
+        private final WeakReference<Client> mClient;
+
+        private BackgroundFlusher(Client client) {
+            mClient = new WeakReference<Client>(client);
+        }
+
+        static void register(Context context, Client client) {
+            context.registerComponentCallbacks(new BackgroundFlusher(client));
+        }
+
+        @Override
+        public void onTrimMemory(int level) {
+            if (level < TRIM_MEMORY_UI_HIDDEN) {
+                return;
+            }
+            final Client client = mClient.get();
+            if (client == null) {
+                return;
+            }
+            client.mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    client.flush();
+                }
+            });
+        }
+
+        @Override
+        public void onConfigurationChanged(Configuration newConfig) {
+        }
+
+        @Override
+        public void onLowMemory() {
+        }
+    }
+
+    /**
+     * Background thread for loading and saving launch information.
+     */
+    private static class BackgroundExecutorHolder {
+        static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        r.run();
+                    }
+                }, TAG);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Rating dialog which is requested or shown. Accessed on the main thread.
+     * <p/>
+     * This is referred from a static field, so it keeps the Activity and the dialog only weakly.
+     */
+    static class InFlightPrompt {
+
+        private WeakReference<Context> mContext;
+
+        /**
+         * Dialog shown without fragment, or null.
+         */
+        private WeakReference<Dialog> mDialog;
+
+        private boolean mShown;
+
+        InFlightPrompt(Context context) {
+            mContext = new WeakReference<Context>(context);
+        }
+
+        /**
+         * Sets the Activity which shows the dialog now, e.g. after configuration changes.
+         */
+        void setContext(Context context) {
+            mContext = new WeakReference<Context>(context);
+        }
+
+        /**
+         * Marks the dialog as shown.
+         *
+         * @param dialog Dialog shown without fragment, or null if it's shown by fragment.
+         */
+        void setShown(Dialog dialog) {
+            mDialog = (dialog != null) ? new WeakReference<Dialog>(dialog) : null;
+            mShown = true;
+        }
+
+        /**
+         * Lets other rating dialog be shown.
+         */
+        void release() {
+            sInFlightPrompt.compareAndSet(this, null);
+        }
+
+        /**
+         * Gets whether the dialog is left without being dismissed, e.g. by a destroyed Activity.
+         */
+        boolean isStale() {
+            if (!mShown) {
+                return false;
+            }
+            final Context context = mContext.get();
+            if (context == null || isFinishing(context)) {
+                return true;
+            }
+            if (mDialog == null) {
+                return false;
+            }
+            final Dialog dialog = mDialog.get();
+            return dialog == null || !dialog.isShowing();
+        }
+
+    }
+
+    static class MainHandlerHolder {
+        static final Handler HANDLER = new Handler(Looper.getMainLooper());
+    }
+
+    /**
+     * Handle to cancel showing rating dialog which is requested by {@link #appLaunchedAsync}.
+     */
+    public static class CancellationHandle {
+
+        private volatile boolean mCanceled;
+
+        /**
+         * Content of rating dialog which is prepared in background. Guarded by this.
+         */
+        private RateDialogContent mPreparedContent;
+
+        /**
+         * Cancels showing rating dialog.
+         * <p/>
+         * Call this when the Activity is destroyed. The launch is still counted,
+         * and the prepared rating dialog is released.
+         */
+        public void cancel() {
+            mCanceled = true;
+            synchronized (this) {
+                mPreparedContent = null;
+            }
+        }
+
+        synchronized void setPreparedContent(RateDialogContent preparedContent) {
+            if (!mCanceled) {
+                mPreparedContent = preparedContent;
+            }
+        }
+
+        synchronized RateDialogContent takePreparedContent() {
+            final RateDialogContent preparedContent = mPreparedContent;
+            mPreparedContent = null;
+            return preparedContent;
+        }
+
+        /**
+         * Gets whether this is canceled.
+         *
+         * @return true if canceled.
+         */
+        public boolean isCanceled() {
+            return mCanceled;
+        }
+
+    }
+
+    /**
+     * RMP-Appirater options.
+     */
+    public static class Options {
+
+        /**
+         * Rating dialog deferred by appLaunchedDeferred is shown when the main thread becomes idle
+         * after the Activity is drawn and the delay.
+         */
+        public static final int PROMPT_TRIGGER_IDLE = 0;
+
+        /**
+         * Rating dialog deferred by appLaunchedDeferred is shown only by {@link RmpAppirater#showPendingPrompt(Activity)}.
+         */
+        public static final int PROMPT_TRIGGER_SIGNAL = 1;
+
+        /**
+         * Default time until deferred rating dialog is dropped.
+         */
+        public static final long DEFAULT_PROMPT_EXPIRY_MILLIS = TimeUnit.MINUTES.toMillis(30);
+
+        private CharSequence mDialogTitle;
+
+        private CharSequence mDialogMessage;
+
+        private CharSequence mDialogRateButtonText;
+
+        private CharSequence mDialogRateLaterButtonText;
+
+        private CharSequence mDialogRateCancelButtonText;
+
+        private boolean mPrepareDialogInBackground;
+
+        private int mPromptTrigger = PROMPT_TRIGGER_IDLE;
+
+        private long mPromptDelayMillis;
+
+        private long mPromptExpiryMillis = DEFAULT_PROMPT_EXPIRY_MILLIS;
+
+        /**
+         * Constructor.
+         */
+        public Options() {
+        }
+
+        /**
+         * Constructor.
          *
          * @param dialogTitle                Dialog title
          * @param dialogMessage              Dialog message
@@ -651,28 +1642,90 @@ public class RmpAppirater {
             this.mDialogRateCancelButtonText = dialogRateCancelButtonText;
         }
 
+        /**
+         * Gets whether rating dialog is prepared on a background thread.
+         *
+         * @return true if rating dialog is prepared on a background thread.
+         */
+        public boolean isPrepareDialogInBackground() {
+            return mPrepareDialogInBackground;
+        }
+
+        /**
+         * Sets whether rating dialog is prepared on a background thread.
+         * <p/>
+         * If true, {@link RmpAppirater#appLaunchedAsync} inflates views and resolves texts of rating dialog
+         * on the background thread, and the main thread only shows it.
+         *
+         * @param prepareDialogInBackground true to prepare rating dialog on a background thread.
+         */
+        public void setPrepareDialogInBackground(boolean prepareDialogInBackground) {
+            this.mPrepareDialogInBackground = prepareDialogInBackground;
+        }
+
+        /**
+         * Gets when rating dialog deferred by appLaunchedDeferred is shown.
+         *
+         * @return {@link #PROMPT_TRIGGER_IDLE} or {@link #PROMPT_TRIGGER_SIGNAL}.
+         */
+        public int getPromptTrigger() {
+            return mPromptTrigger;
+        }
+
+        /**
+         * Sets when rating dialog deferred by appLaunchedDeferred is shown.
+         *
+         * @param promptTrigger {@link #PROMPT_TRIGGER_IDLE} or {@link #PROMPT_TRIGGER_SIGNAL}.
+         */
+        public void setPromptTrigger(int promptTrigger) {
+            this.mPromptTrigger = promptTrigger;
+        }
+
+        /**
+         * Gets delay after the Activity is drawn until deferred rating dialog waits for idle.
+         *
+         * @return Delay in milliseconds.
+         */
+        public long getPromptDelayMillis() {
+            return mPromptDelayMillis;
+        }
+
+        /**
+         * Sets delay after the Activity is drawn until deferred rating dialog waits for idle.
+         *
+         * @param promptDelayMillis Delay in milliseconds.
+         */
+        public void setPromptDelayMillis(long promptDelayMillis) {
+            this.mPromptDelayMillis = promptDelayMillis;
+        }
+
+        /**
+         * Gets time until deferred rating dialog is dropped.
+         *
+         * @return Time in milliseconds.
+         */
+        public long getPromptExpiryMillis() {
+            return mPromptExpiryMillis;
+        }
+
+        /**
+         * Sets time until deferred rating dialog is dropped. onNotShownDialog is called when it's dropped.
+         *
+         * @param promptExpiryMillis Time in milliseconds.
+         */
+        public void setPromptExpiryMillis(long promptExpiryMillis) {
+            this.mPromptExpiryMillis = promptExpiryMillis;
+        }
+
     }
 
     /**
      * Rate Dialog showing condition interface.
+     * <p/>
+     * This is the same as {@link DateShowRateDialogCondition} of the core module,
+     * and kept so that applications built with older versions still run.
      */
-    public interface ShowRateDialogCondition {
-        /**
-         * Show rate dialog if returned true.
-         *
-         * @param appLaunchCount                Launch count of This application.
-         * @param appThisVersionCodeLaunchCount Launch count of This application current version.
-         * @param firstLaunchDate               First launch date.
-         * @param appVersionCode                This application version code.
-         * @param previousAppVersionCode        The application version code of when it's launched last.
-         * @param rateClickDate                 Date of "Rate" button clicked.
-         * @param reminderClickDate             Date of "Remind me later" button clicked.
-         * @param doNotShowAgain                Clicked "No, Thanks" if true.
-         * @return Show rate dialog if returned true.
-         */
-        boolean isShowRateDialog(long appLaunchCount, long appThisVersionCodeLaunchCount,
-                                 long firstLaunchDate, int appVersionCode, int previousAppVersionCode,
-                                 Date rateClickDate, Date reminderClickDate, boolean doNotShowAgain);
+    public interface ShowRateDialogCondition extends DateShowRateDialogCondition {
     }
 
     public interface OnCompleteListener {
@@ -687,4 +1740,35 @@ public class RmpAppirater {
         void onNotShownDialog();
     }
 
+    /**
+     * Listener of changes of values saved by RMP-Appirater.
+     * <p/>
+     * Registered listeners are kept only weakly. Keep a reference to the listener while it's registered.
+     *
+     * @see Client#addOnRatingStateChangeListener(OnRatingStateChangeListener, DateShowRateDialogCondition, Handler)
+     */
+    public interface OnRatingStateChangeListener {
+        /**
+         * Values are loaded or changed.
+         *
+         * @param state Current values.
+         */
+        void onRatingStateChanged(RatingState state);
+
+        /**
+         * Whether rating dialog should be shown is checked first, or changed.
+         *
+         * @param showRateDialog true if rating dialog should be shown.
+         */
+        void onShowRateDialogChanged(boolean showRateDialog);
+    }
+
+    /**
+     * Changes of saved values which are applied atomically.
+     *
+     * @see Client#edit(Transaction)
+     */
+    public interface Transaction extends RatingStateEditor.Transaction {
+    }
+
 }
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2015-2016 Recruit Marketing Partners Co.,Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.recruit_mp.android.rmp_appirater;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+
+/**
+ * Initializes RMP-Appirater when the process starts, before any Activity is created.
+ * <p/>
+ * This is disabled by default. Enable it by overriding the resource in the application.
+ * <pre>
+ * &lt;bool name="rmp_appirater_auto_init"&gt;true&lt;/bool&gt;
+ * </pre>
+ * The launch is counted once per process and values are loaded on the background thread,
+ * so {@link RmpAppirater#tryToShowPrompt} only checks values in memory, and recreated Activities don't count again.
+ * Storage and other values can still be set in Application#onCreate(), which is called after this.
+ * The client is replaced then, and the launch counted by the replaced client is handed over to the new client,
+ * so the launch is counted once.
+ */
+public class RmpAppiraterInitProvider extends ContentProvider {
+
+    @Override
+    public boolean onCreate() {
+        RmpAppirater.initialize(getContext());
+        return true;
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        return null;
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        return null;
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        return null;
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        return 0;
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        return 0;
+    }
+
+}
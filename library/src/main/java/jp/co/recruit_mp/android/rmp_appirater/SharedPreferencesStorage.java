@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2015-2016 Recruit Marketing Partners Co.,Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.recruit_mp.android.rmp_appirater;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.List;
+
+/**
+ * {@link RatingStateStorage} which saves the state to SharedPreferences. This is the default storage.
+ */
+public class SharedPreferencesStorage implements RatingStateStorage {
+
+    // Pref keys
+    private static final String PREF_KEY_APP_LAUNCH_COUNT = "PREF_KEY_APP_LAUNCH_COUNT";
+    private static final String PREF_KEY_APP_THIS_VERSION_CODE_LAUNCH_COUNT = "PREF_KEY_APP_THIS_VERSION_CODE_LAUNCH_COUNT";
+    private static final String PREF_KEY_APP_FIRST_LAUNCHED_DATE = "PREF_KEY_APP_FIRST_LAUNCHED_DATE";
+    private static final String PREF_KEY_APP_VERSION_CODE = "PREF_KEY_APP_VERSION_CODE";
+    private static final String PREF_KEY_RATE_CLICK_DATE = "PREF_KEY_RATE_CLICK_DATE";
+    private static final String PREF_KEY_REMINDER_CLICK_DATE = "PREF_KEY_REMINDER_CLICK_DATE";
+    private static final String PREF_KEY_DO_NOT_SHOW_AGAIN = "PREF_KEY_DO_NOT_SHOW_AGAIN";
+    private static final String PREF_KEY_VERSION_HISTORY = "PREF_KEY_VERSION_HISTORY";
+    private static final String PREF_KEY_SIGNIFICANT_EVENT_COUNT = "PREF_KEY_SIGNIFICANT_EVENT_COUNT";
+
+    private static final String PREFS_PACKAGE_NAME_SUFFIX = ".RmpAppirater";
+
+    private final SharedPreferences mPrefs;
+
+    /**
+     * Constructor.
+     *
+     * @param context Context
+     */
+    public SharedPreferencesStorage(Context context) {
+        mPrefs = context.getSharedPreferences(context.getPackageName() + PREFS_PACKAGE_NAME_SUFFIX, Context.MODE_PRIVATE);
+    }
+
+    @Override
+    public RatingState load() {
+        return new RatingState.Builder()
+                .setAppLaunchCount(mPrefs.getLong(PREF_KEY_APP_LAUNCH_COUNT, 0))
+                .setAppThisVersionCodeLaunchCount(mPrefs.getLong(PREF_KEY_APP_THIS_VERSION_CODE_LAUNCH_COUNT, 0))
+                .setFirstLaunchDate(mPrefs.getLong(PREF_KEY_APP_FIRST_LAUNCHED_DATE, 0))
+                .setAppVersionCode(mPrefs.getInt(PREF_KEY_APP_VERSION_CODE, Integer.MIN_VALUE))
+                .setRateClickDate(mPrefs.getLong(PREF_KEY_RATE_CLICK_DATE, 0))
+                .setReminderClickDate(mPrefs.getLong(PREF_KEY_REMINDER_CLICK_DATE, 0))
+                .setDoNotShowAgain(mPrefs.getBoolean(PREF_KEY_DO_NOT_SHOW_AGAIN, false))
+                .setSignificantEventCount(mPrefs.getLong(PREF_KEY_SIGNIFICANT_EVENT_COUNT, 0))
+                .setVersionHistory(VersionHistory.decode(mPrefs.getString(PREF_KEY_VERSION_HISTORY, null)))
+                .build();
+    }
+
+    @Override
+    public void save(RatingState state, List<RatingEvent> events) {
+        mPrefs.edit()
+                .putLong(PREF_KEY_APP_LAUNCH_COUNT, state.getAppLaunchCount())
+                .putLong(PREF_KEY_APP_THIS_VERSION_CODE_LAUNCH_COUNT, state.getAppThisVersionCodeLaunchCount())
+                .putLong(PREF_KEY_APP_FIRST_LAUNCHED_DATE, state.getFirstLaunchDate())
+                .putInt(PREF_KEY_APP_VERSION_CODE, state.getAppVersionCode())
+                .putLong(PREF_KEY_RATE_CLICK_DATE, state.getRateClickDate())
+                .putLong(PREF_KEY_REMINDER_CLICK_DATE, state.getReminderClickDate())
+                .putBoolean(PREF_KEY_DO_NOT_SHOW_AGAIN, state.isDoNotShowAgain())
+                .putLong(PREF_KEY_SIGNIFICANT_EVENT_COUNT, state.getSignificantEventCount())
+                .putString(PREF_KEY_VERSION_HISTORY, state.getVersionHistory().encode())
+                .commit();
+    }
+
+}
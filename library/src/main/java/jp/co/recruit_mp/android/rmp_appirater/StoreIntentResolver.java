@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2015-2016 Recruit Marketing Partners Co.,Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jp.co.recruit_mp.android.rmp_appirater;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.net.Uri;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Resolves the store page of this application which can be opened on the device.
+ * <p/>
+ * Candidates are checked with PackageManager in order of the Play Store app, alternative stores and the web page,
+ * and the first one which can be opened is cached. So clicking "Rate" only starts the cached intent.
+ * <p/>
+ * If no candidate can be opened, the web page is cached as the fallback, so PackageManager isn't asked
+ * on every click. A store may be installed later, so the fallback is resolved again by {@link #refresh(Context)}
+ * each time rating dialog is shown.
+ */
+class StoreIntentResolver {
+
+    /**
+     * Placeholder of the package name in URIs.
+     */
+    static final String PACKAGE_NAME_PLACEHOLDER = "%s";
+
+    private static final String MARKET_URI = "market://details?id=" + PACKAGE_NAME_PLACEHOLDER;
+
+    private static final String WEB_URI = "https://play.google.com/store/apps/details?id=" + PACKAGE_NAME_PLACEHOLDER;
+
+    private final List<String> mUris;
+
+    /**
+     * Cached intent which can be opened, or null if not resolved yet.
+     */
+    private volatile Intent mResolvedIntent;
+
+    /**
+     * Cached intent of the web page when no candidate can be opened, or null if not resolved yet.
+     */
+    private volatile Intent mFallbackIntent;
+
+    /**
+     * Constructor.
+     *
+     * @param alternativeStoreUris URIs of alternative stores, which are tried after the Play Store app.
+     */
+    StoreIntentResolver(List<String> alternativeStoreUris) {
+        mUris = new ArrayList<String>(alternativeStoreUris.size() + 2);
+        mUris.add(MARKET_URI);
+        mUris.addAll(alternativeStoreUris);
+        mUris.add(WEB_URI);
+    }
+
+    /**
+     * Creates the intent to open the store page.
+     *
+     * @param context Context which starts the intent.
+     * @return Intent to start.
+     */
+    Intent createIntent(Context context) {
+        final Intent intent = new Intent(resolve(context));
+        if (!(context instanceof Activity)) {
+            intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        }
+        return intent;
+    }
+
+    /**
+     * Resolves the store page and caches it. This asks PackageManager only the first time.
+     *
+     * @param context Context
+     * @return Intent which can be opened, or the intent of the web page if no candidate is resolved.
+     */
+    Intent resolve(Context context) {
+        Intent intent = mResolvedIntent;
+        if (intent != null) {
+            return intent;
+        }
+        intent = mFallbackIntent;
+        if (intent != null) {
+            return intent;
+        }
+
+        final PackageManager packageManager = context.getPackageManager();
+        final String packageName = context.getPackageName();
+        for (String uri : mUris) {
+            intent = new Intent(Intent.ACTION_VIEW, Uri.parse(uri.replace(PACKAGE_NAME_PLACEHOLDER, packageName)));
+            if (packageManager.resolveActivity(intent, PackageManager.MATCH_DEFAULT_ONLY) != null) {
+                mResolvedIntent = intent;
+                return intent;
+            }
+        }
+        // A store may be installed later, or may be hidden by package visibility. It's resolved again by refresh().
+        mFallbackIntent = intent;
+        return intent;
+    }
+
+    /**
+     * Resolves the store page again if no candidate was resolved, and caches it.
+     * This is called on the background thread when rating dialog is shown, before "Rate" is clicked.
+     *
+     * @param context Context
+     */
+    void refresh(Context context) {
+        mFallbackIntent = null;
+        resolve(context);
+    }
+
+    /**
+     * Drops the cached intent, e.g. after the store is uninstalled.
+     */
+    void invalidate() {
+        mResolvedIntent = null;
+        mFallbackIntent = null;
+    }
+
+}